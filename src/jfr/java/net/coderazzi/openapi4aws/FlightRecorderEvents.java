@@ -0,0 +1,123 @@
+package net.coderazzi.openapi4aws;
+
+import jdk.jfr.*;
+
+/**
+ * Custom JDK Flight Recorder events. This class is only compiled when building on java 11 or later, and only
+ * loaded if the running JVM supports them, see {@link Instrumentation}
+ */
+final class FlightRecorderEvents implements Instrumentation.Recorder {
+
+    private static final String CATEGORY = "Openapi4AWS";
+
+    @Override
+    public Object beginPhase() {
+        PhaseEvent ret = new PhaseEvent();
+        if (!ret.isEnabled()) {
+            return null;
+        }
+        ret.begin();
+        return ret;
+    }
+
+    @Override
+    public void commitPhase(Object event, String phase, String path, long bytes) {
+        PhaseEvent phaseEvent = (PhaseEvent) event;
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.phase = phase;
+            phaseEvent.path = path;
+            phaseEvent.bytes = bytes;
+            phaseEvent.commit();
+        }
+    }
+
+    @Override
+    public Object beginScan() {
+        ScanEvent ret = new ScanEvent();
+        if (!ret.isEnabled()) {
+            return null;
+        }
+        ret.begin();
+        return ret;
+    }
+
+    @Override
+    public void commitScan(Object event, String globs, int files) {
+        ScanEvent scanEvent = (ScanEvent) event;
+        scanEvent.end();
+        if (scanEvent.shouldCommit()) {
+            scanEvent.globs = globs;
+            scanEvent.files = files;
+            scanEvent.commit();
+        }
+    }
+
+    @Override
+    public Object beginResolution() {
+        ResolutionEvent ret = new ResolutionEvent();
+        if (!ret.isEnabled()) {
+            return null;
+        }
+        ret.begin();
+        return ret;
+    }
+
+    @Override
+    public void commitResolution(Object event, String path, String tags, String match) {
+        ResolutionEvent resolutionEvent = (ResolutionEvent) event;
+        resolutionEvent.end();
+        if (resolutionEvent.shouldCommit()) {
+            resolutionEvent.path = path;
+            resolutionEvent.tags = tags;
+            resolutionEvent.match = match;
+            resolutionEvent.commit();
+        }
+    }
+
+    @Name("net.coderazzi.openapi4aws.Phase")
+    @Label("Processing Phase")
+    @Description("Processing of a single file on one phase: read, parse, augment, dump, write or stream")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("File")
+        String path;
+
+        @Label("Input Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("net.coderazzi.openapi4aws.Scan")
+    @Label("File Scan")
+    @Description("Search of the input files, walking the file system to match the globs")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ScanEvent extends Event {
+        @Label("Globs")
+        String globs;
+
+        @Label("Files Found")
+        int files;
+    }
+
+    @Name("net.coderazzi.openapi4aws.Resolution")
+    @Label("Integration Resolution")
+    @Description("Resolution of the integration for a path and tags; resolutions are cached for each run")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class ResolutionEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Tags")
+        String tags;
+
+        @Label("Match")
+        String match;
+    }
+}
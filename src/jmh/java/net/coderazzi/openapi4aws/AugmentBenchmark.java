@@ -0,0 +1,46 @@
+package net.coderazzi.openapi4aws;
+
+import net.coderazzi.openapi4aws.cli.CliParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Augmentation of an already loaded specification: as augmenting a specification twice produces the same
+ * result, the same tree is reused on each invocation.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AugmentBenchmark {
+
+    @Param({"1000", "20000"})
+    int operations;
+
+    @Param({"1", "4"})
+    int tagFanOut;
+
+    @Param({"2"})
+    int depth;
+
+    private Openapi4AWS openapi4AWS;
+    private Map<String, Object> specification;
+
+    @Setup
+    public void setup() throws IOException {
+        // half of the paths with specific rules, the rest resolved by tags
+        int pathRules = operations / 8;
+        CliParser configuration = new CliParser(SyntheticSpec.writeConfiguration(pathRules, 64).toString());
+        openapi4AWS = new Openapi4AWS(configuration);
+        specification = new SyntheticSpec(operations, tagFanOut, depth).build();
+    }
+
+    @Benchmark
+    public Map<String, Object> augment() {
+        return openapi4AWS.augment(specification);
+    }
+}
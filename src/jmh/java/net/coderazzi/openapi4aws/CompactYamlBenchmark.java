@@ -0,0 +1,68 @@
+package net.coderazzi.openapi4aws;
+
+import net.coderazzi.openapi4aws.cli.CliParser;
+import org.openjdk.jmh.annotations.*;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Augmentation of a specification into yaml, with and without compact yaml, and the load of the resulting
+ * output. The size of each output is printed on setup.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CompactYamlBenchmark {
+
+    @Param({"2000"})
+    int operations;
+
+    @Param({"false", "true"})
+    boolean compact;
+
+    private Openapi4AWS openapi4AWS;
+    private Path path;
+    private byte[] content;
+    private String output;
+    private Yaml yaml;
+
+    @Setup
+    public void setup() throws IOException {
+        // half of the paths with specific rules, the rest resolved by tags
+        int pathRules = operations / 8;
+        CliParser configuration = new CliParser(SyntheticSpec.writeConfiguration(pathRules, 64).toString());
+        openapi4AWS = new Openapi4AWS(configuration);
+        openapi4AWS.setCompactYaml(compact);
+        path = Paths.get("synthetic.yaml");
+        content = new SyntheticSpec(operations, 2, 2).toYaml().getBytes(StandardCharsets.UTF_8);
+        StringWriter writer = new StringWriter();
+        openapi4AWS.augment(path, content, writer);
+        output = writer.toString();
+        System.out.printf("%n%s output: %d bytes%n", compact ? "compact" : "plain", output.length());
+        LoaderOptions options = new LoaderOptions();
+        options.setMaxAliasesForCollections(Integer.MAX_VALUE);
+        yaml = new Yaml(options);
+    }
+
+    @Benchmark
+    public long augment() throws IOException {
+        CountingWriter writer = new CountingWriter();
+        openapi4AWS.augment(path, content, writer);
+        return writer.getCount();
+    }
+
+    @Benchmark
+    public Map<String, Object> load() {
+        return yaml.load(output);
+    }
+}
@@ -0,0 +1,119 @@
+package net.coderazzi.openapi4aws;
+
+import org.openjdk.jmh.annotations.*;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing of large specifications, comparing the stream based I/O used before (byte arrays and
+ * UnicodeReader on input, OutputStreamWriter on output) with the channel based one. The files are built by
+ * repeating a synthetic specification up to the given size; only the I/O and the UTF-8 decoding / encoding
+ * are measured, reading into the small chunks requested by the yaml reader, and writing the small pieces
+ * produced by the yaml emitter.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IoBenchmark {
+
+    // the yaml reader requests 1024 chars each time
+    private static final int READ_CHUNK = 1024;
+    // average size of the scalars written by the yaml emitter
+    private static final int WRITE_CHUNK = 16;
+
+    @Param({"1", "50", "200"})
+    int megabytes;
+
+    @Param({"65536"})
+    int bufferSize;
+
+    private Path input;
+    private Path output;
+    private String content;
+
+    @Setup
+    public void setup() throws IOException {
+        String spec = new SyntheticSpec(2000, 2, 2).toYaml();
+        long size = megabytes * 1024L * 1024L;
+        StringBuilder builder = new StringBuilder((int) size + spec.length());
+        while (builder.length() < size) {
+            builder.append(spec);
+        }
+        content = builder.toString();
+        input = Files.createTempFile("openapi4aws-io", ".yaml");
+        output = Files.createTempFile("openapi4aws-io", ".out.yaml");
+        Files.write(input, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public long readStream() throws IOException {
+        byte[] bytes = Files.readAllBytes(input);
+        return drain(new UnicodeReader(new ByteArrayInputStream(bytes)));
+    }
+
+    @Benchmark
+    public long readChannel() throws IOException {
+        return drain(InputFiles.newReader(InputFiles.read(input, InputFiles.DEFAULT_MAP_THRESHOLD)));
+    }
+
+    @Benchmark
+    public long readStreamingStream() throws IOException {
+        try (Reader reader = new UnicodeReader(new BufferedInputStream(Files.newInputStream(input)))) {
+            return drain(reader);
+        }
+    }
+
+    @Benchmark
+    public long readStreamingChannel() throws IOException {
+        try (Reader reader = InputFiles.newReader(FileChannel.open(input), bufferSize)) {
+            return drain(reader);
+        }
+    }
+
+    @Benchmark
+    public long writeStream() throws IOException {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(output), StandardCharsets.UTF_8)) {
+            fill(writer);
+        }
+        return Files.size(output);
+    }
+
+    @Benchmark
+    public long writeChannel() throws IOException {
+        try (Writer writer = ChannelWriter.open(output, null, bufferSize)) {
+            fill(writer);
+        }
+        return Files.size(output);
+    }
+
+    private static long drain(Reader reader) throws IOException {
+        char[] buffer = new char[READ_CHUNK];
+        long ret = 0;
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            ret += read;
+        }
+        return ret;
+    }
+
+    private void fill(Writer writer) throws IOException {
+        int length = content.length();
+        for (int i = 0; i < length; i += WRITE_CHUNK) {
+            writer.write(content, i, Math.min(WRITE_CHUNK, length - i));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.coderazzi.openapi4aws;
+
+import net.coderazzi.openapi4aws.cli.CliParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Augmentation of a yaml specification from its text, comparing the full load / dump round trip with the
+ * splice mode, which only renders the AWS extensions and security schemes, keeping the rest of the text.
+ * The depth of the request schemas defines how much of the content is not modified.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SpliceBenchmark {
+
+    private static final Path PATH = Paths.get("api.yaml");
+
+    @Param({"1000", "20000"})
+    int operations;
+
+    @Param({"2"})
+    int tagFanOut;
+
+    @Param({"1", "5"})
+    int depth;
+
+    private Openapi4AWS roundTrip;
+    private Openapi4AWS splice;
+    private String content;
+
+    @Setup
+    public void setup() throws IOException {
+        int pathRules = operations / 8;
+        CliParser configuration = new CliParser(SyntheticSpec.writeConfiguration(pathRules, 64).toString());
+        roundTrip = new Openapi4AWS(configuration);
+        splice = new Openapi4AWS(configuration);
+        splice.setSplice(true);
+        content = new SyntheticSpec(operations, tagFanOut, depth).toYaml();
+    }
+
+    @Benchmark
+    public long loadDump() throws IOException {
+        return augment(roundTrip);
+    }
+
+    @Benchmark
+    public long splice() throws IOException {
+        return augment(splice);
+    }
+
+    private long augment(Openapi4AWS engine) throws IOException {
+        CountingWriter writer = new CountingWriter();
+        engine.augment(PATH, new StringReader(content), writer);
+        return writer.getCount();
+    }
+}
@@ -0,0 +1,153 @@
+package net.coderazzi.openapi4aws;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Generator of synthetic openapi specifications, and matching configurations, for benchmarking.
+ * Operations are distributed on paths /serviceN/resourceM, four methods per path. Each operation has
+ * a given number of tags, and a request body whose schema is nested to the given depth.
+ */
+public final class SyntheticSpec {
+
+    public static final String AUTHORIZER = "Cognito";
+    private static final String[] METHODS = {"get", "post", "put", "delete"};
+    private static final int TAGS_POOL = 64;
+    private static final int RESOURCES_PER_SERVICE = 25;
+
+    private final int operations;
+    private final int tagFanOut;
+    private final int depth;
+
+    /**
+     * @param operations number of operations in the specification
+     * @param tagFanOut  number of tags on each operation
+     * @param depth      nesting depth of the schema associated to each operation
+     */
+    public SyntheticSpec(int operations, int tagFanOut, int depth) {
+        this.operations = operations;
+        this.tagFanOut = tagFanOut;
+        this.depth = depth;
+    }
+
+    public static String getPath(int pathIndex) {
+        return "/service" + (pathIndex / RESOURCES_PER_SERVICE) + "/resource" + (pathIndex % RESOURCES_PER_SERVICE);
+    }
+
+    public static String getTag(int index) {
+        return "Tag" + (index % TAGS_POOL);
+    }
+
+    public int getOperations() {
+        return operations;
+    }
+
+    public String getOperationPath(int operation) {
+        return getPath(operation / METHODS.length);
+    }
+
+    public List<String> getTags(int operation) {
+        List<String> ret = new ArrayList<>(tagFanOut);
+        for (int i = 0; i < tagFanOut; i++) {
+            ret.add(getTag(operation + i));
+        }
+        return ret;
+    }
+
+    public Map<String, Object> build() {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        Map<String, Object> info = new LinkedHashMap<>();
+        Map<String, Object> paths = new LinkedHashMap<>();
+        info.put("title", "synthetic");
+        info.put("version", "1.0");
+        ret.put("openapi", "3.0.1");
+        ret.put("info", info);
+        ret.put("paths", paths);
+        for (int i = 0; i < operations; i++) {
+            Map<String, Object> operation = new LinkedHashMap<>();
+            operation.put("tags", getTags(i));
+            operation.put("operationId", "operation" + i);
+            operation.put("requestBody", Collections.singletonMap("content",
+                    Collections.singletonMap("application/json", Collections.singletonMap("schema",
+                            createSchema(depth)))));
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("description", "ok");
+            operation.put("responses", new LinkedHashMap<>(Collections.singletonMap("200", response)));
+            @SuppressWarnings("unchecked")
+            Map<String, Object> pathSpec = (Map<String, Object>)
+                    paths.computeIfAbsent(getOperationPath(i), x -> new LinkedHashMap<>());
+            pathSpec.put(METHODS[i % METHODS.length], operation);
+        }
+        return ret;
+    }
+
+    public String toYaml() {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        return new Yaml(options).dump(build());
+    }
+
+    /**
+     * @param pathRules number of path.* definitions
+     * @param tagRules  number of tag.* definitions
+     * @return the command line arguments defining an authorizer, and the given number of rules
+     */
+    public static String[] getArguments(int pathRules, int tagRules) {
+        List<String> ret = new ArrayList<>();
+        ret.add("authorizer.name=" + AUTHORIZER);
+        ret.add("authorizer.identity-source=$request.header.Authorization");
+        ret.add("authorizer.audience=audience1,audience2");
+        ret.add("authorizer.issuer=https://cognito-idp.eu-west-2.amazonaws.com/pool");
+        for (int i = 0; i < pathRules; i++) {
+            ret.add("path" + getPath(i).replace('/', '.') + "=http://backend:8080" + getPath(i) + ","
+                    + AUTHORIZER + ",user.email");
+        }
+        for (int i = 0; i < tagRules; i++) {
+            ret.add("tag." + getTag(i) + "=http://backend:8080/," + AUTHORIZER + ",user.email,user.id");
+        }
+        return ret.toArray(new String[0]);
+    }
+
+    /**
+     * Writes the arguments of getArguments as a configuration file
+     */
+    public static Path writeConfiguration(int pathRules, int tagRules) throws IOException {
+        Path ret = Files.createTempFile("openapi4aws", ".conf");
+        ret.toFile().deleteOnExit();
+        Files.write(ret, Arrays.asList(getArguments(pathRules, tagRules)), StandardCharsets.UTF_8);
+        return ret;
+    }
+
+    /**
+     * Writes the path.* definitions of getArguments as a TSV route table
+     */
+    public static Path writeRouteTable(int pathRules) throws IOException {
+        Path ret = Files.createTempFile("openapi4aws", ".tsv");
+        ret.toFile().deleteOnExit();
+        List<String> lines = new ArrayList<>(pathRules);
+        for (int i = 0; i < pathRules; i++) {
+            lines.add(getPath(i) + "\thttp://backend:8080" + getPath(i) + "\t" + AUTHORIZER + "\tuser.email");
+        }
+        Files.write(ret, lines, StandardCharsets.UTF_8);
+        return ret;
+    }
+
+    private static Object createSchema(int depth) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        Map<String, Object> properties = new LinkedHashMap<>();
+        ret.put("type", "object");
+        ret.put("properties", properties);
+        properties.put("name", Collections.singletonMap("type", "string"));
+        properties.put("size", Collections.singletonMap("type", "integer"));
+        if (depth > 1) {
+            properties.put("child", createSchema(depth - 1));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,52 @@
+package net.coderazzi.openapi4aws;
+
+import org.openjdk.jmh.annotations.*;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SnakeYAML load and dump of synthetic specifications, using the same options as Openapi4AWS
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class YamlBenchmark {
+
+    @Param({"100", "2000"})
+    int operations;
+
+    @Param({"2"})
+    int tagFanOut;
+
+    @Param({"1", "5"})
+    int depth;
+
+    private Yaml yaml;
+    private String content;
+    private Map<String, Object> specification;
+
+    @Setup
+    public void setup() {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        yaml = new Yaml(options);
+        SyntheticSpec spec = new SyntheticSpec(operations, tagFanOut, depth);
+        content = spec.toYaml();
+        specification = spec.build();
+    }
+
+    @Benchmark
+    public Map<String, Object> load() {
+        return yaml.load(content);
+    }
+
+    @Benchmark
+    public String dump() {
+        return yaml.dump(specification);
+    }
+}
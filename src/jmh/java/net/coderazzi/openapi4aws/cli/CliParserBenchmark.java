@@ -0,0 +1,35 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.SyntheticSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of command line arguments with many path.* and tag.* definitions
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CliParserBenchmark {
+
+    @Param({"100", "10000"})
+    int pathRules;
+
+    @Param({"64"})
+    int tagRules;
+
+    private String[] arguments;
+
+    @Setup
+    public void setup() {
+        arguments = SyntheticSpec.getArguments(pathRules, tagRules);
+    }
+
+    @Benchmark
+    public CliParser parse() {
+        return new CliParser(arguments);
+    }
+}
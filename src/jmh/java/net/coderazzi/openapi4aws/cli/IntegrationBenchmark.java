@@ -0,0 +1,51 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.Configuration;
+import net.coderazzi.openapi4aws.SyntheticSpec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of the integration for each operation of a synthetic specification, where half the paths
+ * are resolved by a path rule, and the rest by tags. Each invocation resolves all the operations.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IntegrationBenchmark {
+
+    private static final int OPERATIONS = 4000;
+
+    @Param({"1", "4"})
+    int tagFanOut;
+
+    private Configuration configuration;
+    private String[] paths;
+    private List<?>[] tags;
+
+    @Setup
+    public void setup() {
+        SyntheticSpec spec = new SyntheticSpec(OPERATIONS, tagFanOut, 1);
+        configuration = new CliParser(SyntheticSpec.getArguments(OPERATIONS / 8, 64));
+        paths = new String[OPERATIONS];
+        tags = new List<?>[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            paths[i] = spec.getOperationPath(i);
+            tags[i] = spec.getTags(i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    @SuppressWarnings("unchecked")
+    public void getIntegration(Blackhole blackhole) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            blackhole.consume(configuration.getIntegration(paths[i], (List<String>) tags[i]));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.SyntheticSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of large route tables, defined as path.* parameters in a configuration file, or as a routes= table.
+ * Besides the load time, the heap retained by the loaded configuration is printed on each trial.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RouteTableBenchmark {
+
+    @Param({"100000"})
+    int routes;
+
+    @Param({"configuration", "routes"})
+    String source;
+
+    private String[] arguments;
+    private CliParser retained;
+
+    @Setup
+    public void setup() throws IOException {
+        if ("routes".equals(source)) {
+            List<String> list = new ArrayList<>(Arrays.asList(SyntheticSpec.getArguments(0, 0)));
+            list.add("routes=" + SyntheticSpec.writeRouteTable(routes));
+            arguments = list.toArray(new String[0]);
+        } else {
+            arguments = new String[]{"configuration=" + SyntheticSpec.writeConfiguration(routes, 0)};
+        }
+        long before = getUsedHeap();
+        retained = load();
+        long after = getUsedHeap();
+        retained = null;
+        System.out.printf("%nRetained heap (%s, %d routes): %.1f MB%n", source, routes,
+                (after - before) / (1024.0 * 1024.0));
+    }
+
+    @Benchmark
+    public CliParser load() {
+        return new CliParser(arguments);
+    }
+
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
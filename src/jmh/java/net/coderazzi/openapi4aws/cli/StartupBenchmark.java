@@ -0,0 +1,75 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.SyntheticSpec;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time of a complete command line run on a single small file, launching a new JVM on each invocation,
+ * with and without a class data sharing archive. Archives require java 13 or later.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@BenchmarkMode(Mode.SingleShotTime)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+
+    @Param({"false", "true"})
+    boolean cds;
+
+    private List<String> command;
+    private File log;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        Path folder = Files.createTempDirectory("openapi4aws");
+        Path spec = folder.resolve("spec.yaml");
+        Files.write(spec, new SyntheticSpec(100, 2, 3).toYaml().getBytes(StandardCharsets.UTF_8));
+        Path output = Files.createDirectory(folder.resolve("output"));
+        log = folder.resolve("log").toFile();
+        List<String> arguments = new ArrayList<>();
+        arguments.add("configuration=" + SyntheticSpec.writeConfiguration(100, 64));
+        arguments.add("filename=" + spec);
+        arguments.add("output-folder=" + output);
+        command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (cds) {
+            Path archive = folder.resolve("openapi4aws.jsa");
+            List<String> create = new ArrayList<>(command);
+            create.add("-cp");
+            create.add(System.getProperty("java.class.path"));
+            create.add(CliParser.class.getName());
+            create.addAll(arguments);
+            create.add("create-cds-archive=" + archive);
+            run(create);
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CliParser.class.getName());
+        command.addAll(arguments);
+    }
+
+    @Benchmark
+    public int run() throws IOException, InterruptedException {
+        return run(command);
+    }
+
+    private int run(List<String> command) throws IOException, InterruptedException {
+        int ret = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start().waitFor();
+        if (ret != 0) {
+            throw new IllegalStateException("Run failed, see " + log);
+        }
+        return ret;
+    }
+}
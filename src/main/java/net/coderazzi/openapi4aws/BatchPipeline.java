@@ -0,0 +1,236 @@
+package net.coderazzi.openapi4aws;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Pipeline to process a batch of items through a sequence of stages, each stage running on its own
+ * set of worker threads and connected to the next stage through a bounded queue.
+ * Items failing in one stage are not passed to the following stages; only failures raised as O4A_Exception
+ * allow the processing of the other items to keep going.
+ * With a single worker, all the stages run sequentially on the calling thread.
+ */
+class BatchPipeline<T> {
+
+    private final Object end = new Object();
+    private final List<Stage> stages = new ArrayList<>();
+    private final NavigableMap<Long, String> failures = new TreeMap<>();
+    private final int workers;
+    private final boolean keepGoing;
+    // items after this one are not processed anymore
+    private volatile long stopIndex = Long.MAX_VALUE;
+
+    /**
+     * @param workers   number of threads on each stage
+     * @param keepGoing if false, the processing of the batch stops after the first failure
+     */
+    BatchPipeline(int workers, boolean keepGoing) {
+        this.workers = Math.max(1, workers);
+        this.keepGoing = keepGoing;
+    }
+
+    /**
+     * Adds a new stage to the pipeline
+     *
+     * @param name   stage name, used to name the worker threads
+     * @param action action to perform on each item
+     * @return this pipeline
+     */
+    BatchPipeline<T> stage(String name, Consumer<T> action) {
+        stages.add(new Stage(name, action));
+        return this;
+    }
+
+    /**
+     * Adds a filter to the last defined stage: items not matching the predicate are not passed to the next stages
+     *
+     * @param predicate condition to keep processing an item
+     * @return this pipeline
+     */
+    BatchPipeline<T> filter(Predicate<T> predicate) {
+        stages.get(stages.size() - 1).filter = predicate;
+        return this;
+    }
+
+    /**
+     * Runs all the items through the pipeline, waiting until all are processed.
+     * If keepGoing is false, the processing stops on the first failure: as when running sequentially, the items
+     * before the failed one are still processed, and any failure on them is the one reported, but, with several
+     * workers, some items after it could have been processed already.
+     *
+     * @param items the items to process
+     * @return the error messages for the failed items, sorted. If keepGoing is false, it contains the first error
+     */
+    List<String> run(Collection<T> items) {
+        if (stages.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (workers == 1) {
+            runInline(items);
+        } else {
+            runParallel(items);
+        }
+        List<String> ret = new ArrayList<>();
+        synchronized (failures) {
+            if (keepGoing) {
+                ret.addAll(failures.values());
+            } else if (!failures.isEmpty()) {
+                ret.add(failures.firstEntry().getValue());
+            }
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    private void runParallel(Collection<T> items) {
+        int capacity = 2 * workers;
+        List<BlockingQueue<Object>> queues = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(capacity));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(stages.size() * workers, r -> {
+            Thread ret = new Thread(r);
+            ret.setDaemon(true);
+            return ret;
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            BlockingQueue<Object> input = queues.get(i);
+            // the last stage has no output queue: its results are already stored in the items
+            BlockingQueue<Object> output = i + 1 == stages.size() ? null : queues.get(i + 1);
+            for (int w = 0; w < workers; w++) {
+                futures.add(executor.submit(() -> stage.work(input, output)));
+            }
+        }
+        try {
+            BlockingQueue<Object> first = queues.get(0);
+            long index = 0;
+            for (T item : items) {
+                if (index > stopIndex) {
+                    break;
+                }
+                first.put(new Item<>(index++, item));
+            }
+            first.put(end);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            throw new O4A_Exception("Processing interrupted");
+        } catch (ExecutionException eex) {
+            Throwable cause = eex.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new O4A_Exception(cause.toString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs all items through all the stages on the current thread, one item at a time
+     */
+    private void runInline(Collection<T> items) {
+        long index = 0;
+        for (T item : items) {
+            if (index > stopIndex) {
+                break;
+            }
+            for (Stage stage : stages) {
+                if (!stage.process(index, item)) {
+                    break;
+                }
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Records the failure of the item, stopping the processing of the items after it if required
+     */
+    private void fail(long index, String message, boolean stop) {
+        synchronized (failures) {
+            failures.putIfAbsent(index, message);
+            if (stop && index < stopIndex) {
+                stopIndex = index;
+            }
+        }
+    }
+
+    private static final class Item<T> {
+        final long index;
+        final T value;
+
+        Item(long index, T value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    private class Stage {
+        private final String name;
+        private final Consumer<T> action;
+        private final AtomicInteger running = new AtomicInteger(workers);
+        private Predicate<T> filter;
+
+        Stage(String name, Consumer<T> action) {
+            this.name = name;
+            this.action = action;
+        }
+
+        /**
+         * Runs the action on the item, unless the processing stopped before it
+         *
+         * @return true if the item must be passed to the next stage
+         */
+        boolean process(long index, T item) {
+            if (index > stopIndex) {
+                return false;
+            }
+            try {
+                action.accept(item);
+                return filter == null || filter.test(item);
+            } catch (O4A_Exception ex) {
+                fail(index, ex.getMessage(), !keepGoing);
+            } catch (Throwable ex) {
+                // unexpected error, like a StackOverflowError on deeply nested content: never keep going
+                fail(index, ex.toString(), true);
+            }
+            return false;
+        }
+
+        /**
+         * Processes the items in the input queue until its end is found, which is then passed to the output
+         * once all the workers of the stage are done, even if any worker fails
+         */
+        @SuppressWarnings("unchecked")
+        void work(BlockingQueue<Object> input, BlockingQueue<Object> output) {
+            Thread.currentThread().setName("openapi4aws-" + name);
+            try {
+                Object next = input.take();
+                while (next != end) {
+                    Item<T> item = (Item<T>) next;
+                    if (process(item.index, item.value) && output != null) {
+                        output.put(item);
+                    }
+                    next = input.take();
+                }
+                // let any sibling worker see the end as well
+                input.put(end);
+            } catch (InterruptedException iex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (running.decrementAndGet() == 0 && output != null) {
+                    try {
+                        output.put(end);
+                    } catch (InterruptedException iex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manifest of the files processed on a previous run, used to skip the files whose content and configuration
+ * did not change. It maps each input file to the hash of its content, and the hash and size of the
+ * generated output. The whole manifest is associated to the fingerprint of the configuration used: if
+ * the configuration changes, the manifest is discarded.
+ */
+class BuildManifest {
+
+    static final String FILENAME = ".openapi4aws-manifest";
+    private static final String HEADER = "# openapi4aws manifest, do not edit";
+    private static final String CONFIGURATION = "configuration ";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path location;
+    private final String fingerprint;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private BuildManifest(Path location, String fingerprint) {
+        this.location = location;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Loads the manifest stored in the given folder, if any, and if it matches the given configuration fingerprint
+     *
+     * @param folder      where the manifest is stored, the current folder if null
+     * @param fingerprint fingerprint of the current configuration
+     * @return the manifest, which is empty if there was no previous manifest, or the fingerprint changed
+     */
+    static BuildManifest load(Path folder, String fingerprint) {
+        Path location = folder == null ? Paths.get(FILENAME) : folder.resolve(FILENAME);
+        BuildManifest ret = new BuildManifest(location, fingerprint);
+        if (Files.isRegularFile(location)) {
+            try {
+                List<String> lines = Files.readAllLines(location, StandardCharsets.UTF_8);
+                if (lines.size() > 1 && lines.get(1).equals(CONFIGURATION + fingerprint)) {
+                    for (String line : lines.subList(2, lines.size())) {
+                        String[] parts = line.split("\t", 4);
+                        if (parts.length == 4) {
+                            ret.entries.put(parts[3], new Entry(parts[0], parts[1], Long.parseLong(parts[2])));
+                        }
+                    }
+                }
+            } catch (IOException | NumberFormatException ex) {
+                // an invalid manifest is just discarded
+                ret.entries.clear();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param input      the input file
+     * @param inputHash  hash of the current content of the input file
+     * @param outputPath the output file
+     * @return true if the output file was generated from this very same input content and configuration
+     */
+    boolean isUpToDate(Path input, String inputHash, Path outputPath) {
+        Entry entry = entries.get(getKey(input));
+        if (entry == null) {
+            return false;
+        }
+        // when the input is overwritten, its current content is the output of the previous run
+        boolean inPlace = input.toAbsolutePath().normalize().equals(outputPath.toAbsolutePath().normalize());
+        if (!entry.inputHash.equals(inputHash) && !(inPlace && entry.outputHash.equals(inputHash))) {
+            return false;
+        }
+        try {
+            return Files.size(outputPath) == entry.outputSize;
+        } catch (IOException ioex) {
+            return false;
+        }
+    }
+
+    void update(Path input, String inputHash, String outputHash, long outputSize) {
+        entries.put(getKey(input), new Entry(inputHash, outputHash, outputSize));
+    }
+
+    void save() {
+        try {
+            Path tmp = Files.createTempFile(location.toAbsolutePath().getParent(), FILENAME, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                writer.write(CONFIGURATION + fingerprint);
+                writer.newLine();
+                for (Map.Entry<String, Entry> each : new TreeMap<>(entries).entrySet()) {
+                    Entry entry = each.getValue();
+                    writer.write(entry.inputHash + "\t" + entry.outputHash + "\t" + entry.outputSize + "\t"
+                            + each.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, location, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError writing manifest '" + location + "' : " + ioex);
+        }
+    }
+
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new O4A_Exception("SHA-256 not supported: " + ex);
+        }
+    }
+
+    static String hash(ByteBuffer content) {
+        MessageDigest digest = createDigest();
+        digest.update(content.duplicate());
+        return toHex(digest.digest());
+    }
+
+    static String toHex(byte[] digest) {
+        char[] ret = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            ret[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+            ret[2 * i + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(ret);
+    }
+
+    private static String getKey(Path input) {
+        return input.toAbsolutePath().normalize().toString();
+    }
+
+    private static class Entry {
+        final String inputHash;
+        final String outputHash;
+        final long outputSize;
+
+        Entry(String inputHash, String outputHash, long outputSize) {
+            this.inputHash = inputHash;
+            this.outputHash = outputHash;
+            this.outputSize = outputSize;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Writer encoding its content as UTF-8 into a channel, through buffers of a given size. The written bytes
+ * can be added to a digest as well. Content is only written when the char buffer is full, on flush, and on
+ * close, which flushes the writer before closing the channel.
+ */
+final class ChannelWriter extends Writer {
+
+    private final WritableByteChannel channel;
+    private final MessageDigest digest;
+    private final Flushable sink;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+    private boolean closed;
+
+    /**
+     * @param channel    the destination
+     * @param digest     digest to update with the written bytes, can be null
+     * @param bufferSize size of the char and byte buffers
+     */
+    ChannelWriter(WritableByteChannel channel, MessageDigest digest, int bufferSize) {
+        this(channel, digest, bufferSize, null);
+    }
+
+    /**
+     * Writer into a stream, which is flushed as well when the writer is flushed
+     *
+     * @param bufferSize size of the char and byte buffers
+     */
+    ChannelWriter(OutputStream output, int bufferSize) {
+        this(Channels.newChannel(output), null, bufferSize, output);
+    }
+
+    private ChannelWriter(WritableByteChannel channel, MessageDigest digest, int bufferSize, Flushable sink) {
+        this.channel = channel;
+        this.digest = digest;
+        this.sink = sink;
+        this.chars = CharBuffer.allocate(Math.max(bufferSize, 16));
+        // encoders are much faster on heap buffers than on direct ones
+        this.bytes = ByteBuffer.allocate(Math.max(bufferSize, 16));
+    }
+
+    /**
+     * @return a writer creating or replacing the given file
+     */
+    static ChannelWriter open(Path path, MessageDigest digest, int bufferSize) throws IOException {
+        return new ChannelWriter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), digest, bufferSize);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (!chars.hasRemaining()) {
+            encode(false);
+        }
+        chars.put((char) c);
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int n = Math.min(length, chars.remaining());
+            chars.put(buffer, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void write(String s, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!chars.hasRemaining()) {
+                encode(false);
+            }
+            int n = Math.min(length, chars.remaining());
+            chars.put(s, offset, offset + n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+        if (sink != null) {
+            sink.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            try {
+                encode(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Encodes the buffered chars, writing them to the channel. A high surrogate at the end of the buffer is kept
+     * until the next call, unless this is the end of the input
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        chars.flip();
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (result.isUnderflow()) {
+                break;
+            }
+            drain();
+        }
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow()) {
+                drain();
+            }
+        }
+        drain();
+        chars.compact();
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        if (digest != null) {
+            digest.update(bytes.duplicate());
+        }
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
@@ -1,49 +1,110 @@
 package net.coderazzi.openapi4aws;
 
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.util.*;
 
 public abstract class Configuration {
+
+    // duration and result of the last search of input files, reported on instrumented runs
+    private volatile long scanNanos;
+    private volatile int scanFiles;
+
     public abstract Map<String, Authorizer> getAuthorizers();
 
     public abstract Integration getIntegration(String path, List<String> tags);
 
+    /**
+     * @return a fingerprint of the configuration, used to detect configuration changes between runs.
+     * By default, it returns null, meaning that changes cannot be detected, disabling any incremental processing
+     */
+    public String getFingerprint() {
+        return null;
+    }
+
+    /**
+     * Utility method to compute a fingerprint
+     *
+     * @param parts the information to include in the fingerprint, in the expected order
+     * @return the fingerprint, as an hexadecimal string
+     */
+    protected static String computeFingerprint(List<String> parts) {
+        MessageDigest digest = BuildManifest.createDigest();
+        for (String each : parts) {
+            digest.update(String.valueOf(each).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return BuildManifest.toHex(digest.digest());
+    }
+
     /**
      * Utility method to find all the paths associated to a single configuration (filenames + globs)
      *
      * @param filenames collection of specific filenames
-     * @param globs     collection of glob specifications, which return no matching paths
+     * @param globs     collection of glob specifications; globs matching no files add no paths
      * @return the existing matching paths
      */
     protected final Collection<Path> getPaths(Collection<String> filenames, Collection<String> globs) {
-        Set<Path> ret = new HashSet<>();
+        return getPaths(filenames, globs, null);
+    }
+
+    /**
+     * Utility method to find all the paths associated to a single configuration (filenames + globs).
+     * The current folder is walked only once, whatever the number of globs, skipping any folders that
+     * cannot contain matching files.
+     *
+     * @param filenames collection of specific filenames
+     * @param globs     collection of glob specifications; globs matching no files add no paths
+     * @param excludes  collection of glob specifications for files or folders to exclude from the globs results
+     * @return the existing matching paths, sorted
+     */
+    protected final Collection<Path> getPaths(Collection<String> filenames, Collection<String> globs,
+                                              Collection<String> excludes) {
+        Instrumentation.Timer timer = Instrumentation.startScan();
+        Set<Path> ret = new TreeSet<>();
         if (filenames != null) {
             filenames.forEach(x -> ret.add(Paths.get(x)));
         }
+        if (globs != null && !globs.isEmpty()) {
+            new PathScanner(globs, excludes).scan(ret);
+        }
+        scanFiles = ret.size();
+        scanNanos = timer.scan(globs, ret.size());
+        return ret;
+    }
+
+    /**
+     * @return the duration of the last search of input files, in nanoseconds, or 0 if there was none
+     */
+    final long getScanNanos() {
+        return scanNanos;
+    }
+
+    /**
+     * @return the number of files found on the last search of input files
+     */
+    final int getScanFiles() {
+        return scanFiles;
+    }
+
+    /**
+     * Utility method to find the folders where the files matching the given globs are located: the literal
+     * base folder of each glob, or the current folder if the glob has none, and how deep below them
+     *
+     * @param globs collection of glob specifications
+     * @return the base folders, which could not exist, with the maximum depth of the folders below them that
+     * can contain matching files (0 if only the base folder, -1 if there is no limit)
+     */
+    protected static Map<Path, Integer> getGlobFolders(Collection<String> globs) {
+        Map<Path, Integer> ret = new TreeMap<>();
         if (globs != null) {
-            for (String each : globs) {
-                try {
-                    final PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + each);
-                    Files.walkFileTree(FileSystems.getDefault().getPath(""), new SimpleFileVisitor<Path>() {
-                        @Override
-                        public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
-                            if (pathMatcher.matches(path)) {
-                                ret.add(path);
-                            }
-                            return FileVisitResult.CONTINUE;
-                        }
-
-                        @Override
-                        public FileVisitResult visitFileFailed(Path file, IOException exc) {
-                            return FileVisitResult.CONTINUE;
-                        }
-                    });
-                } catch (IOException iex) {
-                    throw new O4A_Exception("IOError while looking for glob " + each + ": " + iex);
-                }
-            }
+            globs.forEach(x -> {
+                Path base = PathScanner.getBase(x);
+                int depth = PathScanner.getMaxDepth(x);
+                ret.merge(base == null ? Paths.get("") : base, depth,
+                        (a, b) -> a == -1 || b == -1 ? -1 : Math.max(a, b));
+            });
         }
         return ret;
     }
@@ -73,6 +134,29 @@ public abstract class Configuration {
         return ret;
     }
 
+    /**
+     * Utility to find a suitable integration for a route path with given tags, using an index of routes.
+     * This supports routes with templates and wildcards, see {@link RouteIndex}. For routes ending in '**', the URI
+     * of the integration is followed by the part of the path matched by '**'. Otherwise, it is used as defined.
+     *
+     * @param path          the route path to match
+     * @param pathTags      any tags associated to that path
+     * @param routes        integration paths to use, indexed by route
+     * @param lowerCaseTags integration tags to use, as a map from the tag names in lower case to the defined
+     *                      integrations
+     * @return the most suitable integration
+     */
+    protected final Integration getIntegration(String path, List<String> pathTags,
+                                               RouteIndex<? extends Integration> routes,
+                                               Map<String, ? extends Integration> lowerCaseTags) {
+        RouteIndex.Match<? extends Integration> match = routes.match(path);
+        if (match == null) {
+            return getIntegration(path, pathTags, Collections.emptyMap(), lowerCaseTags);
+        }
+        String remainder = match.getRemainder();
+        return remainder == null ? match.getValue() : new PrefixIntegration(match.getValue(), remainder);
+    }
+
 
     public interface Authorizer {
         String getIdentitySource();
@@ -96,4 +180,47 @@ public abstract class Configuration {
         String getUri(String path);
     }
 
+    /**
+     * Integration found by a route ending in '**': its URI is followed by the path matched by '**'
+     */
+    private static final class PrefixIntegration implements Integration {
+        private final Integration integration;
+        private final String remainder;
+
+        PrefixIntegration(Integration integration, String remainder) {
+            this.integration = integration;
+            this.remainder = remainder;
+        }
+
+        @Override
+        public List<String> getScopes() {
+            return integration.getScopes();
+        }
+
+        @Override
+        public String getAuthorizer() {
+            return integration.getAuthorizer();
+        }
+
+        @Override
+        public String getUri(String path) {
+            String uri = integration.getUri(path);
+            return uri.endsWith("/") && !remainder.isEmpty() ? uri + remainder.substring(1) : uri + remainder;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PrefixIntegration)) {
+                return false;
+            }
+            PrefixIntegration other = (PrefixIntegration) o;
+            return integration == other.integration && remainder.equals(other.remainder);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(integration) * 31 + remainder.hashCode();
+        }
+    }
+
 }
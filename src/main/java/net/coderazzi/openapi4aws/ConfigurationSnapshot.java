@@ -0,0 +1,218 @@
+package net.coderazzi.openapi4aws;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable view of a Configuration, compiled once per run and shareable across threads.
+ * It holds the prebuilt security schemas, and memoizes the integration resolved for each (path, tags)
+ * combination, so that augmenting an operation only allocates the structures included in the output.
+ * When sharing structures, identical generated structures are returned as the same instance, which is then
+ * written once in yaml, with aliases ({@code *id001}) to its anchor ({@code &id001}) on any other occurrence.
+ * The memoized resolutions and shared structures are bounded, and discarded once the bound is exceeded, as
+ * long-lived engines (like those of the augment server) can see any number of different paths.
+ */
+final class ConfigurationSnapshot {
+
+    private static final Resolution NO_RESOLUTION = new Resolution(null, null, null, Match.NONE, false);
+    static final int MAX_RESOLUTIONS = 1 << 16;
+    private static final int MAX_SHARED = 1 << 16;
+
+    private final Configuration configuration;
+    private final Map<String, Map<String, Object>> securitySchemas = new LinkedHashMap<>();
+    private final Map<String, Map<List<String>, Resolution>> resolutions = new ConcurrentHashMap<>();
+    private final AtomicInteger resolved = new AtomicInteger();
+    private final Map<String, String> httpMethods = new ConcurrentHashMap<>();
+    // canonical instances of the generated structures, null if they are not shared
+    private final Map<Object, Object> shared;
+
+    ConfigurationSnapshot(Configuration configuration) {
+        this(configuration, false);
+    }
+
+    /**
+     * @param share true to return the same instance for identical generated structures, which then must not
+     *              be modified
+     */
+    ConfigurationSnapshot(Configuration configuration, boolean share) {
+        this.configuration = configuration;
+        this.shared = share ? new ConcurrentHashMap<>() : null;
+        Map<String, Configuration.Authorizer> authorizers = configuration.getAuthorizers();
+        if (authorizers != null) {
+            authorizers.forEach((name, authorizer) -> securitySchemas.put(name, createSecuritySchema(authorizer)));
+        }
+    }
+
+    /**
+     * @return a new copy of the security schemas to include in the specification, as a map from authorizer
+     * name to the schema definition. It is empty if there are no authorizers
+     */
+    Map<String, Object> getSecuritySchemas() {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        securitySchemas.forEach((name, schema) -> {
+            Object value = copy(schema);
+            ret.put(name, shared == null ? value : share(value));
+        });
+        return ret;
+    }
+
+    /**
+     * @return the AWS extensions to include in a given operation (integration, security), which can be empty.
+     * When sharing structures, the returned map is shared as well
+     */
+    Map<String, Object> getExtensions(String path, String method, List<String> tags) {
+        Resolution resolution = resolve(path, tags);
+        if (resolution == NO_RESOLUTION) {
+            return Collections.emptyMap();
+        }
+        if (shared != null) {
+            return resolution.extensions.computeIfAbsent(method, x -> share(createExtensions(resolution, x)));
+        }
+        return createExtensions(resolution, method);
+    }
+
+    private Map<String, Object> createExtensions(Resolution resolution, String method) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        final Map<String, String> integration = new LinkedHashMap<>();
+        integration.put("payloadFormatVersion", Openapi4AWS.DEFAULT_INTEGRATION_PAYLOAD_FORMAT_VERSION);
+        integration.put("type", Openapi4AWS.DEFAULT_INTEGRATION_TYPE);
+        integration.put("connectionType", Openapi4AWS.DEFAULT_INTEGRATION_CONNECTION_TYPE);
+        integration.put("httpMethod", httpMethods.computeIfAbsent(method, x -> x.toUpperCase(Locale.ROOT)));
+        integration.put("uri", resolution.uri);
+        ret.put(Openapi4AWS.INTEGRATION, integration);
+
+        if (resolution.authorizer != null) {
+            Map<String, Object> scopes = new LinkedHashMap<>();
+            scopes.put(resolution.authorizer, new ArrayList<>(resolution.scopes));
+            final List<Object> securityScope = new ArrayList<>(1);
+            securityScope.add(scopes);
+            ret.put(Openapi4AWS.SECURITY, securityScope);
+        }
+        return ret;
+    }
+
+    /**
+     * @return how the integration for the given path and tags is found, if any
+     */
+    Match getMatch(String path, List<String> tags) {
+        return resolve(path, tags).match;
+    }
+
+    private Resolution resolve(String path, List<String> tags) {
+        if (resolved.get() > MAX_RESOLUTIONS && resolved.getAndSet(0) > MAX_RESOLUTIONS) {
+            resolutions.clear();
+        }
+        Map<List<String>, Resolution> byTags = resolutions.get(path);
+        if (byTags == null) {
+            byTags = resolutions.computeIfAbsent(path, x -> new ConcurrentHashMap<>());
+        }
+        Resolution ret = byTags.get(tags);
+        if (ret == null) {
+            // the key must be immutable, the given tags belong to the specification
+            ret = byTags.computeIfAbsent(Collections.unmodifiableList(new ArrayList<>(tags)), x -> {
+                resolved.incrementAndGet();
+                Instrumentation.Timer timer = Instrumentation.startResolution();
+                Resolution resolution = NO_RESOLUTION;
+                Configuration.Integration integration = configuration.getIntegration(path, x);
+                if (integration != null) {
+                    // the integration is found by path if the tags are not needed to find it
+                    Match match = x.isEmpty() || integration.equals(configuration.getIntegration(path,
+                            Collections.emptyList())) ? Match.PATH : Match.TAG;
+                    resolution = new Resolution(integration.getUri(path), integration.getAuthorizer(),
+                            integration.getScopes(), match, shared != null);
+                }
+                timer.resolution(path, x, resolution.match);
+                return resolution;
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of (path, tags) combinations currently memoized
+     */
+    int getResolutions() {
+        return resolutions.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private static Map<String, Object> createSecuritySchema(Configuration.Authorizer authorizer) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        Map<String, Object> authorizerInfo = new LinkedHashMap<>();
+        Map<String, Object> configuration = new LinkedHashMap<>();
+        ret.put("type", authorizer.getAuthorizationType());
+        ret.put("flows", new HashMap<>(authorizer.getFlows()));
+        ret.put("x-amazon-apigateway-authorizer", authorizerInfo);
+        authorizerInfo.put("identitySource", authorizer.getIdentitySource());
+        authorizerInfo.put("type", authorizer.getType());
+        authorizerInfo.put("jwtConfiguration", configuration);
+        configuration.put("audience", new ArrayList<>(authorizer.getAudience()));
+        configuration.put("issuer", authorizer.getIssuer());
+        return ret;
+    }
+
+    /**
+     * Replaces, recursively, the given structure with its canonical instance. Empty structures are not
+     * shared, as their aliases would be longer
+     *
+     * @return the canonical instance
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T share(T obj) {
+        if (obj instanceof Map && !((Map<?, ?>) obj).isEmpty()) {
+            ((Map<Object, Object>) obj).replaceAll((k, v) -> share(v));
+        } else if (obj instanceof List && !((List<?>) obj).isEmpty()) {
+            ((List<Object>) obj).replaceAll(this::share);
+        } else {
+            return obj;
+        }
+        if (shared.size() > MAX_SHARED) {
+            // the instances already returned are still valid, they are just not shared with the new ones
+            shared.clear();
+        }
+        return (T) shared.computeIfAbsent(obj, x -> x);
+    }
+
+    /**
+     * Deep copy of the given structure (maps and lists), so that the output never shares instances
+     */
+    @SuppressWarnings("unchecked")
+    static Object copy(Object obj) {
+        if (obj instanceof Map) {
+            Map<Object, Object> ret = new LinkedHashMap<>();
+            ((Map<Object, Object>) obj).forEach((k, v) -> ret.put(k, copy(v)));
+            return ret;
+        }
+        if (obj instanceof List) {
+            List<Object> source = (List<Object>) obj;
+            List<Object> ret = new ArrayList<>(source.size());
+            source.forEach(x -> ret.add(copy(x)));
+            return ret;
+        }
+        return obj;
+    }
+
+    private static class Resolution {
+        final String uri;
+        final String authorizer;
+        final List<String> scopes;
+        final Match match;
+        // the shared extensions for each method, only used when sharing structures
+        final Map<String, Map<String, Object>> extensions;
+
+        Resolution(String uri, String authorizer, List<String> scopes, Match match, boolean share) {
+            this.uri = uri;
+            this.authorizer = authorizer;
+            this.scopes = scopes == null ? null : Collections.unmodifiableList(new ArrayList<>(scopes));
+            this.match = match;
+            this.extensions = share ? new ConcurrentHashMap<>() : null;
+        }
+    }
+
+    /**
+     * How the integration of an operation is found: by its path, by its tags, or not found
+     */
+    enum Match {
+        PATH, TAG, NONE
+    }
+}
@@ -0,0 +1,39 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.Writer;
+
+/**
+ * Writer discarding its content, just counting the number of characters written
+ */
+final class CountingWriter extends Writer {
+    private long count;
+
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+        count += length;
+    }
+
+    @Override
+    public void write(int c) {
+        count++;
+    }
+
+    @Override
+    public void write(String s, int offset, int length) {
+        count += length;
+    }
+
+    @Override
+    public void flush() {
+        // nothing to flush
+    }
+
+    @Override
+    public void close() {
+        // nothing to close
+    }
+}
@@ -0,0 +1,90 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Thread-safe cache of parsed documents, keyed by their canonical path, with a bounded size and LRU eviction.
+ * Cached documents are discarded if the file is modified afterwards, using its modification time.
+ * Errors are raised as O4A_Exceptions, with messages relative to the file referencing the document.
+ * Concurrent requests for the same document load it only once; the returned documents are shared, and must
+ * not be modified.
+ */
+final class DocumentCache {
+
+    private final Function<Path, Object> loader;
+    private final Map<Path, Document> documents;
+    private int loads;
+
+    /**
+     * @param size   maximum number of documents kept
+     * @param loader function to parse a file, raising an O4A_Exception on errors
+     */
+    DocumentCache(int size, Function<Path, Object> loader) {
+        if (size < 1) {
+            throw new O4A_Exception("invalid cache size: " + size);
+        }
+        this.loader = loader;
+        this.documents = new LinkedHashMap<Path, Document>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Document> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * @return the parsed document
+     */
+    Object get(Path path) {
+        Path canonical;
+        long modified;
+        try {
+            canonical = path.toRealPath();
+            modified = Files.getLastModifiedTime(canonical).toMillis();
+        } catch (IOException ioex) {
+            throw new O4A_Exception(": cannot read referenced file '" + path + "' : " + ioex);
+        }
+        Document document;
+        synchronized (documents) {
+            document = documents.get(canonical);
+            if (document == null || document.modified != modified) {
+                document = new Document(modified);
+                documents.put(canonical, document);
+            }
+        }
+        return document.load(canonical);
+    }
+
+    /**
+     * @return the number of documents loaded so far, including those already evicted
+     */
+    int getLoads() {
+        synchronized (documents) {
+            return loads;
+        }
+    }
+
+    private final class Document {
+        final long modified;
+        private Object content;
+
+        Document(long modified) {
+            this.modified = modified;
+        }
+
+        synchronized Object load(Path path) {
+            if (content == null) {
+                content = loader.apply(path);
+                synchronized (documents) {
+                    loads++;
+                }
+            }
+            return content;
+        }
+    }
+}
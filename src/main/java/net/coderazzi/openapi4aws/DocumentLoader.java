@@ -0,0 +1,208 @@
+package net.coderazzi.openapi4aws;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.representer.Representer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Loads the specifications and any other yaml or json documents (referenced files, patches, existing outputs),
+ * enforcing the load limits. Files with extension .json are parsed with the faster json parser.
+ * It can be used concurrently from multiple threads, as each thread gets its own SnakeYAML instance.
+ */
+final class DocumentLoader {
+
+    private static final String JSON_EXTENSION = ".json";
+
+    private final LoadLimits limits;
+    private final long mapThreshold;
+    // Yaml instances are not thread safe
+    private final ThreadLocal<Yaml> yaml = ThreadLocal.withInitial(this::createYaml);
+
+    /**
+     * @param limits       the limits to enforce
+     * @param mapThreshold minimum size of the files read through memory mapping
+     */
+    DocumentLoader(LoadLimits limits, long mapThreshold) {
+        this.limits = limits;
+        this.mapThreshold = mapThreshold;
+    }
+
+    LoadLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return the yaml instance of the current thread
+     */
+    Yaml getYaml() {
+        return yaml.get();
+    }
+
+    /**
+     * @return a new yaml instance, for any use that cannot share the thread's one
+     */
+    Yaml createYaml() {
+        DumperOptions dumperOptions = createDumperOptions();
+        LoaderOptions loaderOptions = new LoaderOptions();
+        if (limits.getMaxAliases() > 0) {
+            loaderOptions.setMaxAliasesForCollections(limits.getMaxAliases());
+        }
+        if (limits.isEnabled()) {
+            return new GuardedYaml(limits, loaderOptions, dumperOptions);
+        }
+        return new Yaml(new Constructor(loaderOptions), new Representer(dumperOptions), dumperOptions,
+                loaderOptions);
+    }
+
+    /**
+     * @return the options to emit yaml, shared, so they must not be modified
+     */
+    static DumperOptions getDumperOptions() {
+        return SharedDumperOptions.options;
+    }
+
+    private static DumperOptions createDumperOptions() {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        return options;
+    }
+
+    /**
+     * The shared options are only created when first used, so that SnakeYAML is not loaded with this class
+     */
+    private static class SharedDumperOptions {
+        static final DumperOptions options = createDumperOptions();
+    }
+
+    static boolean isJson(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(JSON_EXTENSION);
+    }
+
+    /**
+     * Checks the size of an input file, before reading it
+     */
+    void checkSize(Path path, long bytes) {
+        try {
+            limits.checkSize(bytes);
+        } catch (O4A_Exception ex) {
+            throw new O4A_Exception(path + ex.getMessage());
+        }
+    }
+
+    /**
+     * Parses the given content, which must be an openapi specification
+     */
+    Map<String, Object> parse(Path path, ByteBuffer content) {
+        try {
+            return parse(path, () -> load(path, content));
+        } catch (IOException ioex) {
+            // only decoding errors are expected, already handled
+            throw new O4A_Exception("IOError reading file '" + path + "' : " + ioex);
+        }
+    }
+
+    /**
+     * Parses the content of the reader, which must be an openapi specification
+     */
+    Map<String, Object> parse(Path path, Reader reader) throws IOException {
+        return parse(path, () -> isJson(path) ? parseJson(read(limits.limit(reader))) : yaml.get().load(reader));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parse(Path path, Source source) throws IOException {
+        Map<String, Object> specification;
+        try {
+            Object document = source.load();
+            specification = document instanceof Map ? (Map<String, Object>) document : null;
+            if (specification != null) {
+                limits.checkOperations(specification);
+            }
+        } catch (CharacterCodingException ccex) {
+            throw new O4A_Exception(path + ": invalid encoding: " + ccex);
+        } catch (ClassCastException cex) {
+            specification = null;
+        } catch (YAMLException yex) {
+            if (yex.getCause() instanceof CharacterCodingException) {
+                throw new O4A_Exception(path + ": invalid encoding: " + yex.getCause());
+            }
+            throw new O4A_Exception(path + ": invalid yaml content: " + yex.getMessage());
+        } catch (O4A_Exception ex) {
+            throw new O4A_Exception(path + ex.getMessage());
+        }
+        if (specification == null) {
+            throw new O4A_Exception(path + ": invalid openapi content");
+        }
+        return specification;
+    }
+
+    /**
+     * Loads a document needed to process a specification, which can contain any yaml or json content. Errors
+     * are reported as relative to the specification
+     *
+     * @param description what the document is for the specification, like "patch" or "referenced file"
+     */
+    Object load(Path path, String description) {
+        try {
+            if (limits.isEnabled()) {
+                limits.checkSize(Files.size(path));
+            }
+            return load(path, InputFiles.read(path, mapThreshold));
+        } catch (IOException ioex) {
+            throw new O4A_Exception(": cannot read " + description + " '" + path + "' : " + ioex);
+        } catch (YAMLException yex) {
+            throw new O4A_Exception(": invalid yaml content in " + description + " '" + path + "': "
+                    + yex.getMessage());
+        } catch (O4A_Exception ex) {
+            throw new O4A_Exception(": " + description + " '" + path + "'" + ex.getMessage());
+        }
+    }
+
+    /**
+     * Parses any yaml or json content
+     */
+    Object load(Path path, ByteBuffer content) throws CharacterCodingException {
+        return isJson(path) ? parseJson(InputFiles.decode(content))
+                : yaml.get().load(InputFiles.newReader(content));
+    }
+
+    private Object parseJson(CharSequence content) {
+        long deadline = limits.getDeadline();
+        Object ret = JsonReader.parse(content, limits.getMaxDepth());
+        limits.checkDeadline(deadline);
+        return ret;
+    }
+
+    static String decode(Path path, ByteBuffer content) {
+        try {
+            return InputFiles.decode(content);
+        } catch (CharacterCodingException ccex) {
+            throw new O4A_Exception(path + ": invalid encoding: " + ccex);
+        }
+    }
+
+    static String read(Reader reader) throws IOException {
+        StringBuilder ret = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            ret.append(buffer, 0, read);
+        }
+        return ret.toString();
+    }
+
+    private interface Source {
+        Object load() throws IOException;
+    }
+}
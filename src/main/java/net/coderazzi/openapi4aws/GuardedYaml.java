@@ -0,0 +1,148 @@
+package net.coderazzi.openapi4aws;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.comments.CommentLine;
+import org.yaml.snakeyaml.composer.Composer;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.representer.Representer;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Yaml instance enforcing the load limits: SnakeYAML limits the aliases, and the composer used here limits
+ * the nesting depth and the time spent on each document, checked on each node, before composing it.
+ * Like any Yaml instance, it is not thread safe.
+ */
+final class GuardedYaml extends Yaml {
+
+    private final LoadLimits limits;
+
+    GuardedYaml(LoadLimits limits, LoaderOptions loaderOptions, DumperOptions dumperOptions) {
+        super(new Constructor(loaderOptions), new Representer(dumperOptions), dumperOptions, loaderOptions);
+        this.limits = limits;
+    }
+
+    /**
+     * Yaml loads strings without going through load(Reader)
+     */
+    @Override
+    public <T> T load(String yaml) {
+        return load(new StringReader(yaml));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T load(Reader reader) {
+        constructor.setComposer(createComposer(limits.limit(reader)));
+        return (T) constructor.getSingleData(Object.class);
+    }
+
+    /**
+     * The limits apply to each document, except the size limit, that applies to the whole stream
+     */
+    @Override
+    public Iterable<Object> loadAll(Reader reader) {
+        constructor.setComposer(createComposer(limits.limit(reader)));
+        return () -> new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return constructor.checkData();
+            }
+
+            @Override
+            public Object next() {
+                return constructor.getData();
+            }
+        };
+    }
+
+    @Override
+    public Node compose(Reader reader) {
+        return createComposer(limits.limit(reader)).getSingleNode();
+    }
+
+    @Override
+    public Iterable<Node> composeAll(Reader reader) {
+        Composer composer = createComposer(limits.limit(reader));
+        return () -> new Iterator<Node>() {
+            @Override
+            public boolean hasNext() {
+                return composer.checkNode();
+            }
+
+            @Override
+            public Node next() {
+                Node ret = composer.getNode();
+                if (ret == null) {
+                    throw new NoSuchElementException("No document is available.");
+                }
+                return ret;
+            }
+        };
+    }
+
+    private Composer createComposer(Reader reader) {
+        return new GuardedComposer(new ParserImpl(new StreamReader(reader), loadingConfig.isProcessComments()),
+                resolver, loadingConfig);
+    }
+
+    private final class GuardedComposer extends Composer {
+        private long deadline;
+        private int depth;
+
+        GuardedComposer(ParserImpl parser, Resolver resolver, LoaderOptions loaderOptions) {
+            super(parser, resolver, loaderOptions);
+        }
+
+        @Override
+        public Node getNode() {
+            // a new document
+            deadline = limits.getDeadline();
+            depth = 0;
+            return super.getNode();
+        }
+
+        @Override
+        protected Node composeScalarNode(String anchor, List<CommentLine> blockComments) {
+            limits.checkDeadline(deadline);
+            return super.composeScalarNode(anchor, blockComments);
+        }
+
+        @Override
+        protected Node composeSequenceNode(String anchor) {
+            enter();
+            try {
+                return super.composeSequenceNode(anchor);
+            } finally {
+                depth--;
+            }
+        }
+
+        @Override
+        protected Node composeMappingNode(String anchor) {
+            enter();
+            try {
+                return super.composeMappingNode(anchor);
+            } finally {
+                depth--;
+            }
+        }
+
+        private void enter() {
+            if (++depth > limits.getMaxDepth() && limits.getMaxDepth() > 0) {
+                throw LoadLimits.depthExceeded(limits.getMaxDepth());
+            }
+            limits.checkDeadline(deadline);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.*;
+import java.nio.file.Path;
+
+/**
+ * File helpers to read the input files through channels. Large files are memory mapped, and smaller ones read
+ * in a single call. The content is decoded explicitly as UTF-8, unless it starts with a UTF-16 byte order mark;
+ * any UTF-8 byte order mark is skipped. Malformed content raises an error, instead of being silently replaced.
+ * Decoding is always done from heap buffers, as decoders are much slower on direct or mapped ones.
+ */
+final class InputFiles {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    static final long DEFAULT_MAP_THRESHOLD = 4L * 1024 * 1024;
+
+    private InputFiles() {
+    }
+
+    /**
+     * Reads the content of a file
+     *
+     * @param mapThreshold files of this size or larger are memory mapped
+     * @return the content, ready to be read
+     */
+    static ByteBuffer read(Path path, long mapThreshold) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            if (size >= mapThreshold) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file too large: " + size + " bytes");
+            }
+            ByteBuffer ret = ByteBuffer.allocate((int) size);
+            while (ret.hasRemaining() && channel.read(ret) != -1) {
+                // just reading
+            }
+            ret.flip();
+            return ret;
+        }
+    }
+
+    /**
+     * @return the decoded content, the buffer is not modified
+     */
+    static String decode(ByteBuffer content) throws CharacterCodingException {
+        ByteBuffer bytes = content.duplicate();
+        if (bytes.hasArray()) {
+            return createDecoder(bytes).decode(bytes).toString();
+        }
+        // UTF-8 never decodes into more chars than bytes
+        StringBuilder ret = new StringBuilder(bytes.remaining());
+        char[] chars = new char[DEFAULT_BUFFER_SIZE];
+        try (Reader reader = newReader(bytes)) {
+            int read;
+            while ((read = reader.read(chars)) != -1) {
+                ret.append(chars, 0, read);
+            }
+        } catch (CharacterCodingException ccex) {
+            throw ccex;
+        } catch (IOException ioex) {
+            // not expected when reading from memory
+            throw new IllegalStateException(ioex);
+        }
+        return ret.toString();
+    }
+
+    /**
+     * @return a reader decoding the given content incrementally, the buffer is not modified
+     */
+    static Reader newReader(ByteBuffer content) {
+        ByteBuffer bytes = content.duplicate();
+        if (bytes.hasArray()) {
+            return new DecodingReader(null, false, bytes, createDecoder(bytes));
+        }
+        try {
+            return newReader(new BufferChannel(bytes), DEFAULT_BUFFER_SIZE);
+        } catch (IOException ioex) {
+            // not expected when reading from memory
+            throw new IllegalStateException(ioex);
+        }
+    }
+
+    /**
+     * @param bufferSize size of the buffer to read the channel
+     * @return a reader decoding the channel incrementally, as its content is available; closing the reader
+     * closes the channel
+     */
+    static Reader newReader(ReadableByteChannel channel, int bufferSize) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(Math.max(bufferSize, 4));
+        // enough content to detect the byte order mark
+        boolean more = true;
+        while (bytes.position() < 3 && more) {
+            more = channel.read(bytes) != -1;
+        }
+        bytes.flip();
+        return new DecodingReader(channel, more, bytes, createDecoder(bytes));
+    }
+
+    /**
+     * @return the decoder for the content, based on its byte order mark, skipping it
+     */
+    private static CharsetDecoder createDecoder(ByteBuffer content) {
+        Charset charset = StandardCharsets.UTF_8;
+        int position = content.position();
+        if (startsWith(content, 0xEF, 0xBB, 0xBF)) {
+            content.position(position + 3);
+        } else if (startsWith(content, 0xFE, 0xFF)) {
+            charset = StandardCharsets.UTF_16BE;
+            content.position(position + 2);
+        } else if (startsWith(content, 0xFF, 0xFE)) {
+            charset = StandardCharsets.UTF_16LE;
+            content.position(position + 2);
+        }
+        return charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    private static boolean startsWith(ByteBuffer content, int... mark) {
+        if (content.remaining() < mark.length) {
+            return false;
+        }
+        for (int i = 0; i < mark.length; i++) {
+            if ((content.get(content.position() + i) & 0xFF) != mark[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Channel reading a byte buffer, to copy a direct or mapped buffer into a heap one, chunk by chunk
+     */
+    private static final class BufferChannel implements ReadableByteChannel {
+        private final ByteBuffer source;
+
+        BufferChannel(ByteBuffer source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) {
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            int ret = Math.min(source.remaining(), destination.remaining());
+            ByteBuffer chunk = source.duplicate();
+            chunk.limit(chunk.position() + ret);
+            destination.put(chunk);
+            source.position(source.position() + ret);
+            return ret;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // nothing to release, mapped buffers are unmapped when collected
+        }
+    }
+
+    /**
+     * Reader decoding a byte buffer, refilled from a channel if there is one
+     */
+    private static final class DecodingReader extends Reader {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer bytes;
+        private final CharsetDecoder decoder;
+        private boolean more;
+        private boolean flushed;
+
+        DecodingReader(ReadableByteChannel channel, boolean more, ByteBuffer bytes, CharsetDecoder decoder) {
+            this.channel = channel;
+            this.more = more;
+            this.bytes = bytes;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            CharBuffer chars = CharBuffer.wrap(buffer, offset, length);
+            while (chars.position() == offset) {
+                if (flushed) {
+                    return -1;
+                }
+                CoderResult result = decoder.decode(bytes, chars, !more);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (result.isUnderflow() && chars.position() == offset) {
+                    if (more) {
+                        // a single read, to decode any available content without waiting for more
+                        bytes.compact();
+                        more = channel.read(bytes) != -1;
+                        bytes.flip();
+                    } else {
+                        decoder.flush(chars);
+                        flushed = true;
+                    }
+                }
+            }
+            return chars.position() - offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
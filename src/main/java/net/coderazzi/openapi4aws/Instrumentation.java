@@ -0,0 +1,139 @@
+package net.coderazzi.openapi4aws;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Measurement of the processing phases, emitting JDK Flight Recorder events when the JVM supports them
+ * (java 11 or later). The events are only recorded when a recording is active, for example, running with
+ * -XX:StartFlightRecording. The events are defined in FlightRecorderEvents, which is only built with a java 11
+ * or later toolchain, and loaded by name, so that the rest of the sources can still be compiled for java 8.
+ */
+final class Instrumentation {
+
+    private static final String RECORDER_CLASS = "net.coderazzi.openapi4aws.FlightRecorderEvents";
+    private static final Recorder RECORDER = loadRecorder();
+    private static final ThreadMXBean THREADS = getAllocationThreadBean();
+
+    private Instrumentation() {
+    }
+
+    /**
+     * @return a new timer, started
+     */
+    static Timer start() {
+        return new Timer(RECORDER == null ? null : RECORDER.beginPhase());
+    }
+
+    /**
+     * @return a new timer to measure the search of input files, started
+     */
+    static Timer startScan() {
+        return new Timer(RECORDER == null ? null : RECORDER.beginScan());
+    }
+
+    /**
+     * @return a new timer to measure the resolution of an integration, started
+     */
+    static Timer startResolution() {
+        return new Timer(RECORDER == null ? null : RECORDER.beginResolution());
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread, or -1 if the JVM does not support it
+     */
+    static long getAllocatedBytes() {
+        return THREADS == null ? -1
+                : ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static ThreadMXBean getAllocationThreadBean() {
+        try {
+            ThreadMXBean ret = ManagementFactory.getThreadMXBean();
+            if (ret instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) ret).isThreadAllocatedMemorySupported()) {
+                ((com.sun.management.ThreadMXBean) ret).setThreadAllocatedMemoryEnabled(true);
+                return ret;
+            }
+        } catch (LinkageError | UnsupportedOperationException | SecurityException ex) {
+            // not a HotSpot based JVM
+        }
+        return null;
+    }
+
+    /**
+     * @return the recorder of flight recorder events, or null if the JVM does not support them, or if the
+     * events were not built
+     */
+    private static Recorder loadRecorder() {
+        try {
+            ClassLoader loader = Instrumentation.class.getClassLoader();
+            Class.forName("jdk.jfr.Event", false, loader);
+            return (Recorder) Class.forName(RECORDER_CLASS, true, loader).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Creation and commit of the flight recorder events; the begin methods return null if the event is disabled
+     */
+    interface Recorder {
+        Object beginPhase();
+
+        void commitPhase(Object event, String phase, String path, long bytes);
+
+        Object beginScan();
+
+        void commitScan(Object event, String globs, int files);
+
+        Object beginResolution();
+
+        void commitResolution(Object event, String path, String tags, String match);
+    }
+
+    static final class Timer {
+        private final long start = System.nanoTime();
+        private final Object event;
+
+        private Timer(Object event) {
+            this.event = event;
+        }
+
+        /**
+         * Completes the measurement of a phase
+         *
+         * @return the elapsed time, in nanoseconds
+         */
+        long phase(String phase, Path path, long bytes) {
+            if (event != null) {
+                RECORDER.commitPhase(event, phase, String.valueOf(path), bytes);
+            }
+            return System.nanoTime() - start;
+        }
+
+        /**
+         * Completes the measurement of a search of input files
+         *
+         * @return the elapsed time, in nanoseconds
+         */
+        long scan(Collection<String> globs, int files) {
+            if (event != null) {
+                RECORDER.commitScan(event, globs == null ? "" : String.join(",", globs), files);
+            }
+            return System.nanoTime() - start;
+        }
+
+        /**
+         * Completes the measurement of the resolution of an integration
+         */
+        void resolution(String path, List<String> tags, ConfigurationSnapshot.Match match) {
+            if (event != null) {
+                RECORDER.commitResolution(event, path, String.join(",", tags), match.name());
+            }
+        }
+    }
+}
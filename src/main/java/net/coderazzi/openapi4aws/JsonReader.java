@@ -0,0 +1,251 @@
+package net.coderazzi.openapi4aws;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON parser, producing the same tree that SnakeYAML would produce for the same content:
+ * objects as LinkedHashMap, arrays as ArrayList, integers as Integer, Long or BigInteger, and decimals as Double.
+ */
+class JsonReader {
+
+    private final CharSequence content;
+    private final int length;
+    private final int maxDepth;
+    private int position;
+    private int depth;
+
+    private JsonReader(CharSequence content, int maxDepth) {
+        this.content = content;
+        this.length = content.length();
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Parses the given content, which must include a single JSON value
+     */
+    static Object parse(CharSequence content) {
+        return parse(content, 0);
+    }
+
+    /**
+     * Parses the given content, which must include a single JSON value
+     *
+     * @param maxDepth maximum nesting of objects and arrays, or 0 if there is no limit
+     */
+    static Object parse(CharSequence content, int maxDepth) {
+        JsonReader reader = new JsonReader(content, maxDepth);
+        reader.skipWhitespace();
+        // skip any byte order mark
+        if (reader.position < reader.length && reader.content.charAt(reader.position) == '\uFEFF') {
+            reader.position++;
+        }
+        Object ret = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.position != reader.length) {
+            throw reader.error("unexpected content");
+        }
+        return ret;
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (position == length) {
+            throw error("unexpected end of content");
+        }
+        char c = content.charAt(position);
+        if (c == '{' || c == '[') {
+            if (++depth > maxDepth && maxDepth > 0) {
+                throw LoadLimits.depthExceeded(maxDepth);
+            }
+            Object ret = c == '{' ? readObject() : readArray();
+            depth--;
+            return ret;
+        }
+        switch (c) {
+            case '"':
+                return readString();
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (consume('}')) {
+            return ret;
+        }
+        do {
+            skipWhitespace();
+            if (position == length || content.charAt(position) != '"') {
+                throw error("expected a string key");
+            }
+            String key = readString();
+            skipWhitespace();
+            if (!consume(':')) {
+                throw error("expected ':'");
+            }
+            ret.put(key, readValue());
+            skipWhitespace();
+        } while (consume(','));
+        if (!consume('}')) {
+            throw error("expected ',' or '}'");
+        }
+        return ret;
+    }
+
+    private List<Object> readArray() {
+        List<Object> ret = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (consume(']')) {
+            return ret;
+        }
+        do {
+            ret.add(readValue());
+            skipWhitespace();
+        } while (consume(','));
+        if (!consume(']')) {
+            throw error("expected ',' or ']'");
+        }
+        return ret;
+    }
+
+    private String readString() {
+        position++;
+        StringBuilder ret = null;
+        int start = position;
+        while (position < length) {
+            char c = content.charAt(position);
+            if (c == '"') {
+                String last = content.subSequence(start, position++).toString();
+                return ret == null ? last : ret.append(last).toString();
+            }
+            if (c == '\\') {
+                if (ret == null) {
+                    ret = new StringBuilder();
+                }
+                ret.append(content, start, position);
+                if (++position == length) {
+                    break;
+                }
+                c = content.charAt(position++);
+                switch (c) {
+                    case 'b':
+                        ret.append('\b');
+                        break;
+                    case 'f':
+                        ret.append('\f');
+                        break;
+                    case 'n':
+                        ret.append('\n');
+                        break;
+                    case 'r':
+                        ret.append('\r');
+                        break;
+                    case 't':
+                        ret.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > length) {
+                            throw error("invalid unicode escape");
+                        }
+                        try {
+                            ret.append((char) Integer.parseInt(content.subSequence(position, position + 4)
+                                    .toString(), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("invalid unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        ret.append(c);
+                        break;
+                    default:
+                        throw error("invalid escape character '" + c + "'");
+                }
+                start = position;
+            } else if (c < 0x20) {
+                throw error("unescaped control character");
+            } else {
+                position++;
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private Object readNumber() {
+        int start = position;
+        boolean decimal = false;
+        consume('-');
+        while (position < length) {
+            char c = content.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E' || ((c == '+' || c == '-') && decimal)) {
+                decimal = true;
+            } else if (c < '0' || c > '9') {
+                break;
+            }
+            position++;
+        }
+        String number = content.subSequence(start, position).toString();
+        try {
+            if (decimal) {
+                return Double.valueOf(number);
+            }
+            BigInteger ret = new BigInteger(number);
+            if (ret.bitLength() < 32) {
+                return ret.intValue();
+            }
+            return ret.bitLength() < 64 ? (Object) ret.longValue() : ret;
+        } catch (NumberFormatException ex) {
+            throw error("invalid number " + number);
+        }
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        int end = position + literal.length();
+        if (end > length || !literal.contentEquals(content.subSequence(position, end))) {
+            throw error("unexpected literal");
+        }
+        position = end;
+        return value;
+    }
+
+    private boolean consume(char c) {
+        if (position < length && content.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < length) {
+            char c = content.charAt(position);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private O4A_Exception error(String message) {
+        return new O4A_Exception(": invalid json content: " + message + " at position " + position);
+    }
+}
@@ -0,0 +1,141 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Streaming serializer of specification trees (maps, lists and scalars, as loaded by SnakeYAML) as compact JSON.
+ * Characters are accumulated on an internal buffer, written to the underlying writer when full or on flush.
+ */
+class JsonWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    private final char[] buffer;
+    private int position;
+
+    JsonWriter(Writer out) {
+        this(out, 16 * 1024);
+    }
+
+    JsonWriter(Writer out, int bufferSize) {
+        this.out = out;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Writes the given object, flushing then the output
+     */
+    void write(Object obj) throws IOException {
+        writeValue(obj);
+        flush();
+    }
+
+    void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    private void writeValue(Object obj) throws IOException {
+        if (obj == null) {
+            append("null");
+        } else if (obj instanceof String) {
+            writeString((String) obj);
+        } else if (obj instanceof Map) {
+            append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                if (!first) {
+                    append(',');
+                }
+                first = false;
+                writeString(String.valueOf(entry.getKey()));
+                append(':');
+                writeValue(entry.getValue());
+            }
+            append('}');
+        } else if (obj instanceof Collection) {
+            append('[');
+            boolean first = true;
+            for (Object each : (Collection<?>) obj) {
+                if (!first) {
+                    append(',');
+                }
+                first = false;
+                writeValue(each);
+            }
+            append(']');
+        } else if (obj instanceof Boolean || obj instanceof Integer || obj instanceof Long
+                || obj instanceof java.math.BigInteger) {
+            append(obj.toString());
+        } else if (obj instanceof Number) {
+            double value = ((Number) obj).doubleValue();
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                writeString(obj.toString());
+            } else {
+                append(obj.toString());
+            }
+        } else if (obj instanceof Date) {
+            writeString(DateTimeFormatter.ISO_INSTANT.format(((Date) obj).toInstant()));
+        } else if (obj instanceof byte[]) {
+            writeString(Base64.getEncoder().encodeToString((byte[]) obj));
+        } else {
+            writeString(obj.toString());
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        append('"');
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    append("\\\"");
+                    break;
+                case '\\':
+                    append("\\\\");
+                    break;
+                case '\n':
+                    append("\\n");
+                    break;
+                case '\r':
+                    append("\\r");
+                    break;
+                case '\t':
+                    append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        append("\\u00");
+                        append(HEX[c >> 4]);
+                        append(HEX[c & 0xf]);
+                    } else {
+                        append(c);
+                    }
+            }
+        }
+        append('"');
+    }
+
+    private void append(char c) throws IOException {
+        if (position == buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        buffer[position++] = c;
+    }
+
+    private void append(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            append(s.charAt(i));
+        }
+    }
+}
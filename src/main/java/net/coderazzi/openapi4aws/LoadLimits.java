@@ -0,0 +1,132 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits on the resources used to load a specification, protecting the process from pathological inputs:
+ * size, aliases per collection, nesting depth, number of operations, and time spent loading. A limit of 0
+ * means no limit. Violations raise an O4A_Exception, with a message relative to the file being loaded.
+ */
+final class LoadLimits {
+
+    static final LoadLimits NONE = new LoadLimits(0, 0, 0, 0, 0);
+
+    private final long maxBytes;
+    private final int maxAliases;
+    private final int maxDepth;
+    private final int maxOperations;
+    private final long timeoutNanos;
+
+    /**
+     * @param maxBytes      maximum input size, in bytes (in chars, for readers)
+     * @param maxAliases    maximum number of aliases to collections, on yaml content
+     * @param maxDepth      maximum nesting of collections
+     * @param maxOperations maximum number of operations under paths
+     * @param timeoutMillis maximum time to load a specification, in milliseconds
+     */
+    LoadLimits(long maxBytes, int maxAliases, int maxDepth, int maxOperations, long timeoutMillis) {
+        this.maxBytes = maxBytes;
+        this.maxAliases = maxAliases;
+        this.maxDepth = maxDepth;
+        this.maxOperations = maxOperations;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * @return true if any limit is defined
+     */
+    boolean isEnabled() {
+        return maxBytes > 0 || maxAliases > 0 || maxDepth > 0 || maxOperations > 0 || timeoutNanos > 0;
+    }
+
+    int getMaxAliases() {
+        return maxAliases;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the deadline (as System.nanoTime) for a load starting now, or 0 if there is no time limit
+     */
+    long getDeadline() {
+        // nanoTime can be negative, but never 0 after adding a positive timeout, in practice
+        return timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+    }
+
+    void checkDeadline(long deadline) {
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new O4A_Exception(": loading exceeds the time limit of "
+                    + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+        }
+    }
+
+    void checkSize(long bytes) {
+        if (maxBytes > 0 && bytes > maxBytes) {
+            throw new O4A_Exception(": size of " + bytes + " bytes exceeds the limit of " + maxBytes);
+        }
+    }
+
+    static O4A_Exception depthExceeded(int maxDepth) {
+        return new O4A_Exception(": nesting depth exceeds the limit of " + maxDepth);
+    }
+
+    /**
+     * Checks the number of operations under the paths of the given specification
+     */
+    void checkOperations(Map<?, ?> specification) {
+        if (maxOperations > 0) {
+            Object paths = specification.get(Openapi4AWS.PATHS);
+            if (paths instanceof Map) {
+                int operations = 0;
+                for (Object item : ((Map<?, ?>) paths).values()) {
+                    if (item instanceof Map) {
+                        for (Object method : ((Map<?, ?>) item).keySet()) {
+                            if (Openapi4AWS.METHODS.contains(method)) {
+                                operations++;
+                            }
+                        }
+                    }
+                }
+                if (operations > maxOperations) {
+                    throw new O4A_Exception(": " + operations + " operations exceed the limit of " + maxOperations);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the reader, enforcing the size limit on the chars read, if there is one
+     */
+    Reader limit(Reader reader) {
+        return maxBytes > 0 ? new LimitedReader(reader) : reader;
+    }
+
+    private final class LimitedReader extends Reader {
+        private final Reader reader;
+        private long read;
+
+        LimitedReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int ret = reader.read(buffer, offset, length);
+            if (ret > 0) {
+                read += ret;
+                checkSize(read);
+            }
+            return ret;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -1,148 +1,1106 @@
 package net.coderazzi.openapi4aws;
 
-import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.nodes.Node;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.stream.Collectors;
 
+/**
+ * Engine augmenting openapi specifications with the AWS extensions defined in a configuration. It is configured
+ * through its setters, which are not thread safe. Once configured, the in-memory methods (augment, augmentAll)
+ * can be called concurrently from any number of threads: the configuration is compiled once into an immutable
+ * snapshot shared by all of them, and each thread uses its own SnakeYAML instance.
+ */
 public class Openapi4AWS {
 
     public static final String DEFAULT_INTEGRATION_TYPE = "http_proxy";
     public static final String DEFAULT_INTEGRATION_CONNECTION_TYPE = "INTERNET";
-    private static final String PATHS = "paths";
-    private static final String DEFAULT_INTEGRATION_PAYLOAD_FORMAT_VERSION = "1.0";
+    static final String PATHS = "paths";
+    static final String COMPONENTS = "components";
+    static final String SECURITY_SCHEMES = "securitySchemes";
+    static final String TAGS = "tags";
+    static final String INTEGRATION = "x-amazon-apigateway-integration";
+    static final String SECURITY = "security";
+    static final Set<String> METHODS = new HashSet<>(Arrays.asList("get", "put", "post", "delete", "options",
+            "head", "patch", "trace"));
+    static final String DEFAULT_INTEGRATION_PAYLOAD_FORMAT_VERSION = "1.0";
+    private static final int DEFAULT_BUNDLE_CACHE_SIZE = 256;
     private final Configuration configuration;
+    private int threads = 1;
+    private boolean keepGoing;
+    private boolean streaming;
+    private boolean splice;
+    private boolean incremental;
+    private OutputFormat outputFormat = OutputFormat.YAML;
+    private boolean skipUnchanged;
+    private boolean check;
+    private Path report;
+    private boolean bundle;
+    private Path patches;
+    private ShardStrategy shardBy;
+    private int shardMaxOperations;
+    private long shardMaxBytes;
+    private SpecificationSharder sharder;
+    private boolean compactYaml;
+    private int bundleCacheSize = DEFAULT_BUNDLE_CACHE_SIZE;
+    private int bufferSize = InputFiles.DEFAULT_BUFFER_SIZE;
+    private long mapThreshold = InputFiles.DEFAULT_MAP_THRESHOLD;
+    private long maxInputBytes;
+    private int maxAliases;
+    private int maxDepth;
+    private int maxOperations;
+    private long loadTimeout;
+    private DocumentLoader loader = new DocumentLoader(LoadLimits.NONE, mapThreshold);
+    private volatile ReferenceBundler bundler;
+    // writes the outputs, counting them, created again on each run
+    private volatile OutputWriter outputs;
+    private volatile ConfigurationSnapshot snapshot;
 
     public Openapi4AWS(Configuration handler) {
         this.configuration = handler;
     }
 
+    /**
+     * Defines the number of threads used to process the files. With a value greater than 1, reading, parsing,
+     * augmenting, dumping and writing the files run as separate pipeline stages, each with that number of workers.
+     *
+     * @param threads number of threads to use, 1 by default
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new O4A_Exception("invalid number of threads: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Defines whether to continue processing the remaining files after a failure. In this case, the failures are
+     * reported together, once all the files are processed.
+     */
+    public void setKeepGoing(boolean keepGoing) {
+        this.keepGoing = keepGoing;
+    }
+
+    /**
+     * Defines whether to augment the files using the yaml events, without building the full yaml tree.
+     * In this mode, memory usage does not depend on the size of the files, and the original formatting of
+     * the scalars is kept.
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Defines whether to skip the files that did not change since the previous run, using a manifest stored
+     * in the output folder (or in the current folder, if there is no output folder). This is only possible
+     * if the configuration provides a fingerprint.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Defines the format of the output files, yaml by default. In json format, the extension of the output
+     * files is replaced with .json. The patch formats include only the changes done by augment, on files with
+     * extension .patch.json or .overlay.yaml. The streaming mode only supports yaml.
+     */
+    public void setOutputFormat(OutputFormat outputFormat) {
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * Defines whether to render each output in memory (or into a temporary file, in streaming mode) and compare
+     * it with the existing file, which is then only replaced if the content differs. Replacements are atomic.
+     */
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+        this.outputs = null;
+    }
+
+    /**
+     * Defines whether to check that the existing outputs are up-to-date, without writing anything: each output
+     * is rendered and compared with the existing file, stopping at the first different byte. The run fails if
+     * any output is stale, listing the stale outputs with the location of their first difference.
+     * The incremental manifest is not used, as it cannot verify the content of the outputs.
+     */
+    public void setCheck(boolean check) {
+        this.check = check;
+        this.outputs = null;
+    }
+
+    /**
+     * Defines whether to resolve the external references ($ref to other files) of the specifications,
+     * replacing them with the referenced content. Referenced files are parsed only once, and kept in a cache
+     * shared by all the specifications, as long as they are not modified. The streaming and incremental modes
+     * are not supported.
+     */
+    public void setBundle(boolean bundle) {
+        this.bundle = bundle;
+    }
+
+    /**
+     * Defines the folder with the patches to apply, switching to apply mode: instead of being augmented, each
+     * specification gets the patch previously created for it, in json-patch or overlay format. The patch
+     * formats, streaming, incremental and multiple environments are not supported in this mode.
+     * Apply mode is disabled if null (default)
+     */
+    public void setPatches(Path patches) {
+        this.patches = patches;
+    }
+
+    /**
+     * Defines whether to split each augmented specification into several output files, partitioning its
+     * paths by tag or by path prefix. Each shard is written as the output file, with the shard name appended
+     * to its base name (like api-users.yaml), and includes only the components and security schemes used
+     * by its paths. Shards are written in parallel. The streaming, incremental and apply modes, and the
+     * patch formats, are not supported. Sharding is disabled if null (default)
+     */
+    public void setShardBy(ShardStrategy shardBy) {
+        this.shardBy = shardBy;
+    }
+
+    /**
+     * Defines the maximum number of operations on each shard; partitions exceeding it are split again.
+     * There is no limit if 0 (default)
+     */
+    public void setShardMaxOperations(int shardMaxOperations) {
+        if (shardMaxOperations < 0) {
+            throw new O4A_Exception("invalid maximum number of operations: " + shardMaxOperations);
+        }
+        this.shardMaxOperations = shardMaxOperations;
+    }
+
+    /**
+     * Defines the maximum size of each shard, estimated as compact json; partitions exceeding it are split
+     * again. Paths are never split, so a single path exceeding the limit gets its own shard.
+     * There is no limit if 0 (default)
+     */
+    public void setShardMaxBytes(long shardMaxBytes) {
+        if (shardMaxBytes < 0) {
+            throw new O4A_Exception("invalid maximum shard size: " + shardMaxBytes);
+        }
+        this.shardMaxBytes = shardMaxBytes;
+    }
+
+    /**
+     * Defines whether to write identical generated structures (integrations, security requirements and
+     * schemes) only once in the yaml output, using anchors and aliases ({@code &id001} ... {@code *id001})
+     * on any repetition. The json formats and the streaming mode are not supported.
+     */
+    public void setCompactYaml(boolean compactYaml) {
+        this.compactYaml = compactYaml;
+        this.snapshot = null;
+    }
+
+    /**
+     * Defines whether to augment the yaml specifications editing their original text: only the AWS extensions
+     * and security schemes are replaced or inserted, and the rest of the content, including comments and
+     * formatting, is kept unchanged. The mappings to modify (root, components, security schemes and operations)
+     * must be in block style. The json formats, streaming, bundling, apply, sharding and compact yaml are not
+     * supported in this mode.
+     */
+    public void setSplice(boolean splice) {
+        this.splice = splice;
+    }
+
+    /**
+     * Defines the maximum number of referenced files kept in the cache used to resolve external references,
+     * 256 by default. The least recently used files are discarded first
+     */
+    public void setBundleCacheSize(int bundleCacheSize) {
+        if (bundleCacheSize < 1) {
+            throw new O4A_Exception("invalid bundle cache size: " + bundleCacheSize);
+        }
+        this.bundleCacheSize = bundleCacheSize;
+        this.bundler = null;
+    }
+
+    /**
+     * Defines the size of the buffers used to read the files in streaming mode, and to write the output files,
+     * 64 KB by default
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new O4A_Exception("invalid buffer size: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.outputs = null;
+    }
+
+    /**
+     * Defines the minimum size of the files read through memory mapping, 4 MB by default. Smaller files
+     * are read into the heap in a single call, as well as the files overwritten with their output.
+     * Memory mapping is disabled if 0
+     */
+    public void setMapThreshold(long mapThreshold) {
+        if (mapThreshold < 0) {
+            throw new O4A_Exception("invalid memory mapping threshold: " + mapThreshold);
+        }
+        this.mapThreshold = mapThreshold == 0 ? Long.MAX_VALUE : mapThreshold;
+        updateLoader();
+    }
+
+    /**
+     * Defines the maximum size of the input files, checked before reading them; referenced files and patches
+     * are checked as well. For readers, the limit applies to the number of chars read.
+     * There is no limit if 0 (default). Defining any limit enables the guarded loading mode: the files going
+     * over a limit fail, without stopping the processing of the remaining files, as with keep going.
+     */
+    public void setMaxInputBytes(long maxInputBytes) {
+        if (maxInputBytes < 0) {
+            throw new O4A_Exception("invalid maximum input size: " + maxInputBytes);
+        }
+        this.maxInputBytes = maxInputBytes;
+        updateLoader();
+    }
+
+    /**
+     * Defines the maximum number of aliases to collections on each yaml document. If 0 (default), the SnakeYAML
+     * limit (50) applies
+     */
+    public void setMaxAliases(int maxAliases) {
+        if (maxAliases < 0) {
+            throw new O4A_Exception("invalid maximum number of aliases: " + maxAliases);
+        }
+        this.maxAliases = maxAliases;
+        updateLoader();
+    }
+
+    /**
+     * Defines the maximum nesting of collections on each document. Not checked in streaming mode.
+     * There is no limit if 0 (default)
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            throw new O4A_Exception("invalid maximum depth: " + maxDepth);
+        }
+        this.maxDepth = maxDepth;
+        updateLoader();
+    }
+
+    /**
+     * Defines the maximum number of operations on each specification, checked once loaded. Not checked in
+     * streaming mode. There is no limit if 0 (default)
+     */
+    public void setMaxOperations(int maxOperations) {
+        if (maxOperations < 0) {
+            throw new O4A_Exception("invalid maximum number of operations: " + maxOperations);
+        }
+        this.maxOperations = maxOperations;
+        updateLoader();
+    }
+
+    /**
+     * Defines the maximum time to load each document, in milliseconds, checked while the yaml content is
+     * loaded, and after loading json content. Not checked in streaming mode. There is no limit if 0 (default)
+     */
+    public void setLoadTimeout(long loadTimeout) {
+        if (loadTimeout < 0) {
+            throw new O4A_Exception("invalid load timeout: " + loadTimeout);
+        }
+        this.loadTimeout = loadTimeout;
+        updateLoader();
+    }
+
+    /**
+     * The loader depends on the limits and on the memory mapping threshold, and must be created again
+     */
+    private void updateLoader() {
+        loader = new DocumentLoader(new LoadLimits(maxInputBytes, maxAliases, maxDepth, maxOperations,
+                loadTimeout), mapThreshold);
+        outputs = null;
+    }
+
+    /**
+     * Defines the file where a json report is written after each call to handle, with the time spent on each
+     * phase, the sizes and the operation statistics for each file. It is not written if null (default)
+     */
+    public void setReport(Path report) {
+        this.report = report;
+    }
+
+    /**
+     * @return the number of output files written on the last call to handle
+     */
+    public int getWrittenFiles() {
+        OutputWriter ret = outputs;
+        return ret == null ? 0 : ret.getWrittenFiles();
+    }
+
+    /**
+     * @return the number of output files left unchanged on the last call to handle, as their content was
+     * already up-to-date
+     */
+    public int getUnchangedFiles() {
+        OutputWriter ret = outputs;
+        return ret == null ? 0 : ret.getUnchangedFiles();
+    }
+
+    /**
+     * @return the outputs found stale on the last call to handle, in check mode, with the location of their
+     * first difference, sorted by path
+     */
+    public List<String> getStaleOutputs() {
+        OutputWriter ret = outputs;
+        return ret == null ? new ArrayList<>() : ret.getStaleOutputs();
+    }
+
+    /**
+     * @return the fingerprint of the configuration plus the options affecting the output, or null if the
+     * configuration does not support fingerprints
+     */
+    public String getFingerprint() {
+        return getFingerprint(configuration);
+    }
+
+    /**
+     * Writes an output produced elsewhere, like by an augment server, as any output of handle: through a
+     * temporary file that then replaces the output atomically, and only if the content changes, when skipping
+     * unchanged files. The written and unchanged files are counted as well.
+     *
+     * @param path       the input path, used on error messages
+     * @param outputPath the output file
+     * @param content    the output content, read until its end, but not closed
+     * @return true if the file is written
+     */
+    public boolean writeOutput(Path path, Path outputPath, InputStream content) {
+        OutputWriter writer = outputs;
+        if (writer == null) {
+            outputs = writer = new OutputWriter(loader, bufferSize, skipUnchanged, check, false);
+        }
+        return writer.write(path, outputPath, content);
+    }
+
     public void handle(Collection<Path> paths, Path outputFolder) {
-        DumperOptions options = new DumperOptions();
-        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-        Yaml yaml = new Yaml(options);
-        Map<String, Object> specification;
-        for (Path path : paths) {
-            try (final InputStream is = Files.newInputStream(path)) {
-                specification = yaml.load(is);
-            } catch (IOException ioex) {
-                throw new O4A_Exception("IOError reading file '" + path + "' : " + ioex);
-            } catch (ClassCastException cex) {
-                specification = null;
+        if (streaming && outputFormat != OutputFormat.YAML) {
+            throw new O4A_Exception("streaming mode only supports " + OutputFormat.YAML + " output");
+        }
+        sharder = checkModes();
+        // the configuration is compiled once per run
+        snapshot = new ConfigurationSnapshot(configuration, compactYaml);
+        run(paths, Collections.singletonList(createTarget(null, configuration, snapshot, outputFolder)));
+    }
+
+    /**
+     * Processes the files for several environments, reading and parsing each file only once. For each
+     * environment, the parsed specification is augmented on a shallow copy-on-write overlay, and written into
+     * a subfolder of the output folder, named as the environment (or of the current folder, if there is no
+     * output folder). The streaming mode is not supported.
+     *
+     * @param paths        the files to process
+     * @param outputFolder the output folder, can be null
+     * @param environments the configuration to use for each environment, by name
+     */
+    public void handle(Collection<Path> paths, Path outputFolder,
+                       Map<String, ? extends Configuration> environments) {
+        if (streaming) {
+            throw new O4A_Exception("streaming mode does not support multiple environments");
+        }
+        if (patches != null) {
+            throw new O4A_Exception("apply mode does not support multiple environments");
+        }
+        sharder = checkModes();
+        List<Target> targets = new ArrayList<>();
+        environments.forEach((name, environment) -> {
+            Path folder = outputFolder == null ? Paths.get(name) : outputFolder.resolve(name);
+            if (!check) {
+                try {
+                    Files.createDirectories(folder);
+                } catch (IOException ioex) {
+                    throw new O4A_Exception("IOError creating folder '" + folder + "' : " + ioex);
+                }
+            }
+            targets.add(createTarget(name, environment, new ConfigurationSnapshot(environment, compactYaml),
+                    folder));
+        });
+        run(paths, targets);
+    }
+
+    private void run(Collection<Path> paths, List<Target> targets) {
+        outputs = new OutputWriter(loader, bufferSize, skipUnchanged, check, sharder != null);
+        List<FileTask> tasks = paths.stream().map(FileTask::new).collect(Collectors.toList());
+        RunReport runReport = report == null ? null : new RunReport(threads, targets.size());
+        // referenced files loaded by previous runs could be still cached
+        int loads = bundle ? getBundler().getLoads() : 0;
+        if (runReport != null) {
+            tasks.forEach(x -> x.entry = runReport.add(x.path));
+        }
+        // in guarded mode, files going over the limits never stop the processing of the others
+        BatchPipeline<FileTask> pipeline = new BatchPipeline<FileTask>(threads,
+                keepGoing || loader.getLimits().isEnabled())
+                .stage("read", x -> measure(x, "read", () -> read(x, targets)))
+                .filter(x -> !x.upToDate);
+        if (streaming) {
+            Target target = targets.get(0);
+            pipeline.stage("stream", x -> measure(x, "stream", () -> stream(x, target)));
+        } else if (splice) {
+            pipeline.stage("splice", x -> {
+                String content = DocumentLoader.decode(x.path, x.content);
+                x.content = null;
+                targets.forEach(target -> {
+                    try {
+                        String[] output = new String[1];
+                        measure(x, "splice", () -> output[0] = splice(x, content, target));
+                        measure(x, "write", () -> write(x, target, writer -> writer.write(output[0])));
+                    } catch (O4A_Exception ex) {
+                        throw new O4A_Exception(targets.size() > 1 ? target.name + ": " + ex.getMessage()
+                                : ex.getMessage());
+                    }
+                });
+            });
+        } else {
+            pipeline.stage("parse", x -> {
+                measure(x, "parse", () -> {
+                    x.specification = loader.parse(x.path, x.content);
+                    x.content = null;
+                });
+                if (bundle) {
+                    measure(x, "bundle", () -> bundle(x.path, x.specification));
+                }
+            });
+            if (targets.size() > 1) {
+                // the parsed specification is shared by all the targets, each augmenting its own overlay
+                pipeline.stage("augment", x -> targets.forEach(target -> {
+                    Map<String, Object> overlay = SpecificationAugmenter.overlay(x.specification);
+                    try {
+                        Object[] document = new Object[1];
+                        measure(x, "augment", () -> document[0] = process(x, overlay, target));
+                        if (sharder != null) {
+                            measure(x, "shard", () -> writeShards(x, target, document[0]));
+                        } else {
+                            measure(x, "write", () -> write(x, target, writer -> serialize(document[0], writer)));
+                        }
+                    } catch (O4A_Exception ex) {
+                        throw new O4A_Exception(target.name + ": " + ex.getMessage());
+                    }
+                }));
+            } else {
+                Target target = targets.get(0);
+                pipeline.stage("augment", x -> measure(x, "augment", () -> {
+                    x.document = process(x, x.specification, target);
+                    x.specification = null;
+                }));
+                if (sharder != null) {
+                    pipeline.stage("shard", x -> measure(x, "shard", () -> {
+                        writeShards(x, target, x.document);
+                        x.document = null;
+                    }));
+                } else if (threads > 1) {
+                    pipeline.stage("dump", x -> measure(x, "dump", () -> {
+                        x.output = dump(x.path, x.document);
+                        x.document = null;
+                    })).stage("write", x -> measure(x, "write",
+                            () -> write(x, target, writer -> writer.write(x.output))));
+                } else {
+                    // dump directly into the output file
+                    pipeline.stage("write", x -> measure(x, "write",
+                            () -> write(x, target, writer -> serialize(x.document, writer))));
+                }
+            }
+        }
+        List<String> failures = pipeline.run(tasks);
+        if (!check) {
+            targets.stream().filter(x -> x.manifest != null).forEach(x -> x.manifest.save());
+        }
+        if (runReport != null) {
+            if (bundle) {
+                runReport.setReferencedDocuments(getBundler().getLoads() - loads);
+            }
+            runReport.write(report, configuration);
+        }
+        List<String> stale = getStaleOutputs();
+        String staleMessage = stale.isEmpty() ? null
+                : stale.size() + " outputs are stale:\n" + String.join("\n", stale);
+        if (failures.size() == 1) {
+            throw new O4A_Exception(failures.get(0) + (staleMessage == null ? "" : "\n" + staleMessage));
+        } else if (!failures.isEmpty()) {
+            throw new O4A_Exception(failures.size() + " files failed:\n" + String.join("\n", failures)
+                    + (staleMessage == null ? "" : "\n" + staleMessage));
+        } else if (staleMessage != null) {
+            throw new O4A_Exception(staleMessage);
+        }
+    }
+
+    /**
+     * The incremental mode cannot detect changes on the referenced files or on the patches, and streaming
+     * cannot resolve the references nor apply the patches
+     *
+     * @return the sharder to use, or null if sharding is disabled
+     */
+    private SpecificationSharder checkModes() {
+        if (splice) {
+            checkSpliceMode();
+        }
+        if (bundle && streaming) {
+            throw new O4A_Exception("streaming mode does not support bundling");
+        }
+        if (bundle && incremental) {
+            throw new O4A_Exception("incremental mode does not support bundling");
+        }
+        if (patches != null) {
+            if (streaming || incremental) {
+                throw new O4A_Exception("apply mode does not support " + (streaming ? "streaming" : "incremental")
+                        + " mode");
+            }
+            if (outputFormat.isPatch()) {
+                throw new O4A_Exception("apply mode does not support " + outputFormat + " output");
+            }
+        }
+        if (compactYaml && (streaming || outputFormat.isJson())) {
+            throw new O4A_Exception("compact yaml is not supported in " + (streaming ? "streaming mode"
+                    : outputFormat + " output"));
+        }
+        if (shardBy == null) {
+            return null;
+        }
+        if (streaming || incremental || patches != null) {
+            throw new O4A_Exception("sharding is not supported in " + (streaming ? "streaming"
+                    : incremental ? "incremental" : "apply") + " mode");
+        }
+        if (outputFormat.isPatch()) {
+            throw new O4A_Exception("sharding does not support " + outputFormat + " output");
+        }
+        return new SpecificationSharder(shardBy, shardMaxOperations, shardMaxBytes);
+    }
+
+    private void checkSpliceMode() {
+        if (streaming || bundle || patches != null || shardBy != null || compactYaml) {
+            throw new O4A_Exception("splice mode does not support " + (streaming ? "streaming"
+                    : bundle ? "bundling" : patches != null ? "apply mode" : shardBy != null ? "sharding"
+                    : "compact yaml"));
+        }
+        if (outputFormat != OutputFormat.YAML) {
+            throw new O4A_Exception("splice mode only supports " + OutputFormat.YAML + " output");
+        }
+    }
+
+    /**
+     * Runs one processing phase on a file, measuring its duration
+     */
+    private static void measure(FileTask task, String phase, Runnable action) {
+        Instrumentation.Timer timer = Instrumentation.start();
+        long allocated = task.entry == null ? 0 : Instrumentation.getAllocatedBytes();
+        try {
+            action.run();
+        } finally {
+            long elapsed = timer.phase(phase, task.path, task.bytes);
+            if (task.entry != null) {
+                task.entry.addTime(phase, elapsed);
+                if (allocated >= 0) {
+                    task.entry.addAllocatedBytes(Instrumentation.getAllocatedBytes() - allocated);
+                }
             }
-            if (specification == null) {
-                throw new O4A_Exception(path + ": invalid openapi content");
+        }
+    }
+
+
+    /**
+     * Augments a single specification, provided in memory, writing the result in the configured output format.
+     * It can be called concurrently from multiple threads.
+     *
+     * @param path    the specification path, used on error messages. With extension .json, the content is
+     *                parsed as json
+     * @param content the specification content
+     * @param writer  destination of the augmented specification
+     */
+    public void augment(Path path, byte[] content, Writer writer) throws IOException {
+        augment(path, InputFiles.newReader(ByteBuffer.wrap(content)), writer);
+    }
+
+    /**
+     * Augments a single specification, read from the given stream as UTF-8, writing the result in the
+     * configured output format, as UTF-8. The streams are not closed. It can be called concurrently from
+     * multiple threads.
+     *
+     * @param path   the specification path, used on error messages, to resolve its references and to find
+     *               its patch. With extension .json, the content is parsed as json. The file is not read
+     * @param input  source of the specification
+     * @param output destination of the augmented specification, flushed at the end
+     */
+    public void augment(Path path, InputStream input, OutputStream output) throws IOException {
+        augment(path, InputFiles.newReader(Channels.newChannel(input), bufferSize),
+                new ChannelWriter(output, bufferSize));
+    }
+
+    /**
+     * Augments a single specification, read from the given reader, writing the result in the configured
+     * output format. The reader and writer are not closed. It can be called concurrently from multiple threads.
+     *
+     * @param path   the specification path, used on error messages, to resolve its references and to find
+     *               its patch. With extension .json, the content is parsed as json. The file is not read
+     * @param reader source of the specification
+     * @param writer destination of the augmented specification, flushed at the end
+     */
+    public void augment(Path path, Reader reader, Writer writer) throws IOException {
+        if (shardBy != null) {
+            throw new O4A_Exception("sharding is only supported when writing output files");
+        }
+        if (check) {
+            throw new O4A_Exception("check mode is only supported on output files");
+        }
+        if (streaming && outputFormat != OutputFormat.YAML) {
+            throw new O4A_Exception("streaming mode only supports " + OutputFormat.YAML + " output");
+        }
+        checkModes();
+        DocumentLoader loader = this.loader;
+        if (streaming) {
+            try {
+                new StreamingAugmenter(getSnapshot(), loader.getYaml(), DocumentLoader.getDumperOptions())
+                        .augment(loader.getLimits().limit(reader), writer);
+            } catch (O4A_Exception ex) {
+                throw new O4A_Exception(path + ex.getMessage());
             }
+        } else if (splice) {
+            String content = DocumentLoader.read(loader.getLimits().limit(reader));
             try {
-                augment(specification);
+                writer.write(splice(content, getSnapshot(), null, false));
             } catch (O4A_Exception ex) {
                 throw new O4A_Exception(path + ex.getMessage());
             }
-            Path outputPath = outputFolder == null ? path : outputFolder.resolve(path.getFileName());
-            try (final OutputStream os = Files.newOutputStream(outputPath)) {
-                yaml.dump(specification, new OutputStreamWriter(os));
-            } catch (IOException ioex) {
-                throw new O4A_Exception("IOError writing file '" + path + "' : " + ioex);
+        } else {
+            Map<String, Object> specification = loader.parse(path, reader);
+            if (bundle) {
+                bundle(path, specification);
+            }
+            Object document;
+            try {
+                document = process(path, specification, getSnapshot(), null);
+            } catch (O4A_Exception ex) {
+                throw new O4A_Exception(path + ex.getMessage());
             }
+            serialize(document, writer);
         }
+        writer.flush();
+    }
+
+    /**
+     * Augments a specification already parsed, as a tree of maps and lists, returning the augmented
+     * specification. The given specification is not modified: the result is a copy-on-write overlay, sharing
+     * with it any content not modified by augment, so the same parsed specification can be augmented
+     * concurrently from multiple threads. The output format and the apply mode are not considered.
+     *
+     * @param specification the parsed specification, which is only read
+     * @return the augmented specification
+     */
+    public Map<String, Object> augment(Map<String, Object> specification) {
+        Map<String, Object> ret = SpecificationAugmenter.overlay(specification);
+        SpecificationAugmenter.augment(ret, getSnapshot(), null);
+        return ret;
     }
 
-    private void augment(Map<String, Object> specification) {
-        Map<String, Configuration.Authorizer> authorizers = configuration.getAuthorizers();
-        if (authorizers != null && !authorizers.isEmpty()) {
-            Map<String, Object> securitySchemas = getMap(getMap(specification, "components"), "securitySchemes");
-            authorizers.forEach((name, authorizer) -> securitySchemas.put(name, createSecuritySchema(authorizer)));
+    /**
+     * Augments a stream of yaml documents, read as UTF-8, writing them as UTF-8, as in
+     * {@link #augmentAll(String, Reader, Writer)}. The streams are not closed.
+     *
+     * @param name   the name of the stream, used on error messages
+     * @param input  the source of the documents
+     * @param output destination of the augmented documents, flushed after each document
+     */
+    public void augmentAll(String name, InputStream input, OutputStream output) throws IOException {
+        augmentAll(name, InputFiles.newReader(Channels.newChannel(input), bufferSize),
+                new ChannelWriter(output, bufferSize));
+    }
+
+    /**
+     * Augments a stream of yaml documents, separated by ---, processing one document at a time, so that memory
+     * usage only depends on the size of each document (or not even that, in streaming mode). Each augmented
+     * document is written and flushed as soon as it is ready, in the configured output format: multiple json
+     * documents are written one after the other (one per line, in json format). Apply mode is not supported.
+     * In splice mode, the whole stream is read before writing the documents.
+     *
+     * @param name   the name of the stream, used on error messages
+     * @param reader the source of the documents
+     * @param writer destination of the augmented documents
+     */
+    @SuppressWarnings("unchecked")
+    public void augmentAll(String name, Reader reader, Writer writer) throws IOException {
+        if (streaming && outputFormat != OutputFormat.YAML) {
+            throw new O4A_Exception("streaming mode only supports " + OutputFormat.YAML + " output");
         }
+        if (patches != null) {
+            throw new O4A_Exception("apply mode does not support multiple documents");
+        }
+        if (shardBy != null) {
+            throw new O4A_Exception("sharding is only supported when writing output files");
+        }
+        if (check) {
+            throw new O4A_Exception("check mode is only supported on output files");
+        }
+        checkModes();
+        DocumentLoader loader = this.loader;
+        // references in the stream are relative to the current folder
+        Path base = Paths.get("").toAbsolutePath().resolve("-");
+        try {
+            if (streaming) {
+                // the emitter flushes the writer at the end of each document
+                new StreamingAugmenter(getSnapshot(), loader.getYaml(), DocumentLoader.getDumperOptions())
+                        .augment(loader.getLimits().limit(reader), writer);
+            } else if (splice) {
+                writer.write(splice(DocumentLoader.read(loader.getLimits().limit(reader)), getSnapshot(), null,
+                        true));
+                writer.flush();
+            } else {
+                ConfigurationSnapshot snapshot = getSnapshot();
+                boolean first = true;
+                // the lazy iteration needs its own instance, as the thread's one parses the referenced files
+                for (Object document : loader.createYaml().loadAll(reader)) {
+                    if (!(document instanceof Map)) {
+                        throw new O4A_Exception(": invalid openapi content");
+                    }
+                    Map<String, Object> specification = (Map<String, Object>) document;
+                    loader.getLimits().checkOperations(specification);
+                    if (bundle) {
+                        getBundler().bundle(base, specification);
+                    }
+                    Object output = process(base, specification, snapshot, null);
+                    if (!first && !outputFormat.isJson()) {
+                        writer.write("---\n");
+                    }
+                    first = false;
+                    serialize(output, writer);
+                    writer.flush();
+                }
+            }
+        } catch (YAMLException yex) {
+            throw new O4A_Exception(name + ": invalid yaml content: " + yex.getMessage());
+        } catch (O4A_Exception ex) {
+            throw new O4A_Exception(name + ex.getMessage());
+        }
+    }
 
-        getMap(specification, PATHS).forEach((path, pathSpec) -> {
-            String location = PATHS + ":" + path;
-            castToMap(pathSpec, location).forEach((method, v) -> {
-                String subLocation = location + ":" + method;
+    private Target createTarget(String name, Configuration configuration, ConfigurationSnapshot snapshot,
+                                Path outputFolder) {
+        // check mode verifies every output, never trusting the manifest
+        String fingerprint = incremental && !check ? getFingerprint(configuration) : null;
+        BuildManifest manifest = fingerprint == null ? null : BuildManifest.load(outputFolder, fingerprint);
+        return new Target(name, snapshot, outputFolder, manifest);
+    }
 
-                Map<String, Object> methodSpec = castToMap(v, subLocation);
-                List<String> tags = castToList(methodSpec.get("tags"), subLocation);
-                Configuration.Integration spec = configuration.getIntegration(path, tags);
+    /**
+     * Bundling, apply mode and sharding are not supported in incremental mode, but are included anyway, so
+     * that the manifest cannot be reused if they are supported later
+     *
+     * @return the fingerprint of the configuration plus the options affecting the output, or null if the
+     * configuration does not support fingerprints
+     */
+    private String getFingerprint(Configuration configuration) {
+        String ret = configuration.getFingerprint();
+        return ret == null ? null : Configuration.computeFingerprint(Arrays.asList(ret, "streaming=" + streaming,
+                "splice=" + splice, "format=" + outputFormat, "compactYaml=" + compactYaml, "bundle=" + bundle,
+                "patches=" + patches, "shardBy=" + shardBy, "shardMaxOperations=" + shardMaxOperations,
+                "shardMaxBytes=" + shardMaxBytes));
+    }
 
-                if (spec != null) {
-                    final Map<String, String> integration = new LinkedHashMap<>();
-                    integration.put("payloadFormatVersion", DEFAULT_INTEGRATION_PAYLOAD_FORMAT_VERSION);
-                    integration.put("type", DEFAULT_INTEGRATION_TYPE);
-                    integration.put("connectionType", DEFAULT_INTEGRATION_CONNECTION_TYPE);
-                    integration.put("httpMethod", method.toUpperCase(Locale.ROOT));
-                    integration.put("uri", spec.getUri(path));
-                    methodSpec.put("x-amazon-apigateway-integration", integration);
+    /**
+     * Reads the file content (not in streaming mode) and, if there are manifests, checks whether the outputs
+     * are already up-to-date.
+     */
+    private void read(FileTask task, List<Target> targets) {
+        try {
+            if (loader.getLimits().isEnabled()) {
+                loader.checkSize(task.path, Files.size(task.path));
+            }
+            if (streaming) {
+                task.bytes = Files.size(task.path);
+            } else {
+                // a mapped file cannot be replaced on some platforms, so inputs overwritten are never mapped
+                boolean overwritten = targets.stream().anyMatch(x -> x.outputFolder == null);
+                task.content = InputFiles.read(task.path, overwritten ? Long.MAX_VALUE : mapThreshold);
+                task.bytes = task.content.remaining();
+            }
+            if (targets.get(0).manifest != null) {
+                task.hash = streaming ? hash(task.path) : BuildManifest.hash(task.content);
+                task.upToDate = targets.stream().allMatch(x -> x.manifest.isUpToDate(task.path, task.hash,
+                        getOutputPath(task.path, x.outputFolder)));
+                if (task.upToDate) {
+                    outputs.addUnchangedFiles(targets.size());
+                }
+            }
+            if (task.entry != null) {
+                task.entry.setBytes(task.bytes);
+                if (task.upToDate) {
+                    task.entry.setUpToDate();
+                }
+            }
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError reading file '" + task.path + "' : " + ioex);
+        }
+    }
 
-                    String authorizerName = spec.getAuthorizer();
-                    if (authorizerName != null) {
-                        Map<String, Object> scopes = new LinkedHashMap<>();
-                        scopes.put(authorizerName, new ArrayList<>(spec.getScopes()));
-                        final List<Object> securityScope = new ArrayList<>();
-                        securityScope.add(scopes);
-                        methodSpec.put("security", securityScope);
-                    }
+    private String hash(Path path) throws IOException {
+        MessageDigest digest = BuildManifest.createDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        try (FileChannel channel = FileChannel.open(path)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return BuildManifest.toHex(digest.digest());
+    }
+
+    private String splice(FileTask task, String content, Target target) {
+        try {
+            return splice(content, target.snapshot, getOperations(task, target), false);
+        } catch (O4A_Exception ex) {
+            throw new O4A_Exception(task.path + ex.getMessage());
+        }
+    }
+
+    /**
+     * Augments yaml content, editing its text
+     *
+     * @param operations counters to update with each augmented operation, can be null
+     * @param multiple   true to accept multiple documents
+     */
+    private String splice(String content, ConfigurationSnapshot snapshot, RunReport.Operations operations,
+                          boolean multiple) {
+        Yaml instance = loader.getYaml();
+        try {
+            Iterable<Node> documents = multiple ? instance.composeAll(new StringReader(content))
+                    : Collections.singletonList(instance.compose(new StringReader(content)));
+            return new SpecificationSplicer(snapshot, instance, operations).splice(content, documents);
+        } catch (YAMLException yex) {
+            throw new O4A_Exception(": invalid yaml content: " + yex.getMessage());
+        }
+    }
+
+    private void bundle(Path path, Map<String, Object> specification) {
+        try {
+            getBundler().bundle(path, specification);
+        } catch (O4A_Exception ex) {
+            throw new O4A_Exception(path + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return the bundler, created on first use, and kept while the bundle cache size does not change.
+     * Referenced files are loaded with the current loader, whatever the loader when the bundler was created
+     */
+    private ReferenceBundler getBundler() {
+        ReferenceBundler ret = bundler;
+        if (ret == null) {
+            synchronized (this) {
+                ret = bundler;
+                if (ret == null) {
+                    bundler = ret = new ReferenceBundler(new DocumentCache(bundleCacheSize,
+                            x -> loader.load(x, "referenced file")));
                 }
-            });
-        });
+            }
+        }
+        return ret;
     }
 
-    private Map<String, Object> createSecuritySchema(Configuration.Authorizer authorizer) {
-        Map<String, Object> ret = new LinkedHashMap<>();
-        Map<String, Object> authorizerInfo = new LinkedHashMap<>();
-        Map<String, Object> configuration = new LinkedHashMap<>();
-        ret.put("type", authorizer.getAuthorizationType());
-        ret.put("flows", new HashMap<>(authorizer.getFlows()));
-        ret.put("x-amazon-apigateway-authorizer", authorizerInfo);
-        authorizerInfo.put("identitySource", authorizer.getIdentitySource());
-        authorizerInfo.put("type", authorizer.getType());
-        authorizerInfo.put("jwtConfiguration", configuration);
-        configuration.put("audience", new ArrayList<>(authorizer.getAudience()));
-        configuration.put("issuer", authorizer.getIssuer());
+    private Object process(FileTask task, Map<String, Object> specification, Target target) {
+        Object ret;
+        try {
+            ret = process(task.path, specification, target.snapshot, getOperations(task, target));
+        } catch (O4A_Exception ex) {
+            throw new O4A_Exception(task.path + ex.getMessage());
+        }
+        if (compactYaml && task.entry != null) {
+            task.entry.getOutput(target.name).setExpandedBytes(getExpandedSize(ret));
+        }
         return ret;
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> castToMap(Object obj, String location) {
-        if (obj != null) {
-            try {
-                Map<?, ?> ret = (Map<?, ?>) obj;
-                checkOnlyStrings(ret.keySet(), location);
-                return (Map<String, Object>) ret;
-            } catch (ClassCastException cex) {
-                throw O4A_Exception.invalidType(location);
-            }
+    /**
+     * @return the size of the yaml document, when no instances are shared (so written without aliases)
+     */
+    private long getExpandedSize(Object document) {
+        CountingWriter ret = new CountingWriter();
+        loader.getYaml().dump(ConfigurationSnapshot.copy(document), ret);
+        return ret.getCount();
+    }
+
+    /**
+     * Augments the specification, or applies its patch in apply mode
+     *
+     * @return the document to output: the specification itself or, in the patch formats, the changes done.
+     * In this case, the given specification is not modified
+     */
+    private Object process(Path path, Map<String, Object> specification, ConfigurationSnapshot snapshot,
+                           RunReport.Operations operations) {
+        if (patches != null) {
+            Patches.apply(loadPatch(path), specification);
+            return specification;
+        }
+        if (!outputFormat.isPatch()) {
+            SpecificationAugmenter.augment(specification, snapshot, operations);
+            return specification;
         }
-        return new LinkedHashMap<>();
+        Map<String, Object> augmented = SpecificationAugmenter.overlay(specification);
+        SpecificationAugmenter.augment(augmented, snapshot, operations);
+        return outputFormat == OutputFormat.JSON_PATCH ? Patches.createJsonPatch(specification, augmented)
+                : Patches.createOverlay(path.getFileName().toString(), specification, augmented);
     }
 
-    @SuppressWarnings("unchecked")
-    private List<String> castToList(Object obj, String location) {
-        if (obj != null) {
-            try {
-                List<?> ret = (List<?>) obj;
-                checkOnlyStrings(ret, location);
-                return (List<String>) ret;
-            } catch (ClassCastException cex) {
-                throw O4A_Exception.invalidType(location);
+    /**
+     * Loads the patch created for the given specification, in json-patch or overlay format
+     */
+    private Object loadPatch(Path path) {
+        Path patch = OutputFormat.JSON_PATCH.getOutputPath(path, patches);
+        if (!Files.exists(patch)) {
+            Path overlay = OutputFormat.OVERLAY.getOutputPath(path, patches);
+            if (!Files.exists(overlay)) {
+                throw new O4A_Exception(": no patch found in '" + patches + "'");
             }
+            patch = overlay;
+        }
+        return loader.load(patch, "patch");
+    }
+
+    private String dump(Path path, Object document) {
+        StringWriter ret = new StringWriter();
+        try {
+            serialize(document, ret);
+        } catch (IOException ioex) {
+            // not expected when writing to memory
+            throw new O4A_Exception("IOError dumping file '" + path + "' : " + ioex);
         }
-        return new ArrayList<>();
+        return ret.toString();
     }
 
-    private void checkOnlyStrings(Collection<?> x, String location) {
-        x.forEach(k -> {
-            if (!(k instanceof String)) {
-                throw new O4A_Exception("unexpected openapi content on " + location + ":" + k);
+    private void serialize(Object document, Writer writer) throws IOException {
+        if (outputFormat == OutputFormat.JSON_PATCH) {
+            // one operation per line, so that changes on the patches are easy to review
+            String separator = "[\n";
+            for (Object operation : (List<?>) document) {
+                writer.write(separator);
+                new JsonWriter(writer).write(operation);
+                separator = ",\n";
             }
-        });
+            writer.write(separator.equals("[\n") ? "[]\n" : "\n]\n");
+        } else if (outputFormat == OutputFormat.JSON) {
+            new JsonWriter(writer).write(document);
+            writer.write('\n');
+        } else {
+            // anchors (compact yaml, or aliases in the input) are numbered by each Yaml instance, and each
+            // output must start from the first one, whatever the thread or the files processed before
+            loader.createYaml().dump(document, writer);
+        }
     }
 
-    private Map<String, Object> getMap(Map<String, Object> specification, String path) {
-        return castToMap(specification.computeIfAbsent(path, x -> new LinkedHashMap<>()), path + "path");
+    private void write(FileTask task, Target target, OutputWriter.Output output) {
+        outputs.write(task.path, task.hash, getOutputPath(task.path, target.outputFolder), target.manifest,
+                getReport(task, target), output);
+    }
+
+    /**
+     * Splits the document into shards, writing them in parallel
+     */
+    @SuppressWarnings("unchecked")
+    private void writeShards(FileTask task, Target target, Object document) {
+        Map<String, Map<String, Object>> shards;
+        try {
+            shards = sharder.shard((Map<String, Object>) document);
+        } catch (O4A_Exception ex) {
+            throw new O4A_Exception(task.path + ex.getMessage());
+        }
+        Path outputPath = getOutputPath(task.path, target.outputFolder);
+        RunReport.Output report = getReport(task, target);
+        List<String> failures = new BatchPipeline<Map.Entry<String, Map<String, Object>>>(threads, false)
+                .stage("shard", x -> outputs.write(task.path, task.hash,
+                        SpecificationSharder.getShardPath(outputPath, x.getKey()), target.manifest, report,
+                        writer -> serialize(x.getValue(), writer)))
+                .run(shards.entrySet());
+        if (!failures.isEmpty()) {
+            throw new O4A_Exception(failures.get(0));
+        }
+    }
+
+    /**
+     * Augments a file using the streaming engine
+     */
+    private void stream(FileTask task, Target target) {
+        Path path = task.path;
+        RunReport.Operations operations = getOperations(task, target);
+        outputs.stream(path, task.hash, getOutputPath(path, target.outputFolder).toAbsolutePath(),
+                target.manifest, getReport(task, target), writer -> {
+                    try (Reader reader = InputFiles.newReader(FileChannel.open(path), bufferSize)) {
+                        new StreamingAugmenter(target.snapshot, loader.getYaml(), DocumentLoader.getDumperOptions())
+                                .setOperations(operations)
+                                .augment(reader, writer);
+                    } catch (NoSuchFileException ex) {
+                        throw new O4A_Exception("IOError reading file '" + path + "' : " + ex);
+                    } catch (O4A_Exception ex) {
+                        throw new O4A_Exception(path + ex.getMessage());
+                    }
+                });
+    }
+
+    private static RunReport.Output getReport(FileTask task, Target target) {
+        return task.entry == null ? null : task.entry.getOutput(target.name);
+    }
+
+    private static RunReport.Operations getOperations(FileTask task, Target target) {
+        return task.entry == null ? null : task.entry.getOutput(target.name).getOperations();
+    }
+
+    /**
+     * @param path         the input path
+     * @param outputFolder the output folder, or null to overwrite the input
+     * @return the output path for the given input: in json format, its extension is replaced with .json, and
+     * with .patch.json or .overlay.yaml in the patch formats
+     */
+    public Path getOutputPath(Path path, Path outputFolder) {
+        return outputFormat.getOutputPath(path, outputFolder);
+    }
+
+    private ConfigurationSnapshot getSnapshot() {
+        ConfigurationSnapshot ret = snapshot;
+        if (ret == null) {
+            snapshot = ret = new ConfigurationSnapshot(configuration, compactYaml);
+        }
+        return ret;
+    }
+
+    /**
+     * Destination of the processed files: configuration to apply, output folder and manifest, if any
+     */
+    private static class Target {
+        final String name;
+        final ConfigurationSnapshot snapshot;
+        final Path outputFolder;
+        final BuildManifest manifest;
+
+        Target(String name, ConfigurationSnapshot snapshot, Path outputFolder, BuildManifest manifest) {
+            this.name = name;
+            this.snapshot = snapshot;
+            this.outputFolder = outputFolder;
+            this.manifest = manifest;
+        }
+    }
+
+    /**
+     * State of a single file while traversing the processing pipeline
+     */
+    private static class FileTask {
+        final Path path;
+        String hash;
+        boolean upToDate;
+        long bytes;
+        RunReport.Entry entry;
+        ByteBuffer content;
+        Map<String, Object> specification;
+        // the document to output, the augmented specification or its patch
+        Object document;
+        String output;
+
+        FileTask(Path path) {
+            this.path = path;
+        }
     }
 }
@@ -0,0 +1,224 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * File helpers to replace output files only when their content changes, and always atomically, or to check
+ * whether they are up-to-date.
+ */
+final class OutputFiles {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String TEMP_PREFIX = ".openapi4aws";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private OutputFiles() {
+    }
+
+    /**
+     * Files.createTempFile restricts the permissions to the owner, which would be kept once moved; instead,
+     * the file is created with the default permissions, as any other output.
+     *
+     * @return a new temporary file in the same folder as the given target, so it can be atomically moved there
+     */
+    static Path createTempFile(Path target) throws IOException {
+        Path folder = target.toAbsolutePath().getParent();
+        while (true) {
+            Path ret = folder.resolve(TEMP_PREFIX + Long.toUnsignedString(ThreadLocalRandom.current().nextLong())
+                    + TEMP_SUFFIX);
+            try {
+                return Files.createFile(ret);
+            } catch (FileAlreadyExistsException ex) {
+                // try again with another name
+            }
+        }
+    }
+
+    /**
+     * Moves the source file into the target, atomically if supported by the file system. An existing target
+     * keeps its permissions, which are copied first to the source.
+     */
+    static void move(Path source, Path target) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (view != null && Files.isRegularFile(target)) {
+            Files.getFileAttributeView(source, PosixFileAttributeView.class)
+                    .setPermissions(view.readAttributes().permissions());
+        }
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return true if the given file exists and has exactly the content of the buffer
+     */
+    static boolean hasContent(Path path, Buffer content) throws IOException {
+        return hasContent(path, content.size(), Channels.newChannel(content.asInputStream()));
+    }
+
+    /**
+     * @return true if the given file exists and has exactly the content of the other file
+     */
+    static boolean hasContent(Path path, Path other) throws IOException {
+        try (FileChannel channel = FileChannel.open(other)) {
+            return hasContent(path, channel.size(), channel);
+        }
+    }
+
+    /**
+     * Compares first the sizes, then the contents, chunk by chunk, stopping on the first difference.
+     * The file is read, not mapped, as a mapped file could not be replaced afterwards on some platforms.
+     */
+    private static boolean hasContent(Path path, long size, ReadableByteChannel expected) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) != size) {
+            return false;
+        }
+        ByteBuffer current = ByteBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer reference = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path)) {
+            while (true) {
+                boolean more = fill(channel, current) & fill(expected, reference);
+                if (!current.equals(reference)) {
+                    return false;
+                }
+                if (!more) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the buffer, returning false if the end of the channel is reached. The buffer is left ready to be read
+     */
+    private static boolean fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        boolean ret = true;
+        while (buffer.hasRemaining() && ret) {
+            ret = channel.read(buffer) != -1;
+        }
+        buffer.flip();
+        return ret;
+    }
+
+    /**
+     * Channel comparing the bytes written with the content of an existing file, read as they are written.
+     * On the first difference, the write fails with a Difference exception, so that the rendering of the
+     * content can stop there; anything written afterwards is discarded.
+     */
+    static final class Comparison implements WritableByteChannel {
+        private final FileChannel channel;
+        private final long size;
+        private final ByteBuffer current = ByteBuffer.allocate(BUFFER_SIZE);
+        private long position;
+        private long difference = -1;
+
+        /**
+         * @param path the file to compare with, which may not exist
+         */
+        Comparison(Path path) throws IOException {
+            channel = Files.isRegularFile(path) ? FileChannel.open(path) : null;
+            size = channel == null ? 0 : channel.size();
+        }
+
+        /**
+         * @return true if a difference has been found already
+         */
+        boolean isDifferent() {
+            return difference >= 0;
+        }
+
+        /**
+         * Completes the comparison, once all the content is written, even if the channel is already closed
+         *
+         * @return the offset of the first difference, or -1 if the file has exactly the written content
+         */
+        long finish() throws IOException {
+            if (difference < 0 && (channel == null || size != position)) {
+                difference = position;
+            }
+            return difference;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int ret = source.remaining();
+            if (difference < 0) {
+                if (channel == null) {
+                    difference = 0;
+                }
+                while (difference < 0 && source.hasRemaining()) {
+                    int requested = Math.min(current.capacity(), source.remaining());
+                    current.clear();
+                    current.limit(requested);
+                    while (current.hasRemaining() && channel.read(current) != -1) {
+                        // read until the requested size, or the end of the file
+                    }
+                    current.flip();
+                    int read = current.remaining();
+                    int offset = source.position();
+                    for (int i = 0; i < read && difference < 0; i++) {
+                        if (current.get(i) != source.get(offset + i)) {
+                            difference = position + i;
+                        }
+                    }
+                    if (difference < 0 && read < requested) {
+                        // the file is shorter
+                        difference = position + read;
+                    }
+                    position += read;
+                    source.position(offset + read);
+                }
+                if (difference >= 0) {
+                    source.position(source.limit());
+                    throw new Difference();
+                }
+            }
+            source.position(source.limit());
+            return ret;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel == null || channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Raised by a comparison on the first difference found
+     */
+    static final class Difference extends IOException {
+        Difference() {
+            super("content differs");
+        }
+    }
+
+    /**
+     * In-memory output, giving access to its content without copying it
+     */
+    static class Buffer extends ByteArrayOutputStream {
+
+        ByteArrayInputStream asInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
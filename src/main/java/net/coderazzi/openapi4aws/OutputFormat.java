@@ -0,0 +1,73 @@
+package net.coderazzi.openapi4aws;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Format of the augmented specifications
+ */
+public enum OutputFormat {
+    /**
+     * Block style yaml, the default format
+     */
+    YAML(null, false),
+    /**
+     * Compact json; the output files get the extension .json
+     */
+    JSON(".json", true),
+    /**
+     * Only the changes done on the specification, as an RFC 6902 JSON Patch, with one operation per line;
+     * the output files get the extension .patch.json
+     */
+    JSON_PATCH(".patch.json", true),
+    /**
+     * Only the changes done on the specification, as an OpenAPI Overlay document in yaml; the output files
+     * get the extension .overlay.yaml
+     */
+    OVERLAY(".overlay.yaml", false);
+
+    private final String extension;
+    private final boolean json;
+
+    OutputFormat(String extension, boolean json) {
+        this.extension = extension;
+        this.json = json;
+    }
+
+    /**
+     * @return true if the output is written as json
+     */
+    public boolean isJson() {
+        return json;
+    }
+
+    /**
+     * @return true if the output includes only the changes done on the specification
+     */
+    public boolean isPatch() {
+        return this == JSON_PATCH || this == OVERLAY;
+    }
+
+    /**
+     * @param path         the input path
+     * @param outputFolder the output folder, or null to overwrite the input
+     * @return the output path for the given input: in json format, its extension is replaced with .json, and
+     * with .patch.json or .overlay.yaml in the patch formats
+     */
+    Path getOutputPath(Path path, Path outputFolder) {
+        Path ret = outputFolder == null ? path : outputFolder.resolve(path.getFileName());
+        if (extension != null && !(this == JSON && DocumentLoader.isJson(ret))) {
+            String name = ret.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            ret = ret.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + extension);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the format with the given name, case insensitive, with dashes instead of underscores (json-patch)
+     */
+    public static OutputFormat parse(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
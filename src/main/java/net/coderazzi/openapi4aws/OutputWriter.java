@@ -0,0 +1,356 @@
+package net.coderazzi.openapi4aws;
+
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the output files, counting them: directly, or only if their content changes (skip unchanged), or
+ * just comparing them with the existing files (check mode). Outputs are rendered by the given {@link Output},
+ * and the manifest and the report, if any, are updated with the result. It can be used concurrently from
+ * multiple threads.
+ */
+final class OutputWriter {
+
+    /**
+     * Renders an output
+     */
+    interface Output {
+        void write(Writer writer) throws IOException;
+    }
+
+    private final DocumentLoader loader;
+    private final int bufferSize;
+    private final boolean skipUnchanged;
+    private final boolean check;
+    private final boolean sharded;
+    private final AtomicInteger writtenFiles = new AtomicInteger();
+    private final AtomicInteger unchangedFiles = new AtomicInteger();
+    private final Queue<String> staleOutputs = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param loader        the loader used to find the first structural difference of the stale outputs
+     * @param bufferSize    the size of the buffers used to write the files
+     * @param skipUnchanged true to write the files only if their content changes
+     * @param check         true to check the outputs, without writing anything
+     * @param sharded       true if the outputs are shards, reported as such
+     */
+    OutputWriter(DocumentLoader loader, int bufferSize, boolean skipUnchanged, boolean check, boolean sharded) {
+        this.loader = loader;
+        this.bufferSize = bufferSize;
+        this.skipUnchanged = skipUnchanged;
+        this.check = check;
+        this.sharded = sharded;
+    }
+
+    int getWrittenFiles() {
+        return writtenFiles.get();
+    }
+
+    int getUnchangedFiles() {
+        return unchangedFiles.get();
+    }
+
+    /**
+     * Counts outputs found up-to-date without rendering them
+     */
+    void addUnchangedFiles(int files) {
+        unchangedFiles.addAndGet(files);
+    }
+
+    /**
+     * @return the stale outputs, with the location of their first difference, sorted by path
+     */
+    List<String> getStaleOutputs() {
+        List<String> ret = new ArrayList<>(staleOutputs);
+        Collections.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Writes an output already rendered, read until the end of the given stream, which is not closed
+     *
+     * @param path the input path, used on error messages
+     * @return true if the file is written
+     */
+    boolean write(Path path, Path outputPath, InputStream content) {
+        OutputFiles.Buffer buffer = new OutputFiles.Buffer();
+        try {
+            byte[] chunk = new byte[bufferSize];
+            int read;
+            while ((read = content.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError reading file '" + path + "' : " + ioex);
+        }
+        if (skipUnchanged) {
+            return replaceIfChanged(path, outputPath, buffer);
+        }
+        replace(path, outputPath, buffer);
+        writtenFiles.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Writes the output rendered in memory or directly into the output file
+     *
+     * @param path     the input path, used on error messages
+     * @param hash     the hash of the input, if there is a manifest
+     * @param manifest the manifest to update, can be null
+     * @param report   the report to update, can be null
+     */
+    void write(Path path, String hash, Path outputPath, BuildManifest manifest, RunReport.Output report,
+               Output output) {
+        if (check) {
+            check(path, outputPath, report, output, true);
+            return;
+        }
+        MessageDigest digest = manifest == null ? null : BuildManifest.createDigest();
+        if (skipUnchanged) {
+            OutputFiles.Buffer buffer = new OutputFiles.Buffer();
+            try (final Writer writer = new ChannelWriter(Channels.newChannel(buffer), digest, bufferSize)) {
+                output.write(writer);
+            } catch (IOException ioex) {
+                // not expected when writing to memory
+                throw new O4A_Exception("IOError dumping file '" + path + "' : " + ioex);
+            }
+            boolean changed = replaceIfChanged(path, outputPath, buffer);
+            if (report != null) {
+                setWritten(report, outputPath, buffer.size(), changed);
+            }
+        } else {
+            try (final Writer writer = ChannelWriter.open(outputPath, digest, bufferSize)) {
+                output.write(writer);
+            } catch (IOException ioex) {
+                throw new O4A_Exception("IOError writing file '" + path + "' : " + ioex);
+            }
+            writtenFiles.incrementAndGet();
+            if (report != null) {
+                setWritten(report, outputPath, size(outputPath), true);
+            }
+        }
+        updateManifest(path, hash, outputPath, manifest, digest);
+    }
+
+    /**
+     * Writes an output rendered from the input file itself, as in streaming mode: it is written first to a
+     * temporary file, as the output could be the input file. Stale outputs are not rendered in memory, to keep
+     * the memory usage bounded
+     *
+     * @param path     the input path, used on error messages
+     * @param hash     the hash of the input, if there is a manifest
+     * @param manifest the manifest to update, can be null
+     * @param report   the report to update, can be null
+     */
+    void stream(Path path, String hash, Path outputPath, BuildManifest manifest, RunReport.Output report,
+                Output output) {
+        if (check) {
+            check(path, outputPath, report, output, false);
+            return;
+        }
+        MessageDigest digest = manifest == null ? null : BuildManifest.createDigest();
+        Path tmp;
+        try {
+            tmp = OutputFiles.createTempFile(outputPath);
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError writing file '" + path + "' : " + ioex);
+        }
+        try {
+            try (Writer writer = ChannelWriter.open(tmp, digest, bufferSize)) {
+                output.write(writer);
+            }
+            long bytes = report == null ? 0 : Files.size(tmp);
+            boolean changed = !skipUnchanged || !OutputFiles.hasContent(outputPath, tmp);
+            if (changed) {
+                OutputFiles.move(tmp, outputPath);
+                writtenFiles.incrementAndGet();
+            } else {
+                unchangedFiles.incrementAndGet();
+            }
+            if (report != null) {
+                report.setWritten(outputPath, bytes, changed);
+            }
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError writing file '" + path + "' : " + ioex);
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ioex) {
+                // nothing else to do
+            }
+        }
+        updateManifest(path, hash, outputPath, manifest, digest);
+    }
+
+    /**
+     * Compares the output with the existing file, stopping at the first different byte. Stale outputs are
+     * registered, with the location of their first difference
+     *
+     * @param structural true to find the first structural difference of stale outputs, rendering then the
+     *                   whole output in memory
+     */
+    private void check(Path path, Path outputPath, RunReport.Output report, Output output, boolean structural) {
+        long difference;
+        try (OutputFiles.Comparison comparison = new OutputFiles.Comparison(outputPath)) {
+            try (Writer writer = new ChannelWriter(comparison, null, bufferSize)) {
+                output.write(writer);
+            } catch (IOException | RuntimeException ex) {
+                // the comparison stops the rendering on the first difference, raising a (maybe wrapped) exception
+                if (!comparison.isDifferent()) {
+                    throw ex;
+                }
+            }
+            difference = comparison.finish();
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError checking file '" + path + "' : " + ioex);
+        }
+        boolean exists = Files.isRegularFile(outputPath);
+        if (difference < 0) {
+            unchangedFiles.incrementAndGet();
+        } else if (!exists) {
+            staleOutputs.add(outputPath + ": missing");
+        } else {
+            String ret = outputPath + ": differs from byte " + difference;
+            staleOutputs.add(structural ? ret + describeDifference(outputPath, output) : ret);
+        }
+        if (report != null) {
+            setWritten(report, outputPath, exists ? size(outputPath) : 0, difference >= 0);
+        }
+    }
+
+    /**
+     * @return the location of the first structural difference between the output and the existing file
+     */
+    private String describeDifference(Path outputPath, Output output) {
+        Object expected;
+        Object current;
+        try {
+            StringWriter rendered = new StringWriter();
+            output.write(rendered);
+            expected = DocumentLoader.isJson(outputPath) ? JsonReader.parse(rendered.toString())
+                    : loader.getYaml().load(rendered.toString());
+            current = loader.load(outputPath, InputFiles.read(outputPath, Long.MAX_VALUE));
+        } catch (IOException | YAMLException | O4A_Exception ex) {
+            return ", cannot be loaded";
+        }
+        String location = findDifference(expected, current, null);
+        return location == null ? ", with the same content" : ", first on " + location;
+    }
+
+    /**
+     * @return the location of the first difference between both documents, in the order of the expected one,
+     * or null if they are equal (ignoring the order of the keys)
+     */
+    private static String findDifference(Object expected, Object current, String location) {
+        if (expected instanceof Map && current instanceof Map) {
+            Map<?, ?> expectedMap = (Map<?, ?>) expected;
+            Map<?, ?> currentMap = (Map<?, ?>) current;
+            for (Map.Entry<?, ?> entry : expectedMap.entrySet()) {
+                String subLocation = getLocation(location, entry.getKey());
+                if (!currentMap.containsKey(entry.getKey())) {
+                    return subLocation;
+                }
+                String ret = findDifference(entry.getValue(), currentMap.get(entry.getKey()), subLocation);
+                if (ret != null) {
+                    return ret;
+                }
+            }
+            for (Object key : currentMap.keySet()) {
+                if (!expectedMap.containsKey(key)) {
+                    return getLocation(location, key);
+                }
+            }
+            return null;
+        }
+        if (expected instanceof List && current instanceof List) {
+            List<?> expectedList = (List<?>) expected;
+            List<?> currentList = (List<?>) current;
+            int size = Math.min(expectedList.size(), currentList.size());
+            for (int i = 0; i < size; i++) {
+                String ret = findDifference(expectedList.get(i), currentList.get(i), getLocation(location, i));
+                if (ret != null) {
+                    return ret;
+                }
+            }
+            return expectedList.size() == currentList.size() ? null : getLocation(location, size);
+        }
+        return Objects.equals(expected, current) ? null : location == null ? "root" : location;
+    }
+
+    private static String getLocation(String location, Object key) {
+        return location == null ? String.valueOf(key) : location + ":" + key;
+    }
+
+    private void setWritten(RunReport.Output report, Path outputPath, long bytes, boolean changed) {
+        if (sharded) {
+            report.addShard(outputPath, bytes, changed);
+        } else {
+            report.setWritten(outputPath, bytes, changed);
+        }
+    }
+
+    /**
+     * Writes the output file, through a temporary file, only if its content differs from the given one
+     *
+     * @return true if the file is written
+     */
+    private boolean replaceIfChanged(Path path, Path outputPath, OutputFiles.Buffer content) {
+        try {
+            if (OutputFiles.hasContent(outputPath, content)) {
+                unchangedFiles.incrementAndGet();
+                return false;
+            }
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError writing file '" + path + "' : " + ioex);
+        }
+        replace(path, outputPath, content);
+        writtenFiles.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Writes the output file through a temporary file, which then replaces it atomically
+     */
+    private static void replace(Path path, Path outputPath, OutputFiles.Buffer content) {
+        try {
+            Path tmp = OutputFiles.createTempFile(outputPath);
+            try {
+                try (OutputStream os = Files.newOutputStream(tmp)) {
+                    content.writeTo(os);
+                }
+                OutputFiles.move(tmp, outputPath);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError writing file '" + path + "' : " + ioex);
+        }
+    }
+
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError reading file '" + path + "' : " + ioex);
+        }
+    }
+
+    private static void updateManifest(Path path, String hash, Path outputPath, BuildManifest manifest,
+                                       MessageDigest digest) {
+        if (manifest != null) {
+            try {
+                manifest.update(path, hash, BuildManifest.toHex(digest.digest()), Files.size(outputPath));
+            } catch (IOException ioex) {
+                throw new O4A_Exception("IOError reading file '" + outputPath + "' : " + ioex);
+            }
+        }
+    }
+}
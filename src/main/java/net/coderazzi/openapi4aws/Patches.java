@@ -0,0 +1,295 @@
+package net.coderazzi.openapi4aws;
+
+import java.util.*;
+
+/**
+ * Creation and application of the changes done by augment on a specification, as an RFC 6902 JSON Patch,
+ * or as an OpenAPI Overlay (1.0.0) document.
+ * Changes are found comparing the original specification with its augmented overlay: as the overlay shares
+ * any unmodified content with the original, only the modified maps are traversed.
+ */
+final class Patches {
+
+    private static final String OP = "op";
+    private static final String PATH = "path";
+    private static final String VALUE = "value";
+    private static final String ADD = "add";
+    private static final String REPLACE = "replace";
+    private static final String REMOVE = "remove";
+    private static final String OVERLAY = "overlay";
+    private static final String OVERLAY_VERSION = "1.0.0";
+    private static final String ACTIONS = "actions";
+    private static final String TARGET = "target";
+    private static final String UPDATE = "update";
+
+    private Patches() {
+    }
+
+    /**
+     * @return the JSON Patch operations to convert the original specification into the augmented one
+     */
+    static List<Object> createJsonPatch(Map<?, ?> original, Map<?, ?> augmented) {
+        List<Object> ret = new ArrayList<>();
+        diff(new ArrayList<>(), original, augmented, (op, location, value) -> {
+            Map<String, Object> operation = new LinkedHashMap<>();
+            operation.put(OP, op);
+            operation.put(PATH, toPointer(location));
+            if (value != null) {
+                operation.put(VALUE, value);
+            }
+            ret.add(operation);
+        });
+        return ret;
+    }
+
+    /**
+     * @param name the name of the original specification, included in the overlay
+     * @return the overlay document to convert the original specification into the augmented one. Replaced
+     * values are first removed, and then updated, as updates merge their content with the existing one
+     */
+    static Map<String, Object> createOverlay(String name, Map<?, ?> original, Map<?, ?> augmented) {
+        List<Object> actions = new ArrayList<>();
+        Map<String, Map<Object, Object>> updates = new LinkedHashMap<>();
+        diff(new ArrayList<>(), original, augmented, (op, location, value) -> {
+            if (!ADD.equals(op)) {
+                Map<String, Object> action = new LinkedHashMap<>();
+                action.put(TARGET, toJsonPath(location));
+                action.put(REMOVE, true);
+                actions.add(action);
+            }
+            if (value != null) {
+                // the values added to the same parent are grouped on a single update
+                String parent = toJsonPath(location.subList(0, location.size() - 1));
+                updates.computeIfAbsent(parent, x -> new LinkedHashMap<>()).put(location.get(location.size() - 1),
+                        value);
+            }
+        });
+        updates.forEach((target, update) -> {
+            Map<String, Object> action = new LinkedHashMap<>();
+            action.put(TARGET, target);
+            action.put(UPDATE, update);
+            actions.add(action);
+        });
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("title", "AWS extensions for " + name);
+        info.put("version", "1.0.0");
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put(OVERLAY, OVERLAY_VERSION);
+        ret.put("info", info);
+        ret.put("extends", name);
+        ret.put(ACTIONS, actions);
+        return ret;
+    }
+
+    /**
+     * Applies, in place, a patch created by createJsonPatch or createOverlay
+     */
+    static void apply(Object patch, Map<String, Object> specification) {
+        if (patch instanceof List) {
+            for (Object operation : (List<?>) patch) {
+                applyOperation(operation, specification);
+            }
+        } else if (patch instanceof Map && ((Map<?, ?>) patch).containsKey(OVERLAY)) {
+            Object actions = ((Map<?, ?>) patch).get(ACTIONS);
+            if (actions != null && !(actions instanceof List)) {
+                throw new O4A_Exception(": invalid overlay actions");
+            }
+            if (actions != null) {
+                for (Object action : (List<?>) actions) {
+                    applyAction(action, specification);
+                }
+            }
+        } else {
+            throw new O4A_Exception(": unsupported patch content");
+        }
+    }
+
+    private interface Change {
+        void handle(String op, List<String> location, Object value);
+    }
+
+    /**
+     * Finds the differences between two maps. Values in the augmented map that are the same instances
+     * as in the original one are not compared
+     */
+    private static void diff(List<String> location, Map<?, ?> original, Map<?, ?> augmented, Change change) {
+        for (Map.Entry<?, ?> entry : augmented.entrySet()) {
+            Object key = entry.getKey();
+            Object value = entry.getValue();
+            Object previous = original.get(key);
+            if (previous == value) {
+                continue;
+            }
+            location.add(String.valueOf(key));
+            if (previous == null && !original.containsKey(key)) {
+                change.handle(ADD, new ArrayList<>(location), value);
+            } else if (previous instanceof Map && value instanceof Map) {
+                diff(location, (Map<?, ?>) previous, (Map<?, ?>) value, change);
+            } else if (!Objects.equals(previous, value)) {
+                change.handle(REPLACE, new ArrayList<>(location), value);
+            }
+            location.remove(location.size() - 1);
+        }
+        for (Object key : original.keySet()) {
+            if (!augmented.containsKey(key)) {
+                List<String> removed = new ArrayList<>(location);
+                removed.add(String.valueOf(key));
+                change.handle(REMOVE, removed, null);
+            }
+        }
+    }
+
+    private static void applyOperation(Object operation, Map<String, Object> specification) {
+        if (!(operation instanceof Map)) {
+            throw new O4A_Exception(": invalid json patch operation");
+        }
+        Map<?, ?> map = (Map<?, ?>) operation;
+        Object op = map.get(OP);
+        Object path = map.get(PATH);
+        if (!(path instanceof String)) {
+            throw new O4A_Exception(": invalid json patch operation: " + operation);
+        }
+        List<String> location = fromPointer((String) path);
+        if (location.isEmpty()) {
+            throw new O4A_Exception(": unsupported json patch operation on the whole document");
+        }
+        Map<String, Object> parent = getParent(specification, location, path);
+        String key = location.get(location.size() - 1);
+        if (REMOVE.equals(op) || REPLACE.equals(op)) {
+            if (!parent.containsKey(key)) {
+                throw new O4A_Exception(": json patch path not found: " + path);
+            }
+        } else if (!ADD.equals(op)) {
+            throw new O4A_Exception(": unsupported json patch operation: " + op);
+        }
+        if (REMOVE.equals(op)) {
+            parent.remove(key);
+        } else {
+            parent.put(key, map.get(VALUE));
+        }
+    }
+
+    private static void applyAction(Object action, Map<String, Object> specification) {
+        if (!(action instanceof Map)) {
+            throw new O4A_Exception(": invalid overlay action");
+        }
+        Map<?, ?> map = (Map<?, ?>) action;
+        Object target = map.get(TARGET);
+        if (!(target instanceof String)) {
+            throw new O4A_Exception(": invalid overlay action: " + action);
+        }
+        List<String> location = fromJsonPath((String) target);
+        if (Boolean.TRUE.equals(map.get(REMOVE))) {
+            if (location.isEmpty()) {
+                throw new O4A_Exception(": unsupported overlay removal of the whole document");
+            }
+            Map<String, Object> parent = getParent(specification, location, target);
+            parent.remove(location.get(location.size() - 1));
+        } else if (map.get(UPDATE) instanceof Map) {
+            Object node = specification;
+            for (String each : location) {
+                node = node instanceof Map ? ((Map<?, ?>) node).get(each) : null;
+            }
+            if (!(node instanceof Map)) {
+                throw new O4A_Exception(": overlay target not found: " + target);
+            }
+            merge(cast(node), (Map<?, ?>) map.get(UPDATE));
+        }
+    }
+
+    /**
+     * Merges recursively the update into the target, as defined for overlay updates
+     */
+    private static void merge(Map<String, Object> target, Map<?, ?> update) {
+        update.forEach((k, v) -> {
+            String key = String.valueOf(k);
+            Object existing = target.get(key);
+            if (existing instanceof Map && v instanceof Map) {
+                merge(cast(existing), (Map<?, ?>) v);
+            } else {
+                target.put(key, v);
+            }
+        });
+    }
+
+    private static Map<String, Object> getParent(Map<String, Object> specification, List<String> location,
+                                                 Object path) {
+        Object ret = specification;
+        for (String each : location.subList(0, location.size() - 1)) {
+            ret = ret instanceof Map ? ((Map<?, ?>) ret).get(each) : null;
+        }
+        if (!(ret instanceof Map)) {
+            throw new O4A_Exception(": patch location not found: " + path);
+        }
+        return cast(ret);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cast(Object map) {
+        return (Map<String, Object>) map;
+    }
+
+    private static String toPointer(List<String> location) {
+        StringBuilder ret = new StringBuilder();
+        for (String each : location) {
+            ret.append('/').append(each.replace("~", "~0").replace("/", "~1"));
+        }
+        return ret.toString();
+    }
+
+    private static List<String> fromPointer(String pointer) {
+        List<String> ret = new ArrayList<>();
+        if (!pointer.isEmpty()) {
+            if (pointer.charAt(0) != '/') {
+                throw new O4A_Exception(": invalid json pointer: " + pointer);
+            }
+            for (String each : pointer.substring(1).split("/", -1)) {
+                ret.add(each.replace("~1", "/").replace("~0", "~"));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return a JSONPath expression in bracket notation, like $['paths']['/users']['get']
+     */
+    private static String toJsonPath(List<String> location) {
+        StringBuilder ret = new StringBuilder("$");
+        for (String each : location) {
+            ret.append("['").append(each.replace("\\", "\\\\").replace("'", "\\'")).append("']");
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Parses the JSONPath expressions created by toJsonPath: only the bracket notation is supported
+     */
+    private static List<String> fromJsonPath(String path) {
+        List<String> ret = new ArrayList<>();
+        int length = path.length();
+        if (length == 0 || path.charAt(0) != '$') {
+            throw new O4A_Exception(": unsupported overlay target: " + path);
+        }
+        int index = 1;
+        while (index < length) {
+            if (!path.startsWith("['", index)) {
+                throw new O4A_Exception(": unsupported overlay target: " + path);
+            }
+            StringBuilder segment = new StringBuilder();
+            index += 2;
+            while (index < length && path.charAt(index) != '\'') {
+                char c = path.charAt(index++);
+                if (c == '\\' && index < length) {
+                    c = path.charAt(index++);
+                }
+                segment.append(c);
+            }
+            if (!path.startsWith("']", index)) {
+                throw new O4A_Exception(": unsupported overlay target: " + path);
+            }
+            index += 2;
+            ret.add(segment.toString());
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,244 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the files matching a set of globs, walking the current folder only once, in parallel.
+ * Absolute globs are walked from their literal base folder instead, unless already included in another one.
+ * Subtrees that cannot match any of the globs, considering their literal base folder and maximum depth,
+ * are not visited, nor are any subtrees matching an exclusion glob.
+ */
+class PathScanner {
+
+    private static final String GLOB_META_CHARS = "*?[{\\";
+
+    private final List<Glob> globs = new ArrayList<>();
+    private final List<PathMatcher> excludes = new ArrayList<>();
+
+    /**
+     * @param globs    the globs to find
+     * @param excludes globs for files or folders to exclude. Excluded folders are not visited at all
+     */
+    PathScanner(Collection<String> globs, Collection<String> excludes) {
+        FileSystem fs = FileSystems.getDefault();
+        globs.forEach(x -> this.globs.add(new Glob(x, fs.getPathMatcher("glob:" + x))));
+        if (excludes != null) {
+            excludes.forEach(x -> this.excludes.add(fs.getPathMatcher("glob:" + x)));
+        }
+    }
+
+    /**
+     * Adds to the given collection all the files matching any glob
+     */
+    void scan(Collection<Path> found) {
+        Queue<Path> ret = new ConcurrentLinkedQueue<>();
+        for (Path root : getRoots()) {
+            // the depth of the current folder is 0, while absolute folders count all their names
+            Scan task = new Scan(root, root.isAbsolute() ? root.getNameCount() : 0, ret);
+            try {
+                // the root folder is listed first, so that problems reading it are reported
+                task.list();
+            } catch (IOException iex) {
+                throw new O4A_Exception("IOError while looking for globs " + globs + ": " + iex);
+            }
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        found.addAll(ret);
+    }
+
+    /**
+     * @return the folders to walk: the current folder for the relative globs, and the base folders of the
+     * absolute globs, if they exist and are not included in another base folder
+     */
+    private List<Path> getRoots() {
+        List<Path> ret = new ArrayList<>();
+        List<Path> bases = new ArrayList<>();
+        for (Glob glob : globs) {
+            if (!glob.absolute) {
+                if (ret.isEmpty()) {
+                    ret.add(FileSystems.getDefault().getPath(""));
+                }
+            } else if (Files.isDirectory(glob.base)) {
+                bases.add(glob.base);
+            }
+        }
+        // with shorter bases first, any base included in another one is found after it
+        bases.sort((a, b) -> Integer.compare(a.getNameCount(), b.getNameCount()));
+        for (Path base : bases) {
+            if (ret.stream().noneMatch(x -> x.isAbsolute() && base.startsWith(x))) {
+                ret.add(base);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the literal folder where all the files matching the glob must be located, or null if there is
+     * no literal folder: the glob starts with a pattern, or is just a file name. For absolute globs, the
+     * returned folder is absolute as well
+     */
+    static Path getBase(String glob) {
+        String[] names = glob.split("/");
+        int literalNames = getLiteralNames(names);
+        if (literalNames == 0) {
+            return null;
+        }
+        String base = String.join("/", Arrays.asList(names).subList(0, literalNames));
+        // an absolute glob like /*.yaml has just the root as base
+        return Paths.get(base.isEmpty() ? "/" : base);
+    }
+
+    /**
+     * @return the maximum depth, below the base folder of the glob, of the folders where the matching files
+     * can be located (0 if only in the base folder), or -1 if there is no limit
+     */
+    static int getMaxDepth(String glob) {
+        if (glob.contains("**") || glob.contains("{")) {
+            return -1;
+        }
+        String[] names = glob.split("/");
+        return names.length - 1 - getLiteralNames(names);
+    }
+
+    /**
+     * @return the number of leading folder names without patterns
+     */
+    private static int getLiteralNames(String[] names) {
+        int ret = 0;
+        while (ret < names.length - 1 && !Glob.hasMetaChars(names[ret])) {
+            ret++;
+        }
+        return ret;
+    }
+
+    private boolean isExcluded(Path path) {
+        for (PathMatcher exclude : excludes) {
+            if (exclude.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(Path file) {
+        for (Glob glob : globs) {
+            if (glob.matcher.matches(file)) {
+                return !isExcluded(file);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if files within the given folder could match any of the globs
+     */
+    private boolean isCandidate(Path folder, int depth) {
+        for (Glob glob : globs) {
+            if (glob.isCandidate(folder, depth)) {
+                return !isExcluded(folder);
+            }
+        }
+        return false;
+    }
+
+    private class Scan extends RecursiveAction {
+        private final Path folder;
+        private final int depth;
+        private final Queue<Path> found;
+        private List<Path> folders, files;
+
+        Scan(Path folder, int depth, Queue<Path> found) {
+            this.folder = folder;
+            this.depth = depth;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (files == null) {
+                try {
+                    list();
+                } catch (IOException iex) {
+                    // as with Files.walkFileTree, unreadable folders are just ignored
+                    return;
+                }
+            }
+            files.stream().filter(PathScanner.this::matches).forEach(found::add);
+            List<Scan> tasks = new ArrayList<>(folders.size());
+            folders.forEach(x -> tasks.add(new Scan(x, depth + 1, found)));
+            invokeAll(tasks);
+        }
+
+        void list() throws IOException {
+            folders = new ArrayList<>();
+            files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+                for (Path each : stream) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(each, BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException ioex) {
+                        continue;
+                    }
+                    if (!attributes.isDirectory()) {
+                        files.add(each);
+                    } else if (isCandidate(each, depth + 1)) {
+                        folders.add(each);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Glob {
+        final PathMatcher matcher;
+        // literal folder where all matches must be located
+        final Path base;
+        // absolute globs only match absolute paths, and relative globs relative paths
+        final boolean absolute;
+        // maximum number of path elements on a matching file, or -1 if unlimited
+        final int maxNames;
+
+        Glob(String glob, PathMatcher matcher) {
+            this.matcher = matcher;
+            this.base = getBase(glob);
+            this.absolute = base != null && base.isAbsolute();
+            // with '**', or with braces (that could include separators), there is no depth limit
+            // the root of absolute globs is not a path element
+            this.maxNames = glob.contains("**") || glob.contains("{") ? -1
+                    : glob.split("/").length - (absolute ? 1 : 0);
+        }
+
+        /**
+         * @param folder folder to check
+         * @param depth  number of path elements on the folder
+         * @return true if files within the folder could match this glob
+         */
+        boolean isCandidate(Path folder, int depth) {
+            if (folder.isAbsolute() != absolute || (maxNames != -1 && depth >= maxNames)) {
+                return false;
+            }
+            return base == null || folder.startsWith(base) || base.startsWith(folder);
+        }
+
+        private static boolean hasMetaChars(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                if (GLOB_META_CHARS.indexOf(name.charAt(i)) != -1) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
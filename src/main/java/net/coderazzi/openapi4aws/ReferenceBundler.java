@@ -0,0 +1,286 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Resolves the external references ($ref to other files) of a specification. References to components of
+ * other files (like common.yaml#/components/schemas/User) are hoisted: the component is copied once into the
+ * components of the specification, and the references point then to that local copy, so that recursive
+ * components are supported. Any other external reference is replaced with a copy of the referenced content.
+ * Local references (like #/components/schemas/User) in the specification are kept, but those found in the
+ * referenced files are resolved as well, as they point to their own file.
+ * References to remote documents (http://...) are not resolved. Circular references that cannot be hoisted
+ * cannot be inlined either, and raise an error.
+ */
+final class ReferenceBundler {
+
+    private static final String REF = "$ref";
+    private static final String COMPONENTS_POINTER = "/" + Openapi4AWS.COMPONENTS + "/";
+
+    private final DocumentCache documents;
+
+    /**
+     * @param documents the cache of referenced documents, shared by all the specifications of a run
+     */
+    ReferenceBundler(DocumentCache documents) {
+        this.documents = documents;
+    }
+
+    /**
+     * @return the number of referenced documents loaded so far
+     */
+    int getLoads() {
+        return documents.getLoads();
+    }
+
+    /**
+     * Resolves, in place, the external references of the given specification
+     *
+     * @param path          the path of the specification, to find the referenced files
+     * @param specification the specification
+     */
+    void bundle(Path path, Map<String, Object> specification) {
+        Location location = new Location(path.toAbsolutePath().normalize(), null);
+        Bundle bundle = new Bundle(location.path, specification);
+        resolve(specification, location, bundle);
+        bundle.addComponents();
+    }
+
+    /**
+     * Resolves the references in the given node. Nodes in the specification are updated in place (root
+     * is null), nodes from referenced documents are copied, as they are shared.
+     *
+     * @return the resolved node
+     */
+    @SuppressWarnings("unchecked")
+    private Object resolve(Object node, Location location, Bundle bundle) {
+        if (node instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) node;
+            Object ref = map.get(REF);
+            if (ref instanceof String && isResolvable((String) ref, location)) {
+                return inline((String) ref, location, bundle);
+            }
+            if (location.root == null) {
+                map.entrySet().forEach(x -> x.setValue(resolve(x.getValue(), location, bundle)));
+                return map;
+            }
+            Map<Object, Object> ret = new LinkedHashMap<>();
+            map.forEach((k, v) -> ret.put(k, resolve(v, location, bundle)));
+            return ret;
+        }
+        if (node instanceof List) {
+            List<Object> list = (List<Object>) node;
+            if (location.root == null) {
+                list.replaceAll(x -> resolve(x, location, bundle));
+                return list;
+            }
+            List<Object> ret = new ArrayList<>(list.size());
+            list.forEach(x -> ret.add(resolve(x, location, bundle)));
+            return ret;
+        }
+        return node;
+    }
+
+    private static boolean isResolvable(String ref, Location location) {
+        if (ref.startsWith("#")) {
+            // local references are only resolved inside referenced documents
+            return location.root != null;
+        }
+        return !ref.contains("://");
+    }
+
+    private Object inline(String ref, Location location, Bundle bundle) {
+        int hash = ref.indexOf('#');
+        String file = hash < 0 ? ref : ref.substring(0, hash);
+        String pointer = hash < 0 ? "" : ref.substring(hash + 1);
+        Location target;
+        if (file.isEmpty()) {
+            target = location;
+        } else {
+            Path path;
+            try {
+                path = location.path.resolveSibling(decode(file)).normalize();
+            } catch (InvalidPathException ex) {
+                throw new O4A_Exception(": invalid $ref '" + ref + "' in " + location.path);
+            }
+            if (path.equals(bundle.path)) {
+                // reference from a referenced file back to the specification
+                return createReference("#" + pointer);
+            }
+            target = new Location(path, documents.get(path));
+        }
+        String key = target.path + "#" + pointer;
+        String[] component = getComponent(decode(pointer));
+        if (component != null) {
+            String local = bundle.hoisted.get(key);
+            if (local == null) {
+                String name = bundle.reserve(component[0], component[1]);
+                local = "#" + COMPONENTS_POINTER + escape(component[0]) + "/" + escape(name);
+                // registered before resolving the component, which could refer to itself
+                bundle.hoisted.put(key, local);
+                bundle.components.get(component[0]).put(name,
+                        resolve(find(target.root, pointer, ref, location), target, bundle));
+            }
+            return createReference(local);
+        }
+        if (bundle.stack.contains(key)) {
+            throw new O4A_Exception(": circular $ref '" + ref + "' in " + location.path);
+        }
+        bundle.stack.push(key);
+        Object ret = resolve(find(target.root, pointer, ref, location), target, bundle);
+        bundle.stack.pop();
+        return ret;
+    }
+
+    private static Map<Object, Object> createReference(String ref) {
+        Map<Object, Object> ret = new LinkedHashMap<>();
+        ret.put(REF, ref);
+        return ret;
+    }
+
+    /**
+     * @return the section and name of the component, if the pointer is like /components/schemas/User
+     */
+    private static String[] getComponent(String pointer) {
+        if (pointer.startsWith(COMPONENTS_POINTER)) {
+            String[] ret = pointer.substring(COMPONENTS_POINTER.length()).split("/", -1);
+            if (ret.length == 2 && !ret[0].isEmpty() && !ret[1].isEmpty()) {
+                ret[0] = unescape(ret[0]);
+                ret[1] = unescape(ret[1]);
+                return ret;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the node defined by a json pointer, like /components/schemas/User
+     */
+    private static Object find(Object root, String pointer, String ref, Location location) {
+        Object ret = root;
+        if (!decode(pointer).isEmpty()) {
+            String[] tokens = decode(pointer).split("/", -1);
+            if (!tokens[0].isEmpty()) {
+                throw new O4A_Exception(": invalid $ref '" + ref + "' in " + location.path);
+            }
+            for (int i = 1; i < tokens.length; i++) {
+                String token = unescape(tokens[i]);
+                if (ret instanceof Map && ((Map<?, ?>) ret).containsKey(token)) {
+                    ret = ((Map<?, ?>) ret).get(token);
+                } else if (ret instanceof List && isIndex(token, ((List<?>) ret).size())) {
+                    ret = ((List<?>) ret).get(Integer.parseInt(token));
+                } else {
+                    throw new O4A_Exception(": unresolved $ref '" + ref + "' in " + location.path);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static boolean isIndex(String token, int size) {
+        if (token.isEmpty() || token.length() > 9 || !token.chars().allMatch(Character::isDigit)) {
+            return false;
+        }
+        return Integer.parseInt(token) < size;
+    }
+
+    private static String unescape(String token) {
+        return token.replace("~1", "/").replace("~0", "~");
+    }
+
+    private static String escape(String token) {
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static String decode(String uri) {
+        if (uri.indexOf('%') < 0) {
+            return uri;
+        }
+        try {
+            return URLDecoder.decode(uri.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException ex) {
+            return uri;
+        }
+    }
+
+    /**
+     * State of the bundling of one specification: the hoisted components, with the local reference for each
+     * referenced component, and the stack of references being inlined, to detect circular references.
+     * The hoisted components are added to the specification at the end, as it is updated while traversed.
+     */
+    private static final class Bundle {
+        final Path path;
+        final Map<String, Object> specification;
+        final Map<String, String> hoisted = new HashMap<>();
+        final Map<String, Map<String, Object>> components = new LinkedHashMap<>();
+        final Deque<String> stack = new ArrayDeque<>();
+
+        Bundle(Path path, Map<String, Object> specification) {
+            this.path = path;
+            this.specification = specification;
+        }
+
+        /**
+         * Reserves the name of a new component in the given section; if the name is already used, in the
+         * specification or by another hoisted component, a numeric suffix is added
+         *
+         * @return the name of the new component
+         */
+        String reserve(String section, String name) {
+            Map<?, ?> existing = getSection(section, false);
+            Map<String, Object> added = components.computeIfAbsent(section, x -> new LinkedHashMap<>());
+            String ret = name;
+            for (int i = 2; added.containsKey(ret) || (existing != null && existing.containsKey(ret)); i++) {
+                ret = name + "_" + i;
+            }
+            added.put(ret, null);
+            return ret;
+        }
+
+        void addComponents() {
+            components.forEach((section, added) -> getSection(section, true).putAll(added));
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<Object, Object> getSection(String section, boolean create) {
+            Object ret = specification.get(Openapi4AWS.COMPONENTS);
+            if (ret == null && create) {
+                ret = new LinkedHashMap<>();
+                specification.put(Openapi4AWS.COMPONENTS, ret);
+            }
+            if (ret != null) {
+                if (!(ret instanceof Map)) {
+                    throw new O4A_Exception(": unexpected openapi type on " + Openapi4AWS.COMPONENTS);
+                }
+                Map<Object, Object> components = (Map<Object, Object>) ret;
+                ret = components.get(section);
+                if (ret == null && create) {
+                    ret = new LinkedHashMap<>();
+                    components.put(section, ret);
+                }
+                if (ret != null && !(ret instanceof Map)) {
+                    throw new O4A_Exception(": unexpected openapi type on " + Openapi4AWS.COMPONENTS + ":"
+                            + section);
+                }
+            }
+            return (Map<Object, Object>) ret;
+        }
+    }
+
+    /**
+     * Document where a node is found: its path, and its root content (null for the specification itself)
+     */
+    private static final class Location {
+        final Path path;
+        final Object root;
+
+        Location(Path path, Object root) {
+            this.path = path;
+            this.root = root;
+        }
+    }
+}
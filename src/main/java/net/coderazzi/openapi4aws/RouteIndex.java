@@ -0,0 +1,184 @@
+package net.coderazzi.openapi4aws;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Segment trie to find the value associated to a route path. Routes can include, on each segment:
+ * <ul>
+ *     <li>A literal name, matching only that name.</li>
+ *     <li>An openapi template, like {id}, matching any single segment.</li>
+ *     <li>A wildcard '*', matching as well any single segment.</li>
+ *     <li>A wildcard '**', only as last segment, matching any number of segments, including none.</li>
+ * </ul>
+ * When several routes match a path, the most specific one wins: segments are compared from left to right,
+ * with literals preferred over templates, templates over '*', and '*' over '**'.
+ * The lookup follows the literal, template and wildcard branches in that order, backtracking when a branch
+ * does not match the rest of the path. Usually, only one branch exists or matches on each segment, and the cost
+ * depends on the path depth, not on the number of routes; in the worst case, with branches failing only deep
+ * down, each node of the trie is visited once, so it is bounded by the total number of route segments.
+ * Literal segments are stored once, however many routes include them.
+ * A route ending in '**' is a prefix route: {@link #match(String)} returns as well the part of the path matched
+ * by the '**' segment.
+ *
+ * @param <T> type of the values associated to the routes
+ */
+public final class RouteIndex<T> {
+
+    private static final String WILDCARD = "*";
+    private static final String PREFIX_WILDCARD = "**";
+
+    private final Node<T> root = new Node<>();
+    private final Map<String, String> names = new HashMap<>();
+
+    /**
+     * Adds a new route. If the route was already defined, its value is replaced
+     *
+     * @param route the route, like /users/{id}/*
+     * @param value the associated value
+     */
+    public void add(String route, T value) {
+        Node<T> node = root;
+        List<String> segments = split(route);
+        for (int i = 0; i < segments.size(); i++) {
+            String segment = segments.get(i);
+            if (PREFIX_WILDCARD.equals(segment)) {
+                if (i + 1 != segments.size()) {
+                    throw new O4A_Exception("invalid route " + route + ": " + PREFIX_WILDCARD
+                            + " can only be the last segment");
+                }
+                node.prefixValue = value;
+                return;
+            }
+            if (WILDCARD.equals(segment)) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node<>();
+                }
+                node = node.wildcard;
+            } else if (isTemplate(segment)) {
+                if (node.template == null) {
+                    node.template = new Node<>();
+                }
+                node = node.template;
+            } else {
+                if (node.literals == null) {
+                    node.literals = new HashMap<>(4);
+                }
+                node = node.literals.computeIfAbsent(names.computeIfAbsent(segment, x -> x), x -> new Node<>());
+            }
+        }
+        node.value = value;
+    }
+
+    /**
+     * @param path the path to match, like /users/{userId}
+     * @return the value associated to the most specific route matching the path, or null if none matches
+     */
+    public T find(String path) {
+        Match<T> ret = match(path);
+        return ret == null ? null : ret.getValue();
+    }
+
+    /**
+     * @param path the path to match, like /api/users/{userId}
+     * @return the most specific route matching the path, or null if none matches
+     */
+    public Match<T> match(String path) {
+        List<String> segments = split(path);
+        return find(root, segments, 0);
+    }
+
+    /**
+     * Each node is reached through a single branch, so it is visited at most once
+     */
+    private Match<T> find(Node<T> node, List<String> segments, int index) {
+        if (index == segments.size()) {
+            return node.value == null ? prefixMatch(node, segments, index) : new Match<>(node.value, null);
+        }
+        String segment = segments.get(index);
+        Match<T> ret = null;
+        Node<T> literal = node.literals == null ? null : node.literals.get(segment);
+        if (literal != null) {
+            ret = find(literal, segments, index + 1);
+        }
+        if (ret == null && node.template != null) {
+            ret = find(node.template, segments, index + 1);
+        }
+        if (ret == null && node.wildcard != null) {
+            ret = find(node.wildcard, segments, index + 1);
+        }
+        return ret == null ? prefixMatch(node, segments, index) : ret;
+    }
+
+    private Match<T> prefixMatch(Node<T> node, List<String> segments, int index) {
+        if (node.prefixValue == null) {
+            return null;
+        }
+        StringBuilder remainder = new StringBuilder();
+        for (int i = index; i < segments.size(); i++) {
+            remainder.append('/').append(segments.get(i));
+        }
+        return new Match<>(node.prefixValue, remainder.toString());
+    }
+
+    /**
+     * Splits the route in its segments, ignoring the leading '/', if any
+     */
+    private static List<String> split(String route) {
+        List<String> ret = new ArrayList<>();
+        int start = route.startsWith("/") ? 1 : 0;
+        int length = route.length();
+        while (start <= length) {
+            int end = route.indexOf('/', start);
+            if (end == -1) {
+                end = length;
+            }
+            ret.add(route.substring(start, end));
+            start = end + 1;
+        }
+        return ret;
+    }
+
+    private static boolean isTemplate(String segment) {
+        return segment.length() > 1 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+    }
+
+    /**
+     * Route matching a path
+     *
+     * @param <T> type of the values associated to the routes
+     */
+    public static final class Match<T> {
+        private final T value;
+        private final String remainder;
+
+        Match(T value, String remainder) {
+            this.value = value;
+            this.remainder = remainder;
+        }
+
+        /**
+         * @return the value associated to the route
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * @return for routes ending in '**', the part of the path matched by '**', like /users/{id}, or an empty
+         * string if it matched no segments. For other routes, it is null
+         */
+        public String getRemainder() {
+            return remainder;
+        }
+    }
+
+    private static class Node<T> {
+        // created on demand, most nodes are leaves
+        Map<String, Node<T>> literals;
+        Node<T> template, wildcard;
+        T value, prefixValue;
+    }
+}
@@ -0,0 +1,311 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Machine-readable report of a run, written as json: for each file, the time spent on each phase, the input
+ * and output sizes, the bytes allocated while processing it, and the number of operations whose integration
+ * is found by path, by tag, or not found.
+ * The report includes as well the totals of the run.
+ * Each entry is only updated by the thread processing its file at each moment.
+ */
+final class RunReport {
+
+    private static final String UP_TO_DATE = "up-to-date";
+    private static final String PROCESSED = "processed";
+    private static final String FAILED = "failed";
+    private static final String SKIPPED = "skipped";
+
+    private final long start = System.nanoTime();
+    private final int threads;
+    private final int targets;
+    private final List<Entry> entries = new ArrayList<>();
+    private int referencedDocuments = -1;
+
+    /**
+     * @param threads number of threads used on the run
+     * @param targets number of outputs for each file: one per environment
+     */
+    RunReport(int threads, int targets) {
+        this.threads = threads;
+        this.targets = targets;
+    }
+
+    /**
+     * @return a new entry for the given file. Entries are reported in the order they are added
+     */
+    Entry add(Path path) {
+        Entry ret = new Entry(path);
+        entries.add(ret);
+        return ret;
+    }
+
+    /**
+     * Registers the number of referenced files loaded during the run, when external references are resolved
+     */
+    void setReferencedDocuments(int referencedDocuments) {
+        this.referencedDocuments = referencedDocuments;
+    }
+
+    /**
+     * Writes the report
+     *
+     * @param file          the destination file
+     * @param configuration the configuration, providing the duration of the last search of input files
+     */
+    void write(Path file, Configuration configuration) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("elapsed_ms", toMillis(System.nanoTime() - start));
+        report.put("threads", threads);
+        if (configuration.getScanNanos() > 0) {
+            Map<String, Object> scan = new LinkedHashMap<>();
+            scan.put("elapsed_ms", toMillis(configuration.getScanNanos()));
+            scan.put("files", configuration.getScanFiles());
+            report.put("scan", scan);
+        }
+        Map<String, Long> statuses = new LinkedHashMap<>();
+        Arrays.asList(PROCESSED, UP_TO_DATE, FAILED, SKIPPED).forEach(x -> statuses.put(x, 0L));
+        Map<String, Long> timings = new LinkedHashMap<>();
+        Operations operations = new Operations();
+        long inputBytes = 0;
+        long outputBytes = 0;
+        long expandedBytes = 0;
+        long allocatedBytes = 0;
+        long maxAllocatedBytes = 0;
+        List<Object> files = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            String status = entry.getStatus();
+            statuses.merge(status, 1L, Long::sum);
+            entry.nanos.forEach((phase, nanos) -> timings.merge(phase, nanos, Long::sum));
+            inputBytes += entry.bytes;
+            allocatedBytes += entry.allocatedBytes;
+            maxAllocatedBytes = Math.max(maxAllocatedBytes, entry.allocatedBytes);
+            for (Output output : entry.outputs.values()) {
+                outputBytes += output.bytes;
+                expandedBytes += output.expandedBytes;
+                operations.add(output.operations);
+            }
+            files.add(entry.toMap(status));
+        }
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("files", entries.size());
+        totals.putAll(statuses);
+        totals.put("input_bytes", inputBytes);
+        totals.put("output_bytes", outputBytes);
+        if (expandedBytes > 0) {
+            totals.put("expanded_output_bytes", expandedBytes);
+        }
+        if (allocatedBytes > 0) {
+            totals.put("allocated_bytes", allocatedBytes);
+            totals.put("max_file_allocated_bytes", maxAllocatedBytes);
+        }
+        totals.put("timings_ms", toMillis(timings));
+        totals.put("operations", operations.toMap());
+        if (referencedDocuments >= 0) {
+            totals.put("referenced_documents", referencedDocuments);
+        }
+        report.put("totals", totals);
+        report.put("files", files);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            new JsonWriter(writer).write(report);
+            writer.write('\n');
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError writing report '" + file + "' : " + ioex);
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    private static Map<String, Double> toMillis(Map<String, Long> nanos) {
+        Map<String, Double> ret = new LinkedHashMap<>();
+        nanos.forEach((phase, value) -> ret.put(phase, toMillis(value)));
+        return ret;
+    }
+
+    /**
+     * Information of a single input file
+     */
+    final class Entry {
+        private final Path path;
+        private final Map<String, Long> nanos = new LinkedHashMap<>();
+        // the outputs, by environment name (null if there are no environments)
+        private final Map<String, Output> outputs = new LinkedHashMap<>();
+        private long bytes;
+        private long allocatedBytes;
+        private boolean upToDate;
+
+        private Entry(Path path) {
+            this.path = path;
+        }
+
+        void addTime(String phase, long elapsed) {
+            nanos.merge(phase, elapsed, Long::sum);
+        }
+
+        /**
+         * Adds the bytes allocated on a phase: the upper bound of the memory needed to process the file
+         */
+        void addAllocatedBytes(long allocated) {
+            allocatedBytes += allocated;
+        }
+
+        void setBytes(long bytes) {
+            this.bytes = bytes;
+        }
+
+        void setUpToDate() {
+            this.upToDate = true;
+        }
+
+        /**
+         * @param environment the environment, or null if there are no environments
+         * @return the output information for the given environment
+         */
+        Output getOutput(String environment) {
+            return outputs.computeIfAbsent(environment, x -> new Output());
+        }
+
+        private String getStatus() {
+            if (upToDate) {
+                return UP_TO_DATE;
+            }
+            long completed = outputs.values().stream().filter(x -> x.path != null || !x.shards.isEmpty()).count();
+            if (completed == targets) {
+                return PROCESSED;
+            }
+            return nanos.isEmpty() ? SKIPPED : FAILED;
+        }
+
+        private Map<String, Object> toMap(String status) {
+            Map<String, Object> ret = new LinkedHashMap<>();
+            ret.put("path", path.toString());
+            ret.put("status", status);
+            ret.put("bytes", bytes);
+            ret.put("timings_ms", toMillis(nanos));
+            if (allocatedBytes > 0) {
+                ret.put("allocated_bytes", allocatedBytes);
+            }
+            List<Object> list = new ArrayList<>(outputs.size());
+            outputs.forEach((environment, output) -> list.add(output.toMap(environment)));
+            ret.put("outputs", list);
+            return ret;
+        }
+    }
+
+    /**
+     * Information of an output file
+     */
+    static final class Output {
+        private final Operations operations = new Operations();
+        // the shards written, when the output is sharded
+        private final List<Map<String, Object>> shards = new ArrayList<>();
+        private Path path;
+        private long bytes;
+        private long expandedBytes;
+        private boolean changed;
+
+        Operations getOperations() {
+            return operations;
+        }
+
+        /**
+         * Registers the output file, once written
+         *
+         * @param changed false if the output file already had the expected content
+         */
+        void setWritten(Path path, long bytes, boolean changed) {
+            this.path = path;
+            this.bytes = bytes;
+            this.changed = changed;
+        }
+
+        /**
+         * Registers the size the output would have without sharing structures, with compact yaml
+         */
+        void setExpandedBytes(long expandedBytes) {
+            this.expandedBytes = expandedBytes;
+        }
+
+        /**
+         * Registers a shard of the output, once written. Shards can be written concurrently
+         */
+        void addShard(Path path, long bytes, boolean changed) {
+            Map<String, Object> shard = new LinkedHashMap<>();
+            shard.put("path", path.toString());
+            shard.put("bytes", bytes);
+            shard.put("changed", changed);
+            synchronized (shards) {
+                shards.add(shard);
+                this.bytes += bytes;
+                this.changed |= changed;
+            }
+        }
+
+        private Map<String, Object> toMap(String environment) {
+            Map<String, Object> ret = new LinkedHashMap<>();
+            if (environment != null) {
+                ret.put("environment", environment);
+            }
+            if (!shards.isEmpty()) {
+                ret.put("bytes", bytes);
+                ret.put("changed", changed);
+                // shards are written concurrently, they are reported in a stable order
+                shards.sort(Comparator.comparing(x -> (String) x.get("path")));
+                ret.put("shards", shards);
+            } else if (path != null) {
+                ret.put("path", path.toString());
+                ret.put("bytes", bytes);
+                ret.put("changed", changed);
+            }
+            if (expandedBytes > 0) {
+                ret.put("expanded_bytes", expandedBytes);
+            }
+            ret.put("operations", operations.toMap());
+            return ret;
+        }
+    }
+
+    /**
+     * Counters of the augmented operations, by the way their integration is found
+     */
+    static final class Operations {
+        private long total;
+        private long byPath;
+        private long byTag;
+        private long unmatched;
+
+        void add(ConfigurationSnapshot.Match match) {
+            total++;
+            if (match == ConfigurationSnapshot.Match.PATH) {
+                byPath++;
+            } else if (match == ConfigurationSnapshot.Match.TAG) {
+                byTag++;
+            } else {
+                unmatched++;
+            }
+        }
+
+        private void add(Operations other) {
+            total += other.total;
+            byPath += other.byPath;
+            byTag += other.byTag;
+            unmatched += other.unmatched;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> ret = new LinkedHashMap<>();
+            ret.put("total", total);
+            ret.put("path_matches", byPath);
+            ret.put("tag_matches", byTag);
+            ret.put("unmatched", unmatched);
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package net.coderazzi.openapi4aws;
+
+import java.util.Locale;
+
+/**
+ * Criteria to partition the paths of a specification into shards
+ */
+public enum ShardStrategy {
+    /**
+     * By the first tag of the first operation on each path; operations without tags go to the shard 'default'
+     */
+    TAG,
+    /**
+     * By the first segment of each path, like 'users' for /users/{id}
+     */
+    PATH;
+
+    /**
+     * @return the strategy with the given name, case insensitive
+     */
+    public static ShardStrategy parse(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,122 @@
+package net.coderazzi.openapi4aws;
+
+import java.util.*;
+
+/**
+ * Augments a parsed specification, as a tree of maps and lists, with the security schemes and the AWS
+ * extensions of a configuration snapshot.
+ */
+final class SpecificationAugmenter {
+
+    private SpecificationAugmenter() {
+    }
+
+    /**
+     * Augments the specification, updating the given operation counters, if not null
+     */
+    static void augment(Map<String, Object> specification, ConfigurationSnapshot snapshot,
+                        RunReport.Operations operations) {
+        Map<String, Object> schemas = snapshot.getSecuritySchemas();
+        if (!schemas.isEmpty()) {
+            getMap(getMap(specification, Openapi4AWS.COMPONENTS), Openapi4AWS.SECURITY_SCHEMES).putAll(schemas);
+        }
+
+        getMap(specification, Openapi4AWS.PATHS).forEach((path, pathSpec) ->
+                castToMap(pathSpec, path, null).forEach((method, v) -> {
+                    Map<String, Object> methodSpec = castToMap(v, path, method);
+                    List<String> tags = castToList(methodSpec.get(Openapi4AWS.TAGS), path, method);
+                    methodSpec.putAll(snapshot.getExtensions(path, method, tags));
+                    if (operations != null) {
+                        operations.add(snapshot.getMatch(path, tags));
+                    }
+                }));
+    }
+
+    /**
+     * Shallow copy-on-write overlay of a specification: only the maps modified by augment (root, components,
+     * security schemes, paths, path items and operations) are copied, anything else is shared with the source
+     */
+    static Map<String, Object> overlay(Map<String, Object> specification) {
+        Map<String, Object> ret = new LinkedHashMap<>(specification);
+        Object components = ret.get(Openapi4AWS.COMPONENTS);
+        if (components instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>((Map<?, ?>) components);
+            copy.computeIfPresent(Openapi4AWS.SECURITY_SCHEMES,
+                    (k, v) -> v instanceof Map ? new LinkedHashMap<>((Map<?, ?>) v) : v);
+            ret.put(Openapi4AWS.COMPONENTS, copy);
+        }
+        Object paths = ret.get(Openapi4AWS.PATHS);
+        if (paths instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+            ((Map<?, ?>) paths).forEach((path, item) -> {
+                if (item instanceof Map) {
+                    Map<Object, Object> itemCopy = new LinkedHashMap<>();
+                    ((Map<?, ?>) item).forEach((method, operation) -> itemCopy.put(method,
+                            operation instanceof Map ? new LinkedHashMap<>((Map<?, ?>) operation) : operation));
+                    copy.put(path, itemCopy);
+                } else {
+                    copy.put(path, item);
+                }
+            });
+            ret.put(Openapi4AWS.PATHS, copy);
+        }
+        return ret;
+    }
+
+    /**
+     * Casts the given object to a map with string keys. For null values, it returns a new empty map.
+     * The location of the object is defined by the path and method, which can be null, and is only
+     * computed on errors.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castToMap(Object obj, String path, String method) {
+        if (obj != null) {
+            if (!(obj instanceof Map)) {
+                throw O4A_Exception.invalidType(getLocation(path, method));
+            }
+            Map<?, ?> ret = (Map<?, ?>) obj;
+            checkOnlyStrings(ret.keySet(), path, method);
+            return (Map<String, Object>) ret;
+        }
+        return new LinkedHashMap<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> castToList(Object obj, String path, String method) {
+        if (obj != null) {
+            if (!(obj instanceof List)) {
+                throw O4A_Exception.invalidType(getLocation(path, method));
+            }
+            List<?> ret = (List<?>) obj;
+            checkOnlyStrings(ret, path, method);
+            return (List<String>) ret;
+        }
+        return Collections.emptyList();
+    }
+
+    private static void checkOnlyStrings(Collection<?> x, String path, String method) {
+        for (Object k : x) {
+            if (!(k instanceof String)) {
+                throw new O4A_Exception("unexpected openapi content on " + getLocation(path, method) + ":" + k);
+            }
+        }
+    }
+
+    private static String getLocation(String path, String method) {
+        if (path == null) {
+            return Openapi4AWS.PATHS;
+        }
+        String ret = Openapi4AWS.PATHS + ":" + path;
+        return method == null ? ret : ret + ":" + method;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getMap(Map<String, Object> specification, String path) {
+        Object ret = specification.computeIfAbsent(path, x -> new LinkedHashMap<>());
+        if (!(ret instanceof Map)) {
+            throw O4A_Exception.invalidType(path);
+        }
+        checkOnlyStrings(((Map<?, ?>) ret).keySet(), path, null);
+        return (Map<String, Object>) ret;
+    }
+}
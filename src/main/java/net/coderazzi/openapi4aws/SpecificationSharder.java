@@ -0,0 +1,355 @@
+package net.coderazzi.openapi4aws;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Splits a specification into several ones, partitioning its paths by tag or by path prefix. Each partition
+ * is split again if it exceeds the maximum number of operations or the maximum size, estimated as compact json.
+ * Path items are never split, so a single path exceeding the limits produces its own shard.
+ * Each shard includes only the components reachable through $refs from its paths, the security schemes used
+ * by its operations, and the tags used on them; any other content is shared by all the shards.
+ */
+final class SpecificationSharder {
+
+    private static final String DEFAULT_SHARD = "default";
+    private static final String ROOT_SHARD = "root";
+    private static final String REF = "$ref";
+    private static final String COMPONENTS_REF = "#/" + Openapi4AWS.COMPONENTS + "/";
+
+    private final ShardStrategy strategy;
+    private final int maxOperations;
+    private final long maxBytes;
+
+    /**
+     * @param strategy      how to partition the paths
+     * @param maxOperations maximum number of operations on each shard, or 0 if there is no limit
+     * @param maxBytes      maximum size of each shard, or 0 if there is no limit
+     */
+    SpecificationSharder(ShardStrategy strategy, int maxOperations, long maxBytes) {
+        this.strategy = strategy;
+        this.maxOperations = maxOperations;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the path of the given shard: the output path, with the shard name appended to its base name
+     */
+    static Path getShardPath(Path outputPath, String shard) {
+        String name = outputPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return outputPath.resolveSibling(dot > 0 ? name.substring(0, dot) + "-" + shard + name.substring(dot)
+                : name + "-" + shard);
+    }
+
+    /**
+     * @return the shards, by name, in the order their paths appear in the specification. The shards share
+     * content with the given specification
+     */
+    Map<String, Map<String, Object>> shard(Map<String, Object> specification) {
+        Components components = new Components(specification.get(Openapi4AWS.COMPONENTS));
+        Map<String, List<Item>> groups = new LinkedHashMap<>();
+        Object paths = specification.get(Openapi4AWS.PATHS);
+        if (paths instanceof Map) {
+            ((Map<?, ?>) paths).forEach((path, item) -> {
+                Item each = new Item(String.valueOf(path), item);
+                groups.computeIfAbsent(each.group, x -> new ArrayList<>()).add(each);
+            });
+        }
+        // any content besides paths and components is included in every shard
+        Shard base = new Shard(components);
+        specification.forEach((key, value) -> {
+            if (!Openapi4AWS.PATHS.equals(key) && !Openapi4AWS.COMPONENTS.equals(key)) {
+                base.add(new Item(key, value));
+            }
+        });
+        Map<String, Map<String, Object>> ret = new LinkedHashMap<>();
+        groups.forEach((group, items) -> {
+            List<Shard> shards = new ArrayList<>();
+            Shard shard = null;
+            for (Item item : items) {
+                if (shard == null || !shard.fits(item)) {
+                    shard = new Shard(base);
+                    shards.add(shard);
+                }
+                shard.add(item);
+            }
+            for (int i = 0; i < shards.size(); i++) {
+                String name = shards.size() == 1 ? group : group + "-" + (i + 1);
+                ret.put(name, shards.get(i).create(specification));
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * A path item (or any other top level content), with the information needed to place it
+     */
+    private final class Item {
+        final String key;
+        final Object value;
+        final String group;
+        final Set<String> refs = new HashSet<>();
+        final Set<String> securitySchemes = new HashSet<>();
+        final Set<String> tags = new HashSet<>();
+        final long bytes;
+        int operations;
+
+        Item(String key, Object value) {
+            this.key = key;
+            this.value = value;
+            collectRefs(value, refs);
+            String firstTag = null;
+            if (value instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    if (Openapi4AWS.METHODS.contains(entry.getKey()) && entry.getValue() instanceof Map) {
+                        Map<?, ?> operation = (Map<?, ?>) entry.getValue();
+                        operations++;
+                        Object operationTags = operation.get(Openapi4AWS.TAGS);
+                        if (operationTags instanceof List) {
+                            ((List<?>) operationTags).forEach(x -> tags.add(String.valueOf(x)));
+                            if (firstTag == null && !((List<?>) operationTags).isEmpty()) {
+                                firstTag = String.valueOf(((List<?>) operationTags).get(0));
+                            }
+                        }
+                        collectSecuritySchemes(operation.get(Openapi4AWS.SECURITY), securitySchemes);
+                    }
+                }
+            }
+            if (Openapi4AWS.SECURITY.equals(key)) {
+                // global security requirements
+                collectSecuritySchemes(value, securitySchemes);
+            }
+            this.group = getName(strategy == ShardStrategy.TAG ? firstTag : getPrefix(key));
+            this.bytes = maxBytes > 0 ? estimateSize(key, value) : 0;
+        }
+    }
+
+    /**
+     * The items included on a shard, plus their reachable components
+     */
+    private final class Shard {
+        final Components components;
+        final List<Item> items = new ArrayList<>();
+        final Set<String> refs = new HashSet<>();
+        final Set<String> securitySchemes = new HashSet<>();
+        final Set<String> tags = new HashSet<>();
+        long bytes;
+        int operations;
+
+        Shard(Components components) {
+            this.components = components;
+        }
+
+        Shard(Shard base) {
+            this.components = base.components;
+            this.refs.addAll(base.refs);
+            this.securitySchemes.addAll(base.securitySchemes);
+            this.bytes = base.bytes;
+        }
+
+        /**
+         * @return true if the item can be added without exceeding the limits. Empty shards accept any item
+         */
+        boolean fits(Item item) {
+            if (items.isEmpty()) {
+                return true;
+            }
+            if (maxOperations > 0 && operations + item.operations > maxOperations) {
+                return false;
+            }
+            return maxBytes <= 0 || bytes + item.bytes + components.sizeOf(item.refs, refs) <= maxBytes;
+        }
+
+        void add(Item item) {
+            if (maxBytes > 0) {
+                bytes += item.bytes + components.sizeOf(item.refs, refs);
+            }
+            items.add(item);
+            components.reach(item.refs, refs);
+            securitySchemes.addAll(item.securitySchemes);
+            tags.addAll(item.tags);
+            operations += item.operations;
+        }
+
+        Map<String, Object> create(Map<String, Object> specification) {
+            Map<String, Object> paths = new LinkedHashMap<>();
+            items.forEach(x -> paths.put(x.key, x.value));
+            Map<String, Object> ret = new LinkedHashMap<>();
+            specification.forEach((key, value) -> {
+                if (Openapi4AWS.PATHS.equals(key)) {
+                    ret.put(key, paths);
+                } else if (Openapi4AWS.COMPONENTS.equals(key)) {
+                    Map<String, Object> filtered = components.filter(refs, securitySchemes);
+                    if (!filtered.isEmpty()) {
+                        ret.put(key, filtered);
+                    }
+                } else if (Openapi4AWS.TAGS.equals(key) && value instanceof List) {
+                    List<Object> used = new ArrayList<>();
+                    for (Object tag : (List<?>) value) {
+                        if (!(tag instanceof Map) || tags.contains(String.valueOf(((Map<?, ?>) tag).get("name")))) {
+                            used.add(tag);
+                        }
+                    }
+                    ret.put(key, used);
+                } else {
+                    ret.put(key, value);
+                }
+            });
+            return ret;
+        }
+    }
+
+    /**
+     * The components of the specification, with the references and the size of each one, computed on demand
+     */
+    private final class Components {
+        final Map<?, ?> components;
+        final Map<String, Set<String>> refs = new HashMap<>();
+        final Map<String, Long> sizes = new HashMap<>();
+
+        Components(Object components) {
+            this.components = components instanceof Map ? (Map<?, ?>) components : Collections.emptyMap();
+        }
+
+        /**
+         * @param key a component key, like schemas/User
+         * @return the component, or null if it does not exist
+         */
+        Object get(String key) {
+            int slash = key.indexOf('/');
+            Object type = components.get(key.substring(0, slash));
+            return type instanceof Map ? ((Map<?, ?>) type).get(key.substring(slash + 1)) : null;
+        }
+
+        /**
+         * Adds to the reached set all the components reachable from the given references
+         */
+        void reach(Set<String> from, Set<String> reached) {
+            Deque<String> pending = new ArrayDeque<>(from);
+            while (!pending.isEmpty()) {
+                String key = pending.pop();
+                if (reached.add(key)) {
+                    pending.addAll(getRefs(key));
+                }
+            }
+        }
+
+        /**
+         * @return the size of the components reachable from the given references, not yet reached
+         */
+        long sizeOf(Set<String> from, Set<String> reached) {
+            Set<String> added = new HashSet<>();
+            Deque<String> pending = new ArrayDeque<>(from);
+            long ret = 0;
+            while (!pending.isEmpty()) {
+                String key = pending.pop();
+                if (!reached.contains(key) && added.add(key)) {
+                    ret += sizes.computeIfAbsent(key, x -> estimateSize(x.substring(x.indexOf('/') + 1), get(x)));
+                    pending.addAll(getRefs(key));
+                }
+            }
+            return ret;
+        }
+
+        Map<String, Object> filter(Set<String> reached, Set<String> securitySchemes) {
+            Map<String, Object> ret = new LinkedHashMap<>();
+            components.forEach((type, entries) -> {
+                String typeName = String.valueOf(type);
+                if (!(entries instanceof Map)) {
+                    ret.put(typeName, entries);
+                    return;
+                }
+                Map<Object, Object> used = new LinkedHashMap<>();
+                ((Map<?, ?>) entries).forEach((name, value) -> {
+                    boolean isUsed = Openapi4AWS.SECURITY_SCHEMES.equals(typeName)
+                            ? securitySchemes.contains(String.valueOf(name))
+                            : reached.contains(typeName + "/" + name);
+                    if (isUsed) {
+                        used.put(name, value);
+                    }
+                });
+                if (!used.isEmpty()) {
+                    ret.put(typeName, used);
+                }
+            });
+            return ret;
+        }
+
+        private Set<String> getRefs(String key) {
+            return refs.computeIfAbsent(key, x -> {
+                Set<String> ret = new HashSet<>();
+                collectRefs(get(x), ret);
+                return ret;
+            });
+        }
+    }
+
+    /**
+     * Collects the keys (like schemas/User) of the components referenced in the given node
+     */
+    private static void collectRefs(Object node, Set<String> refs) {
+        if (node instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) node;
+            Object ref = map.get(REF);
+            if (ref instanceof String && ((String) ref).startsWith(COMPONENTS_REF)) {
+                String[] tokens = ((String) ref).substring(COMPONENTS_REF.length()).split("/", 3);
+                if (tokens.length > 1) {
+                    refs.add(tokens[0] + "/" + tokens[1].replace("~1", "/").replace("~0", "~"));
+                }
+            }
+            map.values().forEach(x -> collectRefs(x, refs));
+        } else if (node instanceof List) {
+            ((List<?>) node).forEach(x -> collectRefs(x, refs));
+        }
+    }
+
+    private static void collectSecuritySchemes(Object security, Set<String> schemes) {
+        if (security instanceof List) {
+            for (Object requirement : (List<?>) security) {
+                if (requirement instanceof Map) {
+                    ((Map<?, ?>) requirement).keySet().forEach(x -> schemes.add(String.valueOf(x)));
+                }
+            }
+        }
+    }
+
+    private static String getPrefix(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.indexOf('/', start);
+        String ret = end == -1 ? path.substring(start) : path.substring(start, end);
+        return ret.isEmpty() ? ROOT_SHARD : ret;
+    }
+
+    /**
+     * @return the name as valid part of a file name
+     */
+    private static String getName(String name) {
+        if (name == null || name.isEmpty()) {
+            return DEFAULT_SHARD;
+        }
+        StringBuilder ret = new StringBuilder(name.length());
+        for (char c : name.toCharArray()) {
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.') {
+                ret.append(c);
+            } else if (c != '{' && c != '}') {
+                ret.append('_');
+            }
+        }
+        return ret.length() == 0 ? DEFAULT_SHARD : ret.toString();
+    }
+
+    /**
+     * @return the estimated size of a key and its value, as compact json
+     */
+    private static long estimateSize(String key, Object value) {
+        CountingWriter counter = new CountingWriter();
+        try {
+            new JsonWriter(counter).write(Collections.singletonMap(key, value));
+        } catch (IOException ioex) {
+            // not expected, nothing is written
+        }
+        return counter.getCount();
+    }
+}
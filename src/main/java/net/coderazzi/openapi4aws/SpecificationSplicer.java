@@ -0,0 +1,323 @@
+package net.coderazzi.openapi4aws;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.Mark;
+import org.yaml.snakeyaml.nodes.*;
+
+import java.util.*;
+
+/**
+ * Augments yaml specifications editing their original text: the composed nodes provide the position of each
+ * operation and of the security schemes, and only the AWS extensions and security schemes are replaced or
+ * inserted there, rendered in block style. Anything else, including comments and formatting, is kept
+ * unchanged, and the cost depends on the number of operations, not on the size of the document.
+ * The mappings to modify must be in block style, and the entries to replace cannot use anchors or aliases.
+ */
+final class SpecificationSplicer {
+
+    private final ConfigurationSnapshot snapshot;
+    private final Yaml yaml;
+    private final RunReport.Operations operations;
+    private final List<Edit> edits = new ArrayList<>();
+    private final Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    private String content;
+    private String lineBreak;
+    private int[] offsets;
+
+    /**
+     * @param snapshot   the configuration providing the AWS extensions and the security schemas
+     * @param yaml       the yaml instance used to render the inserted content, in block style
+     * @param operations counters to update with each augmented operation, can be null
+     */
+    SpecificationSplicer(ConfigurationSnapshot snapshot, Yaml yaml, RunReport.Operations operations) {
+        this.snapshot = snapshot;
+        this.yaml = yaml;
+        this.operations = operations;
+    }
+
+    /**
+     * @param content   the original content
+     * @param documents the documents composed from the content
+     * @return the augmented content
+     */
+    String splice(String content, Iterable<Node> documents) {
+        this.content = content;
+        this.lineBreak = content.contains("\r\n") ? "\r\n" : "\n";
+        this.offsets = getOffsets(content);
+        edits.clear();
+        visited.clear();
+        for (Node document : documents) {
+            if (!(document instanceof MappingNode)) {
+                throw new O4A_Exception(": invalid openapi content");
+            }
+            spliceRoot((MappingNode) document);
+        }
+        return apply();
+    }
+
+    private void spliceRoot(MappingNode root) {
+        Map<String, Object> missing = new LinkedHashMap<>();
+        Map<String, Object> schemas = snapshot.getSecuritySchemas();
+        if (!schemas.isEmpty()) {
+            NodeTuple components = find(root, Openapi4AWS.COMPONENTS);
+            if (components == null) {
+                missing.put(Openapi4AWS.COMPONENTS, Collections.singletonMap(Openapi4AWS.SECURITY_SCHEMES, schemas));
+            } else if (isNull(components.getValueNode())) {
+                replace(components, Collections.singletonMap(Openapi4AWS.SECURITY_SCHEMES, schemas),
+                        Openapi4AWS.COMPONENTS);
+            } else {
+                spliceComponents(getMapping(components.getValueNode(), Openapi4AWS.COMPONENTS), schemas);
+            }
+        }
+        NodeTuple paths = find(root, Openapi4AWS.PATHS);
+        if (paths == null) {
+            missing.put(Openapi4AWS.PATHS, new LinkedHashMap<>());
+        } else if (isNull(paths.getValueNode())) {
+            replace(paths, new LinkedHashMap<>(), Openapi4AWS.PATHS);
+        } else {
+            splicePaths(getMapping(paths.getValueNode(), Openapi4AWS.PATHS));
+        }
+        insert(root, missing, "root");
+    }
+
+    private void spliceComponents(MappingNode components, Map<String, Object> schemas) {
+        NodeTuple securitySchemes = find(components, Openapi4AWS.SECURITY_SCHEMES);
+        if (securitySchemes == null) {
+            insert(components, Collections.singletonMap(Openapi4AWS.SECURITY_SCHEMES, schemas),
+                    Openapi4AWS.COMPONENTS);
+        } else if (isNull(securitySchemes.getValueNode())) {
+            replace(securitySchemes, schemas, Openapi4AWS.SECURITY_SCHEMES);
+        } else {
+            MappingNode existing = getMapping(securitySchemes.getValueNode(), Openapi4AWS.SECURITY_SCHEMES);
+            spliceEntries(existing, schemas, Openapi4AWS.SECURITY_SCHEMES);
+        }
+    }
+
+    private void splicePaths(MappingNode paths) {
+        for (NodeTuple pathTuple : paths.getValue()) {
+            String path = getString(pathTuple.getKeyNode(), Openapi4AWS.PATHS);
+            Node item = pathTuple.getValueNode();
+            if (isNull(item)) {
+                continue;
+            }
+            String location = Openapi4AWS.PATHS + ":" + path;
+            for (NodeTuple operationTuple : getMapping(item, location).getValue()) {
+                String method = getString(operationTuple.getKeyNode(), location);
+                String subLocation = location + ":" + method;
+                Node operation = operationTuple.getValueNode();
+                List<String> tags = isNull(operation) ? Collections.emptyList()
+                        : getTags(getMapping(operation, subLocation), subLocation);
+                if (operations != null) {
+                    operations.add(snapshot.getMatch(path, tags));
+                }
+                if (!isNull(operation)) {
+                    if (!visited.add(operation)) {
+                        throw new O4A_Exception(": splice mode does not support aliases on " + subLocation);
+                    }
+                    spliceEntries((MappingNode) operation, snapshot.getExtensions(path, method, tags),
+                            subLocation);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the existing entries in the mapping with the given ones, inserting any other at the end
+     */
+    private void spliceEntries(MappingNode mapping, Map<String, Object> entries, String location) {
+        Map<String, Object> missing = new LinkedHashMap<>(entries);
+        for (NodeTuple tuple : mapping.getValue()) {
+            String name = getScalar(tuple.getKeyNode());
+            if (missing.containsKey(name)) {
+                replace(tuple, missing.remove(name), location + ":" + name);
+            }
+        }
+        insert(mapping, missing, location);
+    }
+
+    private List<String> getTags(MappingNode operation, String location) {
+        NodeTuple tuple = find(operation, Openapi4AWS.TAGS);
+        if (tuple == null || isNull(tuple.getValueNode())) {
+            return Collections.emptyList();
+        }
+        if (!(tuple.getValueNode() instanceof SequenceNode)) {
+            throw O4A_Exception.invalidType(location);
+        }
+        List<String> ret = new ArrayList<>();
+        for (Node tag : ((SequenceNode) tuple.getValueNode()).getValue()) {
+            ret.add(getString(tag, location));
+        }
+        return ret;
+    }
+
+    /**
+     * Replaces an entry, from the start of its key to the end of its value
+     */
+    private void replace(NodeTuple tuple, Object value, String location) {
+        Node key = tuple.getKeyNode();
+        Node node = tuple.getValueNode();
+        int start = offset(key.getStartMark());
+        int keyEnd = getEnd(key);
+        int end = getEnd(node);
+        // an alias is a node appearing earlier, and an anchor could be referenced later
+        if (end <= keyEnd || node.getAnchor() != null || !visited.add(node)) {
+            throw new O4A_Exception(": splice mode does not support anchors or aliases on " + location);
+        }
+        String name = getScalar(key);
+        edits.add(new Edit(start, end, key.getStartMark().getColumn(),
+                render(Collections.singletonMap(name, value), key.getStartMark().getColumn(), false)));
+    }
+
+    /**
+     * Inserts the given entries at the end of the mapping, after the line of its last entry
+     */
+    private void insert(MappingNode mapping, Map<String, Object> entries, String location) {
+        if (!entries.isEmpty()) {
+            if (mapping.getFlowStyle() == DumperOptions.FlowStyle.FLOW || mapping.getValue().isEmpty()) {
+                throw new O4A_Exception(": splice mode does not support flow mappings on " + location);
+            }
+            int column = mapping.getValue().get(0).getKeyNode().getStartMark().getColumn();
+            int position = getEnd(mapping);
+            while (position < content.length() && content.charAt(position) != '\n'
+                    && content.charAt(position) != '\r') {
+                position++;
+            }
+            edits.add(new Edit(position, position, column, render(entries, column, true)));
+        }
+    }
+
+    /**
+     * @param column  the indentation of the rendered entries
+     * @param newLine true to start the rendered content on a new line
+     */
+    private String render(Map<String, Object> entries, int column, boolean newLine) {
+        String indentation = lineBreak + String.join("", Collections.nCopies(column, " "));
+        String dumped = yaml.dump(entries);
+        String[] lines = dumped.substring(0, dumped.length() - 1).split("\n", -1);
+        StringBuilder ret = new StringBuilder(dumped.length() + lines.length * indentation.length());
+        for (int i = 0; i < lines.length; i++) {
+            if (newLine || i > 0) {
+                ret.append(indentation);
+            }
+            ret.append(lines[i]);
+        }
+        return ret.toString();
+    }
+
+    /**
+     * @return the offset after the last significant character of the node: the end of block scalars and of
+     * block collections would include the line breaks and comments that follow them
+     */
+    private int getEnd(Node node) {
+        if (node instanceof CollectionNode
+                && ((CollectionNode<?>) node).getFlowStyle() != DumperOptions.FlowStyle.FLOW) {
+            if (node instanceof MappingNode) {
+                List<NodeTuple> tuples = ((MappingNode) node).getValue();
+                if (!tuples.isEmpty()) {
+                    NodeTuple last = tuples.get(tuples.size() - 1);
+                    return Math.max(getEnd(last.getKeyNode()), getEnd(last.getValueNode()));
+                }
+            } else {
+                List<Node> items = ((SequenceNode) node).getValue();
+                if (!items.isEmpty()) {
+                    return getEnd(items.get(items.size() - 1));
+                }
+            }
+        }
+        int start = offset(node.getStartMark());
+        int ret = offset(node.getEndMark());
+        while (ret > start && Character.isWhitespace(content.charAt(ret - 1))) {
+            ret--;
+        }
+        return ret;
+    }
+
+    private int offset(Mark mark) {
+        return offsets == null ? mark.getIndex() : offsets[mark.getIndex()];
+    }
+
+    /**
+     * Marks are given in code points, which only differ from chars with supplementary characters
+     *
+     * @return the char offset of each code point, or null if they are the same
+     */
+    private static int[] getOffsets(String content) {
+        int length = content.length();
+        int codePoints = content.codePointCount(0, length);
+        if (codePoints == length) {
+            return null;
+        }
+        int[] ret = new int[codePoints + 1];
+        for (int i = 0, offset = 0; i < codePoints; i++) {
+            offset += Character.charCount(content.codePointAt(offset));
+            ret[i + 1] = offset;
+        }
+        return ret;
+    }
+
+    private String apply() {
+        // on the same position, the most indented insertion is the innermost one, and goes first
+        edits.sort(Comparator.comparingInt((Edit x) -> x.start).thenComparing(x -> -x.column));
+        int size = content.length();
+        for (Edit edit : edits) {
+            size += edit.text.length() - (edit.end - edit.start);
+        }
+        StringBuilder ret = new StringBuilder(size);
+        int position = 0;
+        for (Edit edit : edits) {
+            if (edit.start < position) {
+                throw new O4A_Exception(": splice mode cannot apply overlapping changes");
+            }
+            ret.append(content, position, edit.start).append(edit.text);
+            position = edit.end;
+        }
+        return ret.append(content, position, content.length()).toString();
+    }
+
+    private static NodeTuple find(MappingNode mapping, String key) {
+        for (NodeTuple tuple : mapping.getValue()) {
+            if (key.equals(getScalar(tuple.getKeyNode()))) {
+                return tuple;
+            }
+        }
+        return null;
+    }
+
+    private static MappingNode getMapping(Node node, String location) {
+        if (!(node instanceof MappingNode)) {
+            throw O4A_Exception.invalidType(location);
+        }
+        return (MappingNode) node;
+    }
+
+    private static boolean isNull(Node node) {
+        return node instanceof ScalarNode && Tag.NULL.equals(node.getTag());
+    }
+
+    private static String getScalar(Node node) {
+        return node instanceof ScalarNode && Tag.STR.equals(node.getTag()) ? ((ScalarNode) node).getValue() : null;
+    }
+
+    private static String getString(Node node, String location) {
+        String ret = getScalar(node);
+        if (ret == null) {
+            throw new O4A_Exception("unexpected openapi content on " + location);
+        }
+        return ret;
+    }
+
+    private static final class Edit {
+        final int start;
+        final int end;
+        final int column;
+        final String text;
+
+        Edit(int start, int end, int column, String text) {
+            this.start = start;
+            this.end = end;
+            this.column = column;
+            this.text = text;
+        }
+    }
+}
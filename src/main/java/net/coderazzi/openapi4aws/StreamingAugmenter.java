@@ -0,0 +1,415 @@
+package net.coderazzi.openapi4aws;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Augments an openapi specification using the yaml events, without building the full yaml tree.
+ * All events are passed through to the output, except those associated to the AWS extensions and security
+ * schemes, which are replaced or injected at the proper places.
+ * Only the tags of each operation are materialized; if an operation defines any AWS extension before its
+ * tags, the events of that operation are buffered until the tags are found.
+ * Aliases are passed through, but not resolved: an alias in place of the paths, a path item, an operation, its
+ * tags or the security schemes raises an exception, as the aliased content would need to be augmented.
+ */
+class StreamingAugmenter {
+
+    private static final Set<String> EXTENSIONS =
+            new HashSet<>(Arrays.asList(Openapi4AWS.INTEGRATION, Openapi4AWS.SECURITY));
+    private static final Map<String, String> DEFAULT_TAGS = new HashMap<>();
+    private static final Set<String> NULL_VALUES = new HashSet<>(Arrays.asList("", "~", "null", "Null", "NULL"));
+
+    static {
+        DEFAULT_TAGS.put("!", "!");
+        DEFAULT_TAGS.put("!!", "tag:yaml.org,2002:");
+    }
+
+    private final ConfigurationSnapshot snapshot;
+    private final Yaml yaml;
+    private final Map<String, Object> securitySchemas;
+    private final DumperOptions options;
+    private Iterator<Event> events;
+    private Emitter emitter;
+    private RunReport.Operations operations;
+
+    /**
+     * @param snapshot the configuration providing the security schemas and the AWS extensions for each operation
+     * @param yaml     the yaml instance to use, which defines as well the output format
+     * @param options  the options to emit the resulting yaml
+     */
+    StreamingAugmenter(ConfigurationSnapshot snapshot, Yaml yaml, DumperOptions options) {
+        this.snapshot = snapshot;
+        this.yaml = yaml;
+        this.securitySchemas = snapshot.getSecuritySchemas();
+        this.options = options;
+    }
+
+    /**
+     * Defines the counters to update with each augmented operation, if any
+     */
+    StreamingAugmenter setOperations(RunReport.Operations operations) {
+        this.operations = operations;
+        return this;
+    }
+
+    /**
+     * Augments each of the yaml documents in the reader, writing them into the writer.
+     */
+    void augment(Reader reader, Writer writer) throws IOException {
+        events = yaml.parse(reader).iterator();
+        emitter = new Emitter(writer, options);
+        try {
+            while (events.hasNext()) {
+                Event event = events.next();
+                if (event instanceof DocumentStartEvent) {
+                    emit(withoutDefaultTags((DocumentStartEvent) event));
+                    Event root = next();
+                    if (!(root instanceof MappingStartEvent)) {
+                        throw new O4A_Exception(": invalid openapi content");
+                    }
+                    emit(root);
+                    handleRoot();
+                } else {
+                    emit(event);
+                }
+            }
+        } catch (YAMLException yex) {
+            throw new O4A_Exception(": invalid yaml content: " + yex.getMessage());
+        }
+        writer.flush();
+    }
+
+    private void handleRoot() throws IOException {
+        boolean components = securitySchemas.isEmpty(), paths = false;
+        while (true) {
+            Event key = next();
+            if (key instanceof MappingEndEvent) {
+                if (!components) {
+                    Map<String, Object> value = new LinkedHashMap<>();
+                    value.put(Openapi4AWS.SECURITY_SCHEMES, securitySchemas);
+                    emitEntry(Openapi4AWS.COMPONENTS, value);
+                }
+                if (!paths) {
+                    emitEntry(Openapi4AWS.PATHS, new LinkedHashMap<>());
+                }
+                emit(key);
+                return;
+            }
+            emit(key);
+            String name = getScalar(key);
+            if (!components && Openapi4AWS.COMPONENTS.equals(name)) {
+                components = true;
+                if (expectMapping(name, true)) {
+                    handleComponents();
+                }
+            } else if (!paths && Openapi4AWS.PATHS.equals(name)) {
+                paths = true;
+                if (expectMapping(name, true)) {
+                    handlePaths();
+                }
+            } else {
+                passNode();
+            }
+        }
+    }
+
+    private void handleComponents() throws IOException {
+        boolean found = false;
+        while (true) {
+            Event key = next();
+            if (key instanceof MappingEndEvent) {
+                if (!found) {
+                    emitEntry(Openapi4AWS.SECURITY_SCHEMES, securitySchemas);
+                }
+                emit(key);
+                return;
+            }
+            emit(key);
+            String name = getScalar(key);
+            if (!found && Openapi4AWS.SECURITY_SCHEMES.equals(name)) {
+                found = true;
+                if (expectMapping(name, true)) {
+                    handleSecuritySchemes();
+                }
+            } else {
+                passNode();
+            }
+        }
+    }
+
+    private void handleSecuritySchemes() throws IOException {
+        Set<String> pending = new LinkedHashSet<>(securitySchemas.keySet());
+        while (true) {
+            Event key = next();
+            if (key instanceof MappingEndEvent) {
+                for (String name : pending) {
+                    emitEntry(name, securitySchemas.get(name));
+                }
+                emit(key);
+                return;
+            }
+            emit(key);
+            String name = getScalar(key);
+            if (pending.remove(name)) {
+                skipNode();
+                emitValue(securitySchemas.get(name));
+            } else {
+                passNode();
+            }
+        }
+    }
+
+    private void handlePaths() throws IOException {
+        while (true) {
+            Event key = next();
+            if (key instanceof MappingEndEvent) {
+                emit(key);
+                return;
+            }
+            emit(key);
+            String path = getString(key, Openapi4AWS.PATHS);
+            String location = Openapi4AWS.PATHS + ":" + path;
+            if (expectMapping(location, false)) {
+                while (true) {
+                    Event methodKey = next();
+                    emit(methodKey);
+                    if (methodKey instanceof MappingEndEvent) {
+                        break;
+                    }
+                    String method = getString(methodKey, location);
+                    String subLocation = location + ":" + method;
+                    if (expectMapping(subLocation, false)) {
+                        handleOperation(path, method, subLocation);
+                    }
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> getExtensions(String path, String method, List<String> tags) {
+        if (operations != null) {
+            operations.add(snapshot.getMatch(path, tags));
+        }
+        return snapshot.getExtensions(path, method, tags);
+    }
+
+    private void handleOperation(String path, String method, String location) throws IOException {
+        Map<String, Object> extensions = null; // known once the tags are found
+        List<List<Event>> pending = null; // entries found before the tags, if any could be replaced
+        Set<String> replaced = new HashSet<>();
+        while (true) {
+            Event key = next();
+            if (key instanceof MappingEndEvent) {
+                if (extensions == null) {
+                    extensions = getExtensions(path, method, new ArrayList<>());
+                }
+                if (pending != null) {
+                    emitPending(pending, extensions, replaced);
+                }
+                for (Map.Entry<String, Object> each : extensions.entrySet()) {
+                    if (!replaced.contains(each.getKey())) {
+                        emitEntry(each.getKey(), each.getValue());
+                    }
+                }
+                emit(key);
+                return;
+            }
+            String name = getString(key, location);
+            if (extensions == null && Openapi4AWS.TAGS.equals(name)) {
+                List<Event> value = readNode();
+                extensions = getExtensions(path, method, getTags(value, location));
+                if (pending != null) {
+                    emitPending(pending, extensions, replaced);
+                    pending = null;
+                }
+                emit(key);
+                for (Event event : value) {
+                    emit(event);
+                }
+            } else if (pending != null || (extensions == null && EXTENSIONS.contains(name))) {
+                if (pending == null) {
+                    pending = new ArrayList<>();
+                }
+                List<Event> entry = new ArrayList<>();
+                entry.add(key);
+                entry.addAll(readNode());
+                pending.add(entry);
+            } else if (extensions != null && extensions.containsKey(name) && replaced.add(name)) {
+                emit(key);
+                skipNode();
+                emitValue(extensions.get(name));
+            } else {
+                emit(key);
+                passNode();
+            }
+        }
+    }
+
+    /**
+     * Emits the entries buffered before the extensions were known, replacing any extension
+     */
+    private void emitPending(List<List<Event>> pending, Map<String, Object> extensions, Set<String> replaced)
+            throws IOException {
+        for (List<Event> entry : pending) {
+            Event key = entry.get(0);
+            String name = getScalar(key);
+            if (extensions.containsKey(name) && replaced.add(name)) {
+                emit(key);
+                emitValue(extensions.get(name));
+            } else {
+                for (Event event : entry) {
+                    emit(event);
+                }
+            }
+        }
+    }
+
+    private List<String> getTags(List<Event> value, String location) {
+        List<String> ret = new ArrayList<>();
+        Event first = value.get(0);
+        if (first instanceof SequenceStartEvent) {
+            for (Event event : value.subList(1, value.size() - 1)) {
+                ret.add(getString(event, location));
+            }
+        } else if (first instanceof AliasEvent) {
+            throw unsupportedAlias(location);
+        } else if (!isNull(first)) {
+            throw O4A_Exception.invalidType(location);
+        }
+        return ret;
+    }
+
+    /**
+     * Checks that the next node is a mapping, emitting its start event. If the node is null, it is emitted
+     * as an empty mapping if replaceNull is true, or unchanged otherwise, returning then false.
+     * Any other node type raises an exception
+     */
+    private boolean expectMapping(String location, boolean replaceNull) throws IOException {
+        Event event = next();
+        if (event instanceof MappingStartEvent) {
+            emit(event);
+            return true;
+        }
+        if (isNull(event)) {
+            if (replaceNull) {
+                emitValue(new LinkedHashMap<>());
+            } else {
+                emit(event);
+            }
+            return false;
+        }
+        if (event instanceof AliasEvent) {
+            throw unsupportedAlias(location);
+        }
+        throw O4A_Exception.invalidType(location);
+    }
+
+    private static O4A_Exception unsupportedAlias(String location) {
+        return new O4A_Exception("aliases are not supported in streaming mode, found on " + location);
+    }
+
+    private void emitEntry(String key, Object value) throws IOException {
+        emitValue(key);
+        emitValue(value);
+    }
+
+    private void emitValue(Object value) throws IOException {
+        // the serialized events include the stream and document start and end events
+        List<Event> serialized = yaml.serialize(yaml.represent(value));
+        for (Event event : serialized.subList(2, serialized.size() - 2)) {
+            emit(event);
+        }
+    }
+
+    /**
+     * The parser reports the default tag handles on explicit documents, which the emitter would write
+     * as %TAG directives; only the tag handles defined in the source are kept
+     */
+    private static DocumentStartEvent withoutDefaultTags(DocumentStartEvent event) {
+        Map<String, String> tags = event.getTags();
+        if (tags == null || tags.isEmpty()) {
+            return event;
+        }
+        Map<String, String> defined = new LinkedHashMap<>(tags);
+        defined.entrySet().removeIf(x -> x.getValue().equals(DEFAULT_TAGS.get(x.getKey())));
+        return new DocumentStartEvent(event.getStartMark(), event.getEndMark(), event.getExplicit(),
+                event.getVersion(), defined);
+    }
+
+    private void emit(Event event) throws IOException {
+        emitter.emit(event);
+    }
+
+    private Event next() {
+        if (!events.hasNext()) {
+            throw new O4A_Exception(": unexpected end of content");
+        }
+        return events.next();
+    }
+
+    private List<Event> readNode() {
+        List<Event> ret = new ArrayList<>();
+        int depth = 0;
+        do {
+            Event event = next();
+            ret.add(event);
+            depth += getDepthChange(event);
+        } while (depth > 0);
+        return ret;
+    }
+
+    private void passNode() throws IOException {
+        int depth = 0;
+        do {
+            Event event = next();
+            emit(event);
+            depth += getDepthChange(event);
+        } while (depth > 0);
+    }
+
+    private void skipNode() {
+        int depth = 0;
+        do {
+            depth += getDepthChange(next());
+        } while (depth > 0);
+    }
+
+    private static int getDepthChange(Event event) {
+        if (event instanceof CollectionStartEvent) {
+            return 1;
+        }
+        return event instanceof CollectionEndEvent ? -1 : 0;
+    }
+
+    private static boolean isNull(Event event) {
+        if (event instanceof ScalarEvent) {
+            ScalarEvent scalar = (ScalarEvent) event;
+            return scalar.getImplicit().canOmitTagInPlainScalar() && scalar.isPlain()
+                    && NULL_VALUES.contains(scalar.getValue());
+        }
+        return false;
+    }
+
+    private static String getScalar(Event event) {
+        return event instanceof ScalarEvent ? ((ScalarEvent) event).getValue() : null;
+    }
+
+    private static String getString(Event event, String location) {
+        String ret = getScalar(event);
+        if (event instanceof AliasEvent) {
+            throw unsupportedAlias(location);
+        }
+        if (ret == null) {
+            throw new O4A_Exception("unexpected openapi content on " + location);
+        }
+        return ret;
+    }
+}
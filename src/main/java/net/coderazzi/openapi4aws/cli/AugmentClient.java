@@ -0,0 +1,136 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.O4A_Exception;
+import net.coderazzi.openapi4aws.Openapi4AWS;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Thin client forwarding the input files to a running {@link AugmentServer}, and writing locally the
+ * augmented results, as the engine does. The files are only forwarded if the server has the same
+ * configuration and output options, and if no option requiring local processing is defined.
+ */
+class AugmentClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int READ_TIMEOUT_MILLIS = 60000;
+
+    private final CliParser configuration;
+    private final int port;
+
+    AugmentClient(CliParser configuration, int port) {
+        this.configuration = configuration;
+        this.port = port;
+    }
+
+    /**
+     * Forwards all the input files to the server.
+     *
+     * @return false if there is no server listening, or if it cannot process the files as requested, in
+     * which case no file has been processed
+     */
+    boolean forward() {
+        String localOption = configuration.getLocalOption();
+        if (localOption != null) {
+            System.err.println("Option " + localOption + " is not supported by the server, processing locally");
+            return false;
+        }
+        // the engine is only used to find the output paths and the fingerprint, and to write the outputs
+        Openapi4AWS engine = configuration.createEngine();
+        String fingerprint = engine.getFingerprint();
+        Collection<Path> paths = configuration.getPaths();
+        List<String> failures = new ArrayList<>();
+        boolean connected = false;
+        for (Path each : paths) {
+            try {
+                forward(engine, each, fingerprint);
+                connected = true;
+            } catch (Conflict cex) {
+                if (!connected) {
+                    System.err.println("Server on port " + port + ": " + cex.getMessage() + ", processing locally");
+                    return false;
+                }
+                failures.add(each + ": " + cex.getMessage());
+            } catch (ConnectException cex) {
+                if (!connected) {
+                    return false;
+                }
+                failures.add(each + ": cannot connect to server: " + cex.getMessage());
+            } catch (O4A_Exception ex) {
+                connected = true;
+                failures.add(ex.getMessage());
+            } catch (IOException ioex) {
+                failures.add("IOError processing file '" + each + "' : " + ioex);
+            }
+            if (!failures.isEmpty() && !configuration.isKeepGoing()) {
+                break;
+            }
+        }
+        if (failures.size() == 1) {
+            throw new O4A_Exception(failures.get(0));
+        } else if (!failures.isEmpty()) {
+            throw new O4A_Exception(failures.size() + " files failed:\n" + String.join("\n", failures));
+        }
+        configuration.report(engine);
+        return true;
+    }
+
+    private void forward(Openapi4AWS engine, Path path, String fingerprint) throws IOException {
+        URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, AugmentServer.AUGMENT
+                + "?" + AugmentServer.NAME_PARAMETER + "="
+                + URLEncoder.encode(path.toAbsolutePath().toString(), "UTF-8")
+                + "&" + AugmentServer.FORMAT_PARAMETER + "="
+                + configuration.getOutputFormat().name().toLowerCase(Locale.ROOT)
+                + (fingerprint == null ? ""
+                : "&" + AugmentServer.FINGERPRINT_PARAMETER + "=" + URLEncoder.encode(fingerprint, "UTF-8")));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            // the content is sent, the server does not need to access the file
+            try (OutputStream os = connection.getOutputStream()) {
+                Files.copy(path, os);
+            }
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                InputStream error = connection.getErrorStream();
+                String message = error == null ? ""
+                        : new String(AugmentServer.readAll(error), StandardCharsets.UTF_8);
+                if (status == AugmentServer.CONFLICT) {
+                    throw new Conflict(message);
+                }
+                throw new O4A_Exception(message.isEmpty() ? path + ": server error " + status : message);
+            }
+            try (InputStream is = connection.getInputStream()) {
+                engine.writeOutput(path, engine.getOutputPath(path, configuration.getOutputFolder()), is);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * The server has a different configuration or options
+     */
+    private static final class Conflict extends IOException {
+        Conflict(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package net.coderazzi.openapi4aws.cli;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.coderazzi.openapi4aws.O4A_Exception;
+import net.coderazzi.openapi4aws.Openapi4AWS;
+import net.coderazzi.openapi4aws.OutputFormat;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local http server, loading the configuration once and augmenting the specifications POSTed to /augment,
+ * concurrently. The specification can be provided as the request body, or as a path on the query, like
+ * /augment?path=/tmp/spec.yaml, only accepted if the file is under one of the configured roots (following any
+ * symbolic links). The output format can be specified with the query parameter format.
+ * With the query parameter fingerprint, the request is rejected (409) if the fingerprint of the server's
+ * configuration and options differs.
+ * The endpoint /metrics reports the number of requests and their latency.
+ */
+class AugmentServer {
+
+    static final String AUGMENT = "/augment";
+    static final String METRICS = "/metrics";
+    static final String PATH_PARAMETER = "path";
+    static final String NAME_PARAMETER = "name";
+    static final String FORMAT_PARAMETER = "format";
+    static final String FINGERPRINT_PARAMETER = "fingerprint";
+    static final int CONFLICT = 409;
+    static final int FORBIDDEN = 403;
+    private static final String JSON_CONTENT = "application/json";
+    private static final String YAML_CONTENT = "application/yaml";
+    private static final String TEXT_CONTENT = "text/plain";
+
+    private final int port;
+    private final int threads;
+    private final Map<OutputFormat, Openapi4AWS> engines = new EnumMap<>(OutputFormat.class);
+    // computed upfront, the configuration files could be modified afterwards
+    private final Map<OutputFormat, String> fingerprints = new EnumMap<>(OutputFormat.class);
+    private final OutputFormat defaultFormat;
+    private final List<Path> roots = new ArrayList<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    AugmentServer(CliParser configuration, int port) {
+        this.port = port;
+        this.threads = configuration.getThreads() > 1 ? configuration.getThreads()
+                : Runtime.getRuntime().availableProcessors();
+        this.defaultFormat = configuration.getOutputFormat();
+        // engines are created upfront, the map is not modified afterwards
+        for (OutputFormat format : OutputFormat.values()) {
+            Openapi4AWS engine = configuration.createEngine();
+            engine.setOutputFormat(format);
+            engines.put(format, engine);
+            fingerprints.put(format, engine.getFingerprint());
+        }
+        for (Path root : configuration.getServerRoots()) {
+            try {
+                roots.add(root.toRealPath());
+            } catch (IOException ioex) {
+                throw new O4A_Exception("Cannot access server root '" + root + "' : " + ioex);
+            }
+        }
+    }
+
+    /**
+     * Starts the server, listening only on the loopback interface. It keeps running on its own threads
+     *
+     * @return the port used, which is only different to the given one if it was 0 (any free port)
+     */
+    int start() {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException ioex) {
+            throw new O4A_Exception("Cannot start server on port " + port + ": " + ioex);
+        }
+        server.createContext(AUGMENT, this::augment);
+        server.createContext(METRICS, this::metrics);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+        int ret = server.getAddress().getPort();
+        System.err.println("Listening on http://" + server.getAddress().getHostString() + ":" + ret + AUGMENT);
+        return ret;
+    }
+
+    /**
+     * Stops the server, once the current requests complete
+     */
+    void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void augment(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        int status = 200;
+        String contentType = TEXT_CONTENT;
+        byte[] response;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                status = 405;
+                response = "POST expected".getBytes(StandardCharsets.UTF_8);
+            } else {
+                Map<String, String> parameters = getParameters(exchange.getRequestURI().getRawQuery());
+                OutputFormat format = getFormat(parameters.get(FORMAT_PARAMETER));
+                String fingerprint = parameters.get(FINGERPRINT_PARAMETER);
+                if (fingerprint != null && !fingerprint.equals(fingerprints.get(format))) {
+                    status = CONFLICT;
+                    response = "the server configuration or options differ".getBytes(StandardCharsets.UTF_8);
+                } else {
+                    String file = parameters.get(PATH_PARAMETER);
+                    Path path = file == null ? null : getAllowedPath(file);
+                    if (file != null && path == null) {
+                        status = FORBIDDEN;
+                        response = (roots.isEmpty() ? "files can only be read under the server roots"
+                                : "file is not under the server roots").getBytes(StandardCharsets.UTF_8);
+                    } else {
+                        byte[] content;
+                        if (file == null) {
+                            String name = parameters.get(NAME_PARAMETER);
+                            if (name == null) {
+                                String type = exchange.getRequestHeaders().getFirst("Content-Type");
+                                name = type != null && type.startsWith(JSON_CONTENT) ? "request.json"
+                                        : "request.yaml";
+                            }
+                            path = Paths.get(name);
+                            content = readAll(exchange.getRequestBody());
+                        } else {
+                            try {
+                                content = Files.readAllBytes(path);
+                            } catch (IOException ioex) {
+                                throw new O4A_Exception("IOError reading file '" + path + "' : " + ioex);
+                            }
+                        }
+                        ByteArrayOutputStream output = new ByteArrayOutputStream();
+                        engines.get(format).augment(path, content,
+                                new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                        response = output.toByteArray();
+                        contentType = format.isJson() ? JSON_CONTENT : YAML_CONTENT;
+                    }
+                }
+            }
+        } catch (CliException | InvalidPathException ex) {
+            status = 400;
+            response = ex.getMessage().getBytes(StandardCharsets.UTF_8);
+        } catch (O4A_Exception ex) {
+            status = 422;
+            response = ex.getMessage().getBytes(StandardCharsets.UTF_8);
+        } catch (RuntimeException ex) {
+            status = 500;
+            response = String.valueOf(ex).getBytes(StandardCharsets.UTF_8);
+        }
+        send(exchange, status, contentType, response);
+        record(System.nanoTime() - start, status == 200);
+    }
+
+    /**
+     * @return the real path of the given file, if it is under one of the server roots, or null otherwise
+     */
+    private Path getAllowedPath(String file) {
+        if (roots.isEmpty()) {
+            return null;
+        }
+        Path ret;
+        try {
+            ret = Paths.get(file).toRealPath();
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError reading file '" + file + "' : " + ioex);
+        }
+        return roots.stream().anyMatch(ret::startsWith) ? ret : null;
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        long count = requests.get();
+        String response = "requests " + count + "\n"
+                + "failures " + failures.get() + "\n"
+                + String.format(Locale.ROOT, "latency_avg_ms %.3f%n", count == 0 ? 0.0
+                : totalNanos.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1))
+                + String.format(Locale.ROOT, "latency_max_ms %.3f%n",
+                maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        send(exchange, 200, TEXT_CONTENT, response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void record(long nanos, boolean success) {
+        requests.incrementAndGet();
+        if (!success) {
+            failures.incrementAndGet();
+        }
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private OutputFormat getFormat(String format) {
+        if (format == null) {
+            return defaultFormat;
+        }
+        try {
+            return OutputFormat.parse(format);
+        } catch (IllegalArgumentException ex) {
+            throw new CliException("invalid format: " + format);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] response)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
+    private static Map<String, String> getParameters(String query) throws UnsupportedEncodingException {
+        Map<String, String> ret = new HashMap<>();
+        if (query != null) {
+            for (String each : query.split("&")) {
+                int equals = each.indexOf('=');
+                if (equals > 0) {
+                    ret.put(URLDecoder.decode(each.substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(each.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return ret;
+    }
+
+    static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream ret = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            ret.write(buffer, 0, read);
+        }
+        return ret.toByteArray();
+    }
+
+}
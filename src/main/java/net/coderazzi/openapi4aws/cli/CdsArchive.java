@@ -0,0 +1,79 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.O4A_Exception;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creation of a dynamic class data sharing (AppCDS) archive, which reduces the startup time of later runs.
+ * The archive is dumped by a child JVM, performing a normal (training) run with the same arguments.
+ */
+final class CdsArchive {
+
+    private static final String TRAINING_PROPERTY = "openapi4aws.cds.training";
+    private static final int MIN_JAVA_VERSION = 13;
+
+    private CdsArchive() {
+    }
+
+    /**
+     * @return true if running as the training run of an archive creation
+     */
+    static boolean isTrainingRun() {
+        return Boolean.getBoolean(TRAINING_PROPERTY);
+    }
+
+    /**
+     * Creates the archive, running a child JVM with the same class path and arguments
+     */
+    static void create(Path archive, String[] args) {
+        if (getJavaVersion() < MIN_JAVA_VERSION) {
+            throw new O4A_Exception("Creating a CDS archive requires java " + MIN_JAVA_VERSION + " or later");
+        }
+        String classPath = System.getProperty("java.class.path");
+        for (String each : classPath.split(File.pathSeparator)) {
+            if (new File(each).isDirectory()) {
+                throw new O4A_Exception("Creating a CDS archive requires running from a jar file");
+            }
+        }
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-XX:ArchiveClassesAtExit=" + archive.toAbsolutePath());
+        command.add("-D" + TRAINING_PROPERTY + "=true");
+        command.add("-cp");
+        command.add(classPath);
+        command.add(CliParser.class.getName());
+        command.addAll(Arrays.asList(args));
+        int exitCode;
+        try {
+            exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+        } catch (IOException ioex) {
+            throw new O4A_Exception("Cannot create CDS archive: " + ioex);
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            throw new O4A_Exception("Interrupted creating CDS archive");
+        }
+        if (exitCode != 0) {
+            throw new O4A_Exception("Cannot create CDS archive, training run failed");
+        }
+        System.err.println("Created CDS archive; to use it, run: java -XX:SharedArchiveFile="
+                + archive.toAbsolutePath() + " -cp " + classPath + " " + CliParser.class.getName() + " ...");
+    }
+
+    private static int getJavaVersion() {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
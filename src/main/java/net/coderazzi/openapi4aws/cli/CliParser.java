@@ -3,8 +3,13 @@ package net.coderazzi.openapi4aws.cli;
 import net.coderazzi.openapi4aws.Configuration;
 import net.coderazzi.openapi4aws.O4A_Exception;
 import net.coderazzi.openapi4aws.Openapi4AWS;
+import net.coderazzi.openapi4aws.OutputFormat;
+import net.coderazzi.openapi4aws.ShardStrategy;
+import net.coderazzi.openapi4aws.RouteIndex;
 
-import java.io.IOException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -30,6 +35,9 @@ class Argument implements Comparable<Argument> {
         this.value = value;
         if (area.equals(CliParser.CONFIGURATION)) {
             this.priority = -1;
+        } else if (area.equals(CliParser.ENVIRONMENT_CONFIGURATION)) {
+            // environment configurations are applied after any common parameter, which they override
+            this.priority = Integer.MAX_VALUE;
         } else if (area.equals(CliParser.AUTHORIZER) && type.equals(CliParser.AUTHORIZER_DEFINITION)) {
             this.priority = -2;
         } else {
@@ -39,7 +47,7 @@ class Argument implements Comparable<Argument> {
 
     @Override
     public int compareTo(Argument argument) {
-        return this.priority - argument.priority;
+        return Integer.compare(this.priority, argument.priority);
     }
 }
 
@@ -49,11 +57,10 @@ class Argument implements Comparable<Argument> {
 public class CliParser extends Configuration {
 
     public static final String CONFIGURATION = "configuration";
+    public static final String ENVIRONMENT_CONFIGURATION = "configuration.";
     public static final String AUTHORIZER = "authorizer.";
     public static final String AUTHORIZER_DEFINITION = "name";
     private static final Map<String, ArgumentConsumer> argumentHandlers = new HashMap<>();
-    private static final Map<String, AuthorizerConsumer> authorizerConsumers = new HashMap<>();
-    private static final Map<String, Getter<AuthorizerParameter>> authorizerCheckers = new HashMap<>();
     private static final String AUTHORIZER_IDENTITY_SOURCE = "identity-source";
     private static final String AUTHORIZER_ISSUER = "issuer";
     private static final String AUTHORIZER_AUDIENCES = "audience";
@@ -62,8 +69,41 @@ public class CliParser extends Configuration {
     private static final String TAG = "tag.";
     private static final String PATH = "path.";
     private static final String FILENAME = "filename";
+    private static final String STANDARD_INPUT = "-";
     private static final String GLOB = "glob";
+    private static final String EXCLUDE = "exclude";
     private static final String OUTPUT = "output-folder";
+    private static final String THREADS = "threads";
+    private static final String KEEP_GOING = "keep-going";
+    private static final String STREAMING = "streaming";
+    private static final String SPLICE = "splice";
+    private static final String INCREMENTAL = "incremental";
+    private static final String OUTPUT_FORMAT = "output-format";
+    private static final String SKIP_UNCHANGED = "skip-unchanged";
+    private static final String CHECK = "check";
+    private static final String WATCH = "watch";
+    private static final String SERVER = "server";
+    private static final String SERVER_ROOTS = "server-roots";
+    private static final String CLIENT = "client";
+    private static final String CREATE_CDS_ARCHIVE = "create-cds-archive";
+    private static final String REPORT = "report";
+    private static final String BUNDLE = "bundle";
+    private static final String BUNDLE_CACHE_SIZE = "bundle-cache-size";
+    private static final String ROUTES = "routes";
+    private static final String APPLY_PATCHES = "apply-patches";
+    private static final String SHARD_BY = "shard-by";
+    private static final String COMPACT_YAML = "compact-yaml";
+    private static final String SHARD_MAX_OPERATIONS = "shard-max-operations";
+    private static final String SHARD_MAX_BYTES = "shard-max-bytes";
+    private static final String IO_BUFFER_SIZE = "io-buffer-size";
+    private static final String MMAP_THRESHOLD = "mmap-threshold";
+    private static final String MAX_INPUT_BYTES = "max-input-bytes";
+    private static final String MAX_ALIASES = "max-aliases";
+    private static final String MAX_DEPTH = "max-depth";
+    private static final String MAX_OPERATIONS = "max-operations";
+    private static final String LOAD_TIMEOUT = "load-timeout";
+    private static final Set<String> ENVIRONMENT_AREAS = new HashSet<>(Arrays.asList(AUTHORIZER, TAG, PATH,
+            ROUTES, CONFIGURATION));
 
     static {
         argumentHandlers.put(AUTHORIZER, CliParser::handleAuthorizer);
@@ -71,30 +111,83 @@ public class CliParser extends Configuration {
         argumentHandlers.put(PATH, CliParser::handlePath);
         argumentHandlers.put(FILENAME, CliParser::handleFilename);
         argumentHandlers.put(GLOB, CliParser::handleGlob);
+        argumentHandlers.put(EXCLUDE, CliParser::handleExclude);
         argumentHandlers.put(OUTPUT, CliParser::handleOutput);
         argumentHandlers.put(CONFIGURATION, CliParser::handleConfiguration);
-
-        authorizerConsumers.put(AUTHORIZER_IDENTITY_SOURCE, AuthorizerParameter::setIdentitySource);
-        authorizerConsumers.put(AUTHORIZER_ISSUER, AuthorizerParameter::setIssuer);
-        authorizerConsumers.put(AUTHORIZER_AUDIENCES, (s, a) -> s.setAudiences(convertToNonEmptyList(a)));
-        authorizerConsumers.put(AUTHORIZER_AUTHORIZATION_TYPE, AuthorizerParameter::setAuthorizationType);
-        authorizerConsumers.put(AUTHORIZER_TYPE, AuthorizerParameter::setType);
-
-        authorizerCheckers.put(AUTHORIZER_IDENTITY_SOURCE, AuthorizerParameter::getIdentitySource);
-        authorizerCheckers.put(AUTHORIZER_ISSUER, AuthorizerParameter::getIssuer);
-        authorizerCheckers.put(AUTHORIZER_AUDIENCES, AuthorizerParameter::getAudience);
-        authorizerCheckers.put(AUTHORIZER_AUTHORIZATION_TYPE, AuthorizerParameter::getAuthorizationType);
-        authorizerCheckers.put(AUTHORIZER_TYPE, AuthorizerParameter::getType);
+        argumentHandlers.put(ENVIRONMENT_CONFIGURATION, CliParser::handleEnvironmentConfiguration);
+        argumentHandlers.put(THREADS, CliParser::handleThreads);
+        argumentHandlers.put(KEEP_GOING, CliParser::handleKeepGoing);
+        argumentHandlers.put(STREAMING, CliParser::handleStreaming);
+        argumentHandlers.put(SPLICE, CliParser::handleSplice);
+        argumentHandlers.put(INCREMENTAL, CliParser::handleIncremental);
+        argumentHandlers.put(OUTPUT_FORMAT, CliParser::handleOutputFormat);
+        argumentHandlers.put(SKIP_UNCHANGED, CliParser::handleSkipUnchanged);
+        argumentHandlers.put(CHECK, CliParser::handleCheck);
+        argumentHandlers.put(WATCH, CliParser::handleWatch);
+        argumentHandlers.put(SERVER, CliParser::handleServer);
+        argumentHandlers.put(SERVER_ROOTS, CliParser::handleServerRoots);
+        argumentHandlers.put(CLIENT, CliParser::handleClient);
+        argumentHandlers.put(CREATE_CDS_ARCHIVE, CliParser::handleCreateCdsArchive);
+        argumentHandlers.put(REPORT, CliParser::handleReport);
+        argumentHandlers.put(BUNDLE, CliParser::handleBundle);
+        argumentHandlers.put(BUNDLE_CACHE_SIZE, CliParser::handleBundleCacheSize);
+        argumentHandlers.put(ROUTES, CliParser::handleRoutes);
+        argumentHandlers.put(APPLY_PATCHES, CliParser::handleApplyPatches);
+        argumentHandlers.put(SHARD_BY, CliParser::handleShardBy);
+        argumentHandlers.put(COMPACT_YAML, CliParser::handleCompactYaml);
+        argumentHandlers.put(SHARD_MAX_OPERATIONS, CliParser::handleShardMaxOperations);
+        argumentHandlers.put(SHARD_MAX_BYTES, CliParser::handleShardMaxBytes);
+        argumentHandlers.put(IO_BUFFER_SIZE, CliParser::handleIoBufferSize);
+        argumentHandlers.put(MMAP_THRESHOLD, CliParser::handleMmapThreshold);
+        argumentHandlers.put(MAX_INPUT_BYTES, CliParser::handleMaxInputBytes);
+        argumentHandlers.put(MAX_ALIASES, CliParser::handleMaxAliases);
+        argumentHandlers.put(MAX_DEPTH, CliParser::handleMaxDepth);
+        argumentHandlers.put(MAX_OPERATIONS, CliParser::handleMaxOperations);
+        argumentHandlers.put(LOAD_TIMEOUT, CliParser::handleLoadTimeout);
     }
 
     private final Map<String, AuthorizerParameter> authorizers = new LinkedHashMap<>();
     private final Map<String, IntegrationParameter> tags = new HashMap<>();
     private final Map<String, IntegrationParameter> paths = new HashMap<>();
+    private final RouteIndex<IntegrationParameter> routes = new RouteIndex<>();
     private final Set<String> filenames = new HashSet<>();
     private final Set<String> globs = new HashSet<>();
-    private final Pattern argPattern = Pattern.compile(String.format("^(--)?(%s)([^=]*)=(.+)$",
-            String.join("|", argumentHandlers.keySet())));
+    private final Set<String> excludes = new HashSet<>();
+    private final List<String> configurationFiles = new ArrayList<>();
+    private final Map<String, String> environments = new LinkedHashMap<>();
+    private final String environment;
+    // true while handling the configuration file of the environment
+    private boolean inEnvironment;
     private Path outputFolder;
+    private int threads = 1;
+    private boolean keepGoing;
+    private boolean streaming;
+    private boolean splice;
+    private boolean incremental;
+    private OutputFormat outputFormat = OutputFormat.YAML;
+    private boolean skipUnchanged;
+    private boolean check;
+    private boolean watch;
+    private int serverPort;
+    private final List<Path> serverRoots = new ArrayList<>();
+    private int clientPort;
+    private Path cdsArchive;
+    private Path report;
+    private boolean bundle;
+    private Path patches;
+    private ShardStrategy shardBy;
+    private boolean compactYaml;
+    private int shardMaxOperations;
+    private long shardMaxBytes;
+    private int bundleCacheSize;
+    private int ioBufferSize;
+    private long mmapThreshold = -1;
+    private long maxInputBytes;
+    private int maxAliases;
+    private int maxDepth;
+    private int maxOperations;
+    private long loadTimeout;
+    private boolean pipe;
 
     /**
      * Constructor reading the configuration parameters from a file
@@ -103,6 +196,7 @@ public class CliParser extends Configuration {
      */
     public CliParser(String filename) {
         this(readFile(filename));
+        configurationFiles.add(0, filename);
     }
 
     /**
@@ -111,10 +205,26 @@ public class CliParser extends Configuration {
      * @param args command line arguments
      */
     CliParser(String[] args) {
+        this(args, null);
+    }
+
+    /**
+     * Constructor using parameters array, for a specific environment: only its configuration.ENVIRONMENT
+     * parameter is considered, the configurations of any other environments are ignored
+     *
+     * @param args        command line arguments
+     * @param environment the environment, or null to ignore all environment configurations
+     */
+    CliParser(String[] args, String environment) {
+        this.environment = environment;
         handleArguments(args, false);
+        if (environment == null && !environments.isEmpty() && (serverPort > 0 || watch || clientPort > 0)) {
+            throw new CliException((serverPort > 0 ? SERVER : watch ? WATCH : CLIENT)
+                    + " mode does not support multiple environments");
+        }
         authorizers.forEach((name, instance) -> {
             if (!name.isEmpty()) {
-                authorizerCheckers.forEach((prop, checker) -> {
+                AuthorizerHandlers.checkers.forEach((prop, checker) -> {
                     if (null == checker.get(instance)) {
                         String missing = AUTHORIZER + prop;
                         throw new CliException("Missing " + missing + " or " + missing + "." + name);
@@ -143,6 +253,40 @@ public class CliParser extends Configuration {
         return ret;
     }
 
+    private static int convertToPositiveInt(String arg) {
+        try {
+            int ret = Integer.parseInt(arg);
+            if (ret > 0) {
+                return ret;
+            }
+        } catch (NumberFormatException ex) {
+            // handled below
+        }
+        throw new CliException("invalid value: " + arg);
+    }
+
+    private static long convertToPositiveLong(String arg) {
+        try {
+            long ret = Long.parseLong(arg);
+            if (ret > 0) {
+                return ret;
+            }
+        } catch (NumberFormatException ex) {
+            // handled below
+        }
+        throw new CliException("invalid value: " + arg);
+    }
+
+    private static boolean convertToBoolean(String arg) {
+        if ("true".equalsIgnoreCase(arg)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(arg)) {
+            return false;
+        }
+        throw new CliException("invalid value: " + arg);
+    }
+
     static private String[] readFile(String filename) {
         try {
             return Files.readAllLines(Paths.get(filename)).stream()
@@ -155,13 +299,99 @@ public class CliParser extends Configuration {
     public static void main(String[] args) {
         try {
             CliParser configuration = new CliParser(args);
-            new Openapi4AWS(configuration).handle(configuration.getPaths(), configuration.getOutputFolder());
+            if (configuration.getCdsArchive() != null && !CdsArchive.isTrainingRun()) {
+                CdsArchive.create(configuration.getCdsArchive(), args);
+            } else if (configuration.getServerPort() > 0) {
+                new AugmentServer(configuration, configuration.getServerPort()).start();
+            } else if (configuration.isWatch()) {
+                new Watcher(args, configuration).run();
+            } else if (!configuration.getEnvironments().isEmpty()) {
+                Map<String, CliParser> environments = new LinkedHashMap<>();
+                configuration.getEnvironments().keySet().forEach(x -> environments.put(x, new CliParser(args, x)));
+                Openapi4AWS openapi4AWS = configuration.createEngine();
+                openapi4AWS.handle(configuration.getPaths(), configuration.getOutputFolder(), environments);
+                configuration.report(openapi4AWS);
+            } else if (configuration.isPipe()) {
+                configuration.pipe();
+            } else if (configuration.getClientPort() == 0
+                    || !new AugmentClient(configuration, configuration.getClientPort()).forward()) {
+                Openapi4AWS openapi4AWS = configuration.createEngine();
+                openapi4AWS.handle(configuration.getPaths(), configuration.getOutputFolder());
+                configuration.report(openapi4AWS);
+            }
         } catch (O4A_Exception ex) {
             System.err.println(ex.getMessage());
             System.exit(1);
         }
     }
 
+    /**
+     * @return a new engine to process the files, with the options defined in this configuration
+     */
+    Openapi4AWS createEngine() {
+        Openapi4AWS ret = new Openapi4AWS(this);
+        ret.setThreads(threads);
+        ret.setKeepGoing(keepGoing);
+        ret.setStreaming(streaming);
+        ret.setSplice(splice);
+        ret.setIncremental(incremental);
+        ret.setOutputFormat(outputFormat);
+        ret.setSkipUnchanged(skipUnchanged);
+        ret.setCheck(check);
+        ret.setReport(report);
+        ret.setBundle(bundle);
+        ret.setPatches(patches);
+        ret.setShardBy(shardBy);
+        ret.setCompactYaml(compactYaml);
+        ret.setShardMaxOperations(shardMaxOperations);
+        ret.setShardMaxBytes(shardMaxBytes);
+        if (bundleCacheSize > 0) {
+            ret.setBundleCacheSize(bundleCacheSize);
+        }
+        if (ioBufferSize > 0) {
+            ret.setBufferSize(ioBufferSize);
+        }
+        if (mmapThreshold >= 0) {
+            ret.setMapThreshold(mmapThreshold);
+        }
+        ret.setMaxInputBytes(maxInputBytes);
+        ret.setMaxAliases(maxAliases);
+        ret.setMaxDepth(maxDepth);
+        ret.setMaxOperations(maxOperations);
+        ret.setLoadTimeout(loadTimeout);
+        return ret;
+    }
+
+    /**
+     * Augments the yaml documents read from the standard input, writing them to the standard output, and
+     * processes then any other input files
+     */
+    private void pipe() {
+        Openapi4AWS openapi4AWS = createEngine();
+        try {
+            openapi4AWS.augmentAll("<stdin>", System.in, System.out);
+        } catch (IOException ioex) {
+            throw new O4A_Exception("IOError processing standard input : " + ioex);
+        }
+        Collection<Path> paths = getPaths();
+        if (!paths.isEmpty()) {
+            openapi4AWS.handle(paths, getOutputFolder());
+            report(openapi4AWS);
+        }
+    }
+
+    /**
+     * Reports the outcome of the last run of the given engine, if requested
+     */
+    void report(Openapi4AWS engine) {
+        if (check) {
+            System.err.println(engine.getUnchangedFiles() + " outputs up-to-date");
+        } else if (skipUnchanged) {
+            System.err.println(engine.getWrittenFiles() + " files written, " + engine.getUnchangedFiles()
+                    + " unchanged");
+        }
+    }
+
     /**
      * Parses the given arguments. If strict is True, arguments cannot be preceded with dashes
      */
@@ -169,7 +399,7 @@ public class CliParser extends Configuration {
         List<Argument> ret = new ArrayList<>();
         Boolean usingDashes = strict ? false : null;
         for (String arg : args) {
-            Matcher m = argPattern.matcher(arg);
+            Matcher m = ArgumentPattern.pattern.matcher(arg);
             if (m.matches()) {
                 boolean dashes = m.group(1) != null;
                 // be coherent on the use of -- when preceding them in the command line
@@ -191,6 +421,11 @@ public class CliParser extends Configuration {
         Collections.sort(ret);
         for (Argument arg : ret) {
             try {
+                if (inEnvironment && !ENVIRONMENT_AREAS.contains(arg.area)) {
+                    // the options are only taken from the common parameters
+                    throw new CliException("only authorizers, integrations and routes can be defined "
+                            + "for an environment");
+                }
                 argumentHandlers.get(arg.area).consume(this, arg.type, arg.value);
             } catch (CliException ex) {
                 throw new CliException(arg.argument + " : " + ex.getMessage());
@@ -204,6 +439,9 @@ public class CliParser extends Configuration {
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
+    /**
+     * @return the integrations defined with path.* parameters; those in route tables are not included
+     */
     public Map<String, Integration> getPathIntegrations() {
         return paths.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
@@ -214,33 +452,310 @@ public class CliParser extends Configuration {
 
     @Override
     public Integration getIntegration(String path, List<String> pathTags) {
-        return getIntegration(path, pathTags, this.paths, this.tags);
+        return getIntegration(path, pathTags, this.routes, this.tags);
+    }
+
+    /**
+     * The fingerprint covers the defined authorizers and integrations, plus the content of
+     * every configuration file read, so that editing any of them invalidates any previous run.
+     */
+    @Override
+    public String getFingerprint() {
+        List<String> parts = new ArrayList<>();
+        authorizers.forEach((name, authorizer) -> {
+            if (!name.isEmpty()) {
+                parts.add(AUTHORIZER + name);
+                new TreeMap<>(AuthorizerHandlers.checkers).forEach((prop, checker) ->
+                        parts.add(prop + "=" + checker.get(authorizer)));
+            }
+        });
+        addFingerprint(parts, PATH, paths);
+        addFingerprint(parts, TAG, tags);
+        for (String each : configurationFiles) {
+            try {
+                parts.add(CONFIGURATION + "=" + each);
+                parts.add(new String(Files.readAllBytes(Paths.get(each)), StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                throw new O4A_Exception("Cannot read " + CONFIGURATION + " file " + each + " : " + ex);
+            }
+        }
+        return computeFingerprint(parts);
+    }
+
+    private static void addFingerprint(List<String> parts, String area, Map<String, IntegrationParameter> map) {
+        new TreeMap<>(map).forEach((name, integration) -> {
+            parts.add(area + name);
+            parts.add(integration.getUri(""));
+            parts.add(integration.getAuthorizer());
+            parts.add(String.valueOf(integration.getScopes()));
+        });
     }
 
     public Collection<Path> getPaths() {
-        return getPaths(filenames, globs);
+        return getPaths(filenames, globs, excludes);
+    }
+
+    /**
+     * @return the folders where any files matching the globs would be located, with the maximum depth of the
+     * folders below them that can contain matching files, or -1 if there is no limit
+     */
+    Map<Path, Integer> getGlobFolders() {
+        return getGlobFolders(globs);
+    }
+
+    /**
+     * @return the configuration file associated to each environment, defined as configuration.ENVIRONMENT
+     */
+    public Map<String, String> getEnvironments() {
+        return Collections.unmodifiableMap(environments);
+    }
+
+    /**
+     * @return all the configuration files read, including those referenced from other configuration files
+     */
+    List<String> getConfigurationFiles() {
+        return Collections.unmodifiableList(configurationFiles);
     }
 
     public Path getOutputFolder() {
         return outputFolder;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isKeepGoing() {
+        return keepGoing;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    public boolean isWatch() {
+        return watch;
+    }
+
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    /**
+     * @return the folders whose files the server can read, when requested by path
+     */
+    public List<Path> getServerRoots() {
+        return serverRoots;
+    }
+
+    public int getClientPort() {
+        return clientPort;
+    }
+
+    /**
+     * @return the first option defined that an augment server cannot apply for a client, or null if none
+     */
+    String getLocalOption() {
+        return check ? CHECK : incremental ? INCREMENTAL : report != null ? REPORT : shardBy != null ? SHARD_BY
+                : patches != null ? APPLY_PATCHES : null;
+    }
+
+    /**
+     * @return true if the standard input must be processed, defined as filename=-
+     */
+    public boolean isPipe() {
+        return pipe;
+    }
+
+    public Path getCdsArchive() {
+        return cdsArchive;
+    }
+
+    public Path getReport() {
+        return report;
+    }
+
+    public boolean isBundle() {
+        return bundle;
+    }
+
     private void handleOutput(String empty, String definition) {
         this.outputFolder = Paths.get(definition);
     }
 
     private void handleConfiguration(String empty, String definition) {
+        configurationFiles.add(definition);
         handleArguments(readFile(definition), true);
     }
 
+    private void handleEnvironmentConfiguration(String name, String definition) {
+        if (environment == null) {
+            environments.put(name, definition);
+        } else if (environment.equals(name)) {
+            inEnvironment = true;
+            try {
+                handleConfiguration(name, definition);
+            } finally {
+                inEnvironment = false;
+            }
+        }
+    }
+
+    private void handleThreads(String empty, String definition) {
+        this.threads = convertToPositiveInt(definition);
+    }
+
+    private void handleKeepGoing(String empty, String definition) {
+        this.keepGoing = convertToBoolean(definition);
+    }
+
+    private void handleStreaming(String empty, String definition) {
+        this.streaming = convertToBoolean(definition);
+    }
+
+    private void handleSplice(String empty, String definition) {
+        this.splice = convertToBoolean(definition);
+    }
+
+    private void handleIncremental(String empty, String definition) {
+        this.incremental = convertToBoolean(definition);
+    }
+
+    private void handleServer(String empty, String definition) {
+        this.serverPort = convertToPositiveInt(definition);
+    }
+
+    private void handleServerRoots(String empty, String definition) {
+        convertToNonEmptyList(definition).forEach(x -> serverRoots.add(Paths.get(x)));
+    }
+
+    private void handleClient(String empty, String definition) {
+        this.clientPort = convertToPositiveInt(definition);
+    }
+
+    private void handleCreateCdsArchive(String empty, String definition) {
+        this.cdsArchive = Paths.get(definition);
+    }
+
+    private void handleReport(String empty, String definition) {
+        this.report = Paths.get(definition);
+    }
+
+    private void handleBundle(String empty, String definition) {
+        this.bundle = convertToBoolean(definition);
+    }
+
+    private void handleApplyPatches(String empty, String definition) {
+        this.patches = Paths.get(definition);
+    }
+
+    private void handleCompactYaml(String empty, String definition) {
+        this.compactYaml = convertToBoolean(definition);
+    }
+
+    private void handleShardBy(String empty, String definition) {
+        try {
+            this.shardBy = ShardStrategy.parse(definition);
+        } catch (IllegalArgumentException ex) {
+            throw new CliException("invalid value: " + definition);
+        }
+    }
+
+    private void handleShardMaxOperations(String empty, String definition) {
+        this.shardMaxOperations = convertToPositiveInt(definition);
+    }
+
+    private void handleShardMaxBytes(String empty, String definition) {
+        this.shardMaxBytes = convertToPositiveLong(definition);
+    }
+
+    private void handleBundleCacheSize(String empty, String definition) {
+        this.bundleCacheSize = convertToPositiveInt(definition);
+    }
+
+    private void handleIoBufferSize(String empty, String definition) {
+        this.ioBufferSize = convertToPositiveInt(definition);
+    }
+
+    private void handleMmapThreshold(String empty, String definition) {
+        try {
+            this.mmapThreshold = Long.parseLong(definition);
+        } catch (NumberFormatException ex) {
+            this.mmapThreshold = -1;
+        }
+        if (mmapThreshold < 0) {
+            throw new CliException("invalid value: " + definition);
+        }
+    }
+
+    private void handleMaxInputBytes(String empty, String definition) {
+        this.maxInputBytes = convertToPositiveLong(definition);
+    }
+
+    private void handleMaxAliases(String empty, String definition) {
+        this.maxAliases = convertToPositiveInt(definition);
+    }
+
+    private void handleMaxDepth(String empty, String definition) {
+        this.maxDepth = convertToPositiveInt(definition);
+    }
+
+    private void handleMaxOperations(String empty, String definition) {
+        this.maxOperations = convertToPositiveInt(definition);
+    }
+
+    private void handleLoadTimeout(String empty, String definition) {
+        this.loadTimeout = convertToPositiveLong(definition);
+    }
+
+    private void handleWatch(String empty, String definition) {
+        this.watch = convertToBoolean(definition);
+    }
+
+    private void handleSkipUnchanged(String empty, String definition) {
+        this.skipUnchanged = convertToBoolean(definition);
+    }
+
+    private void handleCheck(String empty, String definition) {
+        this.check = convertToBoolean(definition);
+    }
+
+    private void handleOutputFormat(String empty, String definition) {
+        try {
+            this.outputFormat = OutputFormat.parse(definition);
+        } catch (IllegalArgumentException ex) {
+            throw new CliException("invalid value: " + definition);
+        }
+    }
+
     private void handleFilename(String empty, String definition) {
-        filenames.add(definition);
+        if (STANDARD_INPUT.equals(definition)) {
+            pipe = true;
+        } else {
+            filenames.add(definition);
+        }
     }
 
     private void handleGlob(String empty, String definition) {
         globs.add(definition);
     }
 
+    private void handleExclude(String empty, String definition) {
+        excludes.add(definition);
+    }
+
     /**
      * Handles a tag definition: tag.NAME=value, converting the NAME to lowercase
      */
@@ -250,12 +765,39 @@ public class CliParser extends Configuration {
 
     /**
      * Handles a method definition: method.path1...pathN=value, replacing the dots in the paths with '/'
+     * The path can include templates ({id}), and wildcards (* and **)
      */
     private void handlePath(String definition, String value) {
-        handleTagOrPath(paths, value, true, "/" + definition.replace(".", "/"));
+        String route = "/" + definition.replace(".", "/");
+        IntegrationParameter integration = handleTagOrPath(paths, value, true, route);
+        try {
+            routes.add(route, integration);
+        } catch (O4A_Exception ex) {
+            throw new CliException(ex.getMessage());
+        }
     }
 
-    private void handleTagOrPath(Map<String, IntegrationParameter> map, String value, boolean isPath, String definition) {
+    /**
+     * Handles a route table: routes=FILE. The file is handled as a configuration file, so that changes
+     * on its content are detected
+     */
+    private void handleRoutes(String empty, String definition) {
+        configurationFiles.add(definition);
+        try {
+            new RouteTable(x -> authorizers.get(x) != null).load(Paths.get(definition), (route, integration) -> {
+                try {
+                    routes.add(route, integration);
+                } catch (O4A_Exception ex) {
+                    throw new CliException(ex.getMessage());
+                }
+            });
+        } catch (IOException ex) {
+            throw new O4A_Exception("Cannot read " + ROUTES + " file " + definition + " : " + ex);
+        }
+    }
+
+    private IntegrationParameter handleTagOrPath(Map<String, IntegrationParameter> map, String value,
+                                                 boolean isPath, String definition) {
         List<String> parts = convertToNonEmptyList(value);
         IntegrationParameter integration = new IntegrationParameter(parts.get(0), isPath); //uri
         if (parts.size() > 1) {
@@ -266,6 +808,7 @@ public class CliParser extends Configuration {
             integration.setAuthorization(parts.get(1), parts.subList(2, parts.size()));
         }
         map.put(definition, integration);
+        return integration;
     }
 
     private AuthorizerParameter getDefaultAuthorizer() {
@@ -282,12 +825,12 @@ public class CliParser extends Configuration {
             convertToNonEmptyList(value).forEach(x -> authorizers.put(x, new AuthorizerParameter(defaultAuthorizer)));
         } else {
             String name = "";
-            AuthorizerConsumer authorizerConsumer = authorizerConsumers.get(definition);
+            AuthorizerConsumer authorizerConsumer = AuthorizerHandlers.consumers.get(definition);
             if (authorizerConsumer == null) {
                 int last = definition.lastIndexOf('.');
                 if (last != -1) {
                     name = definition.substring(last + 1).trim();
-                    authorizerConsumer = authorizerConsumers.get(definition.substring(0, last).trim());
+                    authorizerConsumer = AuthorizerHandlers.consumers.get(definition.substring(0, last).trim());
                 }
             }
             AuthorizerParameter authorizer = authorizers.get(name);
@@ -298,6 +841,38 @@ public class CliParser extends Configuration {
         }
     }
 
+    /**
+     * Pattern to parse the arguments, only compiled once the first argument is parsed.
+     * Longer keys are tried first, so that, for example, configuration. is preferred over configuration
+     */
+    private static class ArgumentPattern {
+        static final Pattern pattern = Pattern.compile(String.format("^(--)?(%s)([^=]*)=(.+)$",
+                argumentHandlers.keySet().stream().sorted(Comparator.comparingInt(String::length).reversed())
+                        .map(Pattern::quote).collect(Collectors.joining("|"))));
+    }
+
+    /**
+     * Handlers for the authorizer properties, only initialized if any authorizer is defined
+     */
+    private static class AuthorizerHandlers {
+        static final Map<String, AuthorizerConsumer> consumers = new HashMap<>();
+        static final Map<String, Getter<AuthorizerParameter>> checkers = new HashMap<>();
+
+        static {
+            consumers.put(AUTHORIZER_IDENTITY_SOURCE, AuthorizerParameter::setIdentitySource);
+            consumers.put(AUTHORIZER_ISSUER, AuthorizerParameter::setIssuer);
+            consumers.put(AUTHORIZER_AUDIENCES, (s, a) -> s.setAudiences(convertToNonEmptyList(a)));
+            consumers.put(AUTHORIZER_AUTHORIZATION_TYPE, AuthorizerParameter::setAuthorizationType);
+            consumers.put(AUTHORIZER_TYPE, AuthorizerParameter::setType);
+
+            checkers.put(AUTHORIZER_IDENTITY_SOURCE, AuthorizerParameter::getIdentitySource);
+            checkers.put(AUTHORIZER_ISSUER, AuthorizerParameter::getIssuer);
+            checkers.put(AUTHORIZER_AUDIENCES, AuthorizerParameter::getAudience);
+            checkers.put(AUTHORIZER_AUTHORIZATION_TYPE, AuthorizerParameter::getAuthorizationType);
+            checkers.put(AUTHORIZER_TYPE, AuthorizerParameter::getType);
+        }
+    }
+
     private interface ArgumentConsumer {
         void consume(CliParser self, String key, String value);
     }
@@ -0,0 +1,137 @@
+package net.coderazzi.openapi4aws.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Bulk loader of route tables, files with one route per line, defined as CSV or TSV:
+ * <pre>
+ *     route,uri[,authorizer[,scope...]]
+ * </pre>
+ * The route can be given as a path (/users/{id}) or using the path.* format (users.{id}).
+ * Lines are read one at a time, without regular expressions. Blank lines and lines starting with # are ignored.
+ * The uris, authorizer names and scope lists are shared across all the routes loaded with the same instance,
+ * as well as the integrations themselves, when they are equivalent.
+ */
+class RouteTable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Predicate<String> authorizers;
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<List<String>, List<String>> scopes = new HashMap<>();
+    private final Map<List<Object>, IntegrationParameter> integrations = new HashMap<>();
+
+    /**
+     * @param authorizers the check for valid authorizer names
+     */
+    RouteTable(Predicate<String> authorizers) {
+        this.authorizers = authorizers;
+    }
+
+    /**
+     * Loads a route table
+     *
+     * @param file     the file to read
+     * @param consumer receives each route and its integration, in the order they are defined
+     */
+    void load(Path file, BiConsumer<String, IntegrationParameter> consumer) throws IOException {
+        List<String> fields = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(Files.newBufferedReader(file, StandardCharsets.UTF_8),
+                BUFFER_SIZE)) {
+            int number = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                split(line, fields);
+                if (!fields.isEmpty()) {
+                    try {
+                        consumer.accept(getRoute(fields.get(0)), getIntegration(fields));
+                    } catch (CliException ex) {
+                        throw new CliException("line " + number + " : " + ex.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the line in its trimmed fields, separated by tabs (if the line contains any) or commas.
+     * The result is empty for blank and comment lines
+     */
+    private static void split(String line, List<String> fields) {
+        fields.clear();
+        int start = 0;
+        int length = line.length();
+        while (start < length && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        if (start == length || line.charAt(start) == '#') {
+            return;
+        }
+        char separator = line.indexOf('\t', start) == -1 ? ',' : '\t';
+        while (start <= length) {
+            int end = line.indexOf(separator, start);
+            if (end == -1) {
+                end = length;
+            }
+            fields.add(line.substring(start, end).trim());
+            start = end + 1;
+        }
+    }
+
+    private static String getRoute(String route) {
+        if (route.isEmpty()) {
+            throw new CliException("missing route");
+        }
+        return route.charAt(0) == '/' ? route : "/" + route.replace('.', '/');
+    }
+
+    private IntegrationParameter getIntegration(List<String> fields) {
+        String uri = fields.size() > 1 ? fields.get(1) : "";
+        if (uri.isEmpty()) {
+            throw new CliException("missing uri");
+        }
+        String authorizer = fields.size() > 2 ? fields.get(2) : "";
+        List<String> routeScopes = null;
+        if (authorizer.isEmpty()) {
+            if (fields.size() > 3) {
+                throw new CliException("scopes defined without authorizer");
+            }
+            authorizer = null;
+        } else {
+            if (!authorizers.test(authorizer)) {
+                throw new CliException(authorizer + " is not a provided authorizer name");
+            }
+            List<String> list = new ArrayList<>(fields.size() - 3);
+            for (int i = 3; i < fields.size(); i++) {
+                if (!fields.get(i).isEmpty()) {
+                    list.add(intern(fields.get(i)));
+                }
+            }
+            routeScopes = scopes.computeIfAbsent(list, Collections::unmodifiableList);
+        }
+        List<Object> key = Arrays.asList(intern(uri), authorizer == null ? null : intern(authorizer), routeScopes);
+        return integrations.computeIfAbsent(key, RouteTable::createIntegration);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IntegrationParameter createIntegration(List<Object> definition) {
+        IntegrationParameter ret = new IntegrationParameter((String) definition.get(0), true);
+        if (definition.get(1) != null) {
+            ret.setAuthorization((String) definition.get(1), (List<String>) definition.get(2));
+        }
+        return ret;
+    }
+
+    private String intern(String s) {
+        String ret = strings.putIfAbsent(s, s);
+        return ret == null ? s : ret;
+    }
+}
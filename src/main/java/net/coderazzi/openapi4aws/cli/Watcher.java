@@ -0,0 +1,241 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.O4A_Exception;
+import net.coderazzi.openapi4aws.Openapi4AWS;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watch mode: processes all the specifications, and then keeps processing them as they change, reusing
+ * the same (warm) engine. Changes on any configuration file rebuild the configuration and reprocess every
+ * specification; otherwise, only the modified or new specifications are processed.
+ * Bursts of events are handled together, once no new events arrive during a short period.
+ */
+class Watcher {
+
+    private static final long DEBOUNCE_MILLIS = 20;
+    // prefix of the temporary files and manifest written by openapi4aws
+    private static final String OWN_FILES_PREFIX = ".openapi4aws";
+
+    private final String[] args;
+    private final WatchService watchService;
+    private final Set<Path> watchedFolders = new HashSet<>();
+    private final Map<Path, FileTime> timestamps = new HashMap<>();
+    private CliParser configuration;
+    private Openapi4AWS engine;
+    private Set<Path> specifications;
+    private Set<Path> configurationFiles;
+
+    /**
+     * @param args          the command line arguments, used to rebuild the configuration on changes
+     * @param configuration the configuration built from those arguments
+     */
+    Watcher(String[] args, CliParser configuration) {
+        this.args = args;
+        this.configuration = configuration;
+        this.engine = configuration.createEngine();
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException ioex) {
+            throw new O4A_Exception("Cannot watch the file system: " + ioex);
+        }
+    }
+
+    /**
+     * Processes all the specifications, and then waits for changes, until the thread is interrupted
+     */
+    void run() {
+        update();
+        process(specifications);
+        System.err.println("Watching for changes...");
+        try {
+            while (true) {
+                handle(waitForChanges());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                watchService.close();
+            } catch (IOException ioex) {
+                // nothing else to do
+            }
+        }
+    }
+
+    /**
+     * @return the changed files, or null if the events could have been lost
+     */
+    private Set<Path> waitForChanges() throws InterruptedException {
+        Set<Path> ret = new HashSet<>();
+        WatchKey key = watchService.take();
+        do {
+            Path folder = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    ret = null;
+                } else if (ret != null) {
+                    Path name = (Path) event.context();
+                    if (!name.toString().startsWith(OWN_FILES_PREFIX)) {
+                        ret.add(folder.resolve(name));
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watchedFolders.remove(folder);
+            }
+            key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        } while (key != null);
+        return ret;
+    }
+
+    private void handle(Set<Path> changes) {
+        if (changes == null || !Collections.disjoint(changes, configurationFiles)) {
+            reload();
+            return;
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        Set<Path> modified = new TreeSet<>();
+        boolean rescan = false;
+        for (Path each : changes) {
+            if (specifications.contains(each) && Files.exists(each)) {
+                if (!getTimestamp(each).equals(timestamps.get(each))) {
+                    modified.add(each);
+                }
+            } else {
+                // files could have been created or removed
+                rescan = true;
+            }
+        }
+        if (rescan) {
+            Set<Path> previous = specifications;
+            update();
+            specifications.stream().filter(x -> !previous.contains(x)).forEach(modified::add);
+        }
+        if (!modified.isEmpty()) {
+            process(modified);
+        }
+    }
+
+    /**
+     * Rebuilds the configuration and processes again all the specifications. On errors, the current
+     * configuration is kept, waiting for further changes
+     */
+    private void reload() {
+        try {
+            configuration = new CliParser(args);
+            engine = configuration.createEngine();
+        } catch (O4A_Exception ex) {
+            System.err.println(ex.getMessage());
+            return;
+        }
+        System.err.println("Configuration reloaded");
+        update();
+        process(specifications);
+    }
+
+    /**
+     * Finds the current specifications and configuration files, and watches their folders. The folders of the
+     * globs are watched with their subfolders, as deep as the globs could match, and before looking for the
+     * specifications, so that no file created meanwhile is missed. New subfolders are then watched on the next
+     * update, which follows any change that is not a modification of a known specification.
+     */
+    private void update() {
+        configuration.getGlobFolders().forEach((folder, depth) -> watchTree(folder.toAbsolutePath().normalize(),
+                depth));
+        try {
+            specifications = toAbsolute(configuration.getPaths().stream());
+        } catch (O4A_Exception ex) {
+            System.err.println(ex.getMessage());
+            specifications = new TreeSet<>();
+        }
+        configurationFiles = toAbsolute(configuration.getConfigurationFiles().stream().map(Paths::get));
+        configurationFiles.forEach(x -> watch(x.getParent()));
+        specifications.forEach(x -> watch(x.getParent()));
+    }
+
+    /**
+     * Watches the given folder and its subfolders, up to the given depth (-1 if unlimited)
+     */
+    private void watchTree(Path folder, int depth) {
+        if (depth == 0 || !Files.isDirectory(folder)) {
+            watch(folder);
+            return;
+        }
+        try {
+            Files.walkFileTree(folder, EnumSet.noneOf(FileVisitOption.class), depth == -1 ? Integer.MAX_VALUE
+                    : depth + 1, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(folder) && dir.getFileName().toString().startsWith(OWN_FILES_PREFIX)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    watch(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // as when looking for the specifications, unreadable folders are ignored
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ioex) {
+            // not expected, failures on each folder are ignored
+        }
+    }
+
+    private void watch(Path folder) {
+        if (watchedFolders.add(folder)) {
+            try {
+                folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException ioex) {
+                // it could be a glob folder not created yet
+                watchedFolders.remove(folder);
+            }
+        }
+    }
+
+    private void process(Collection<Path> paths) {
+        // when overwriting the input files, the timestamps must include the changes done by the engine itself
+        boolean inPlace = configuration.getOutputFolder() == null;
+        if (!inPlace) {
+            paths.forEach(x -> timestamps.put(x, getTimestamp(x)));
+        }
+        long start = System.nanoTime();
+        try {
+            engine.handle(paths, configuration.getOutputFolder());
+        } catch (O4A_Exception ex) {
+            System.err.println(ex.getMessage());
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (inPlace) {
+            paths.forEach(x -> timestamps.put(x, getTimestamp(x)));
+        }
+        System.err.println(paths.size() + " files processed in " + elapsed + " ms");
+        configuration.report(engine);
+    }
+
+    private static FileTime getTimestamp(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException ioex) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static Set<Path> toAbsolute(Stream<Path> paths) {
+        Set<Path> ret = new TreeSet<>();
+        paths.forEach(x -> ret.add(x.toAbsolutePath().normalize()));
+        return ret;
+    }
+}
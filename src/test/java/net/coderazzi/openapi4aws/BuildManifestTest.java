@@ -0,0 +1,108 @@
+package net.coderazzi.openapi4aws;
+
+import net.coderazzi.openapi4aws.cli.CliParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildManifestTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void keepsTheHashesAcrossRuns() throws IOException {
+        Path input = write("input.yaml", "input");
+        Path output = write("output.yaml", "output");
+        String inputHash = hash("input");
+        BuildManifest manifest = BuildManifest.load(folder, "config");
+        assertFalse(manifest.isUpToDate(input, inputHash, output));
+        manifest.update(input, inputHash, hash("output"), Files.size(output));
+        manifest.save();
+
+        manifest = BuildManifest.load(folder, "config");
+        assertTrue(manifest.isUpToDate(input, inputHash, output));
+        assertFalse(manifest.isUpToDate(input, hash("changed"), output));
+        // outputs modified since
+        write("output.yaml", "changed output");
+        assertFalse(manifest.isUpToDate(input, inputHash, output));
+        Files.delete(output);
+        assertFalse(manifest.isUpToDate(input, inputHash, output));
+    }
+
+    @Test
+    void discardsTheManifestOnConfigurationChanges() throws IOException {
+        Path input = write("input.yaml", "input");
+        Path output = write("output.yaml", "output");
+        BuildManifest manifest = BuildManifest.load(folder, "config");
+        manifest.update(input, hash("input"), hash("output"), Files.size(output));
+        manifest.save();
+        assertFalse(BuildManifest.load(folder, "other").isUpToDate(input, hash("input"), output));
+    }
+
+    @Test
+    void discardsInvalidManifests() throws IOException {
+        Path input = write("input.yaml", "input");
+        Path output = write("output.yaml", "output");
+        write(BuildManifest.FILENAME, "# header\nconfiguration config\n" + hash("input") + "\t" + hash("output")
+                + "\tsize\t" + input.toAbsolutePath().normalize() + "\n");
+        assertFalse(BuildManifest.load(folder, "config").isUpToDate(input, hash("input"), output));
+    }
+
+    @Test
+    void acceptsInputsOverwrittenWithTheirOutput() throws IOException {
+        Path file = write("spec.yaml", "output");
+        BuildManifest manifest = BuildManifest.load(folder, "config");
+        manifest.update(file, hash("input"), hash("output"), Files.size(file));
+        // the current content of the input is the previous output
+        assertTrue(manifest.isUpToDate(file, hash("output"), file));
+    }
+
+    @Test
+    void skipsUnchangedFilesInIncrementalMode() throws IOException {
+        Path input = Fixtures.copy("users.yaml", folder);
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Path result = output.resolve("users.yaml");
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setIncremental(true);
+        Fixtures.handle(engine, input, output);
+        assertTrue(Files.exists(output.resolve(BuildManifest.FILENAME)));
+        String generated = Fixtures.read(result);
+
+        // an output with the expected size is not generated again
+        String replaced = generated.replaceAll("[a-z]", "x");
+        Files.write(result, replaced.getBytes(StandardCharsets.UTF_8));
+        Fixtures.handle(engine, input, output);
+        assertEquals(replaced, Fixtures.read(result));
+
+        // but it is if the input changes
+        Files.write(input, (Fixtures.read(input) + "\n# changed\n").getBytes(StandardCharsets.UTF_8));
+        Fixtures.handle(engine, input, output);
+        assertEquals(generated, Fixtures.read(result));
+
+        // or if the configuration changes
+        Files.write(result, replaced.getBytes(StandardCharsets.UTF_8));
+        Files.write(folder.resolve(Fixtures.CONFIGURATION), "\npath.users.{id}=http://other/users\n"
+                .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Openapi4AWS reconfigured = new Openapi4AWS(new CliParser(folder.resolve(Fixtures.CONFIGURATION).toString()));
+        reconfigured.setIncremental(true);
+        Fixtures.handle(reconfigured, input, output);
+        assertTrue(Fixtures.read(result).contains("http://other/users"));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(folder.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(String content) {
+        return BuildManifest.hash(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
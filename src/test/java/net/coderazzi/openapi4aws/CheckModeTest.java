@@ -0,0 +1,102 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckModeTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void acceptsUpToDateOutputs() throws IOException {
+        for (OutputFormat format : new OutputFormat[]{OutputFormat.YAML, OutputFormat.JSON, OutputFormat.OVERLAY}) {
+            Path input = Fixtures.copy("users.yaml", folder);
+            Path output = Files.createTempDirectory(folder, "output");
+            Openapi4AWS engine = Fixtures.createEngine(folder);
+            engine.setOutputFormat(format);
+            Fixtures.handle(engine, input, output);
+            engine.setCheck(true);
+            Fixtures.handle(engine, input, output);
+            assertEquals(Collections.emptyList(), engine.getStaleOutputs(), format.toString());
+            assertEquals(1, engine.getUnchangedFiles(), format.toString());
+            assertEquals(0, engine.getWrittenFiles(), format.toString());
+        }
+    }
+
+    @Test
+    void reportsMissingOutputsWithoutWritingThem() throws IOException {
+        Path input = Fixtures.copy("users.yaml", folder);
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setCheck(true);
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> Fixtures.handle(engine, input, output));
+        String stale = output.resolve("users.yaml") + ": missing";
+        assertEquals("1 outputs are stale:\n" + stale, ex.getMessage());
+        assertEquals(Collections.singletonList(stale), engine.getStaleOutputs());
+        try (Stream<Path> files = Files.list(output)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void reportsEditedOutputsEvenInIncrementalMode() throws IOException {
+        Path input = Fixtures.copy("edge.yaml", folder);
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Path outputFile = output.resolve("edge.yaml");
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setIncremental(true);
+        Fixtures.handle(engine, input, output);
+        // same size, same modification time: only the content tells the difference
+        String content = Fixtures.read(outputFile);
+        FileTime modified = Files.getLastModifiedTime(outputFile);
+        String edited = content.replace("OTHER:12122", "OTHER:12123");
+        Files.write(outputFile, edited.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(outputFile, modified);
+        // the same engine is reused: the anchors in the output must be numbered again from the first one
+        engine.setCheck(true);
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> Fixtures.handle(engine, input, output));
+        int difference = content.indexOf("OTHER:12122") + "OTHER:1212".length();
+        String stale = outputFile + ": differs from byte " + difference
+                + ", first on paths:/user/post:post:x-amazon-apigateway-integration:uri";
+        assertEquals(Collections.singletonList(stale), engine.getStaleOutputs());
+        assertTrue(ex.getMessage().endsWith(stale), ex.getMessage());
+        assertEquals(edited, Fixtures.read(outputFile));
+        assertEquals(modified, Files.getLastModifiedTime(outputFile));
+    }
+
+    @Test
+    void reportsStaleShards() throws IOException {
+        Path input = Fixtures.copy("catalog.yaml", folder);
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setShardBy(ShardStrategy.TAG);
+        Fixtures.handle(engine, input, output);
+        Files.delete(output.resolve("catalog-Orders.yaml"));
+        engine.setCheck(true);
+        assertThrows(O4A_Exception.class, () -> Fixtures.handle(engine, input, output));
+        assertEquals(Collections.singletonList(output.resolve("catalog-Orders.yaml") + ": missing"),
+                engine.getStaleOutputs());
+        assertEquals(2, engine.getUnchangedFiles());
+    }
+
+    @Test
+    void rejectsOutputsOtherThanFiles() throws IOException {
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setCheck(true);
+        assertThrows(O4A_Exception.class, () -> engine.augment(folder.resolve("users.yaml"),
+                new StringReader("openapi: 3.0.1\n"), new StringWriter()));
+    }
+}
@@ -0,0 +1,36 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigurationSnapshotTest {
+
+    private static final Configuration NO_INTEGRATIONS = new Configuration() {
+        @Override
+        public Map<String, Authorizer> getAuthorizers() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Integration getIntegration(String path, List<String> tags) {
+            return null;
+        }
+    };
+
+    @Test
+    void boundsTheMemoizedResolutions() {
+        ConfigurationSnapshot snapshot = new ConfigurationSnapshot(NO_INTEGRATIONS);
+        List<String> tags = Collections.singletonList("tag");
+        for (int i = 0; i < 3 * ConfigurationSnapshot.MAX_RESOLUTIONS; i++) {
+            assertTrue(snapshot.getExtensions("/path/" + i, "get", tags).isEmpty());
+        }
+        int resolutions = snapshot.getResolutions();
+        assertTrue(resolutions > 0 && resolutions <= ConfigurationSnapshot.MAX_RESOLUTIONS + 1,
+                String.valueOf(resolutions));
+    }
+}
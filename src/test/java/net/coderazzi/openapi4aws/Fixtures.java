@@ -0,0 +1,70 @@
+package net.coderazzi.openapi4aws;
+
+import net.coderazzi.openapi4aws.cli.CliParser;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Access to the test fixtures, stored as resources next to this class
+ */
+final class Fixtures {
+
+    static final String CONFIGURATION = "configuration.properties";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Copies a fixture into the given folder, with the same name
+     *
+     * @return the path of the copy
+     */
+    static Path copy(String name, Path folder) throws IOException {
+        Path ret = folder.resolve(name);
+        try (InputStream is = Fixtures.class.getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IOException("missing fixture " + name);
+            }
+            Files.copy(is, ret, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return ret;
+    }
+
+    /**
+     * @return a new engine, using the fixture configuration
+     */
+    static Openapi4AWS createEngine(Path folder) throws IOException {
+        return new Openapi4AWS(new CliParser(copy(CONFIGURATION, folder).toString()));
+    }
+
+    /**
+     * Processes a single file
+     */
+    static void handle(Openapi4AWS engine, Path path, Path outputFolder) {
+        engine.handle(Collections.singletonList(path), outputFolder);
+    }
+
+    static String read(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the parsed content of the file, yaml or json
+     */
+    static Object load(Path path) throws IOException {
+        return new Yaml().load(read(path));
+    }
+
+    static Set<PosixFilePermission> getPermissions(Path path) throws IOException {
+        return Files.getPosixFilePermissions(path);
+    }
+}
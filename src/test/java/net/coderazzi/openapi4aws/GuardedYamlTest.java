@@ -0,0 +1,94 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuardedYamlTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void limitsTheNestingDepth() {
+        GuardedYaml yaml = create(new LoadLimits(0, 0, 3, 0, 0));
+        assertNotNull(yaml.load("a:\n  b: [1]\n"));
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> yaml.load("a:\n  b:\n    c: [1]\n"));
+        assertEquals(": nesting depth exceeds the limit of 3", ex.getMessage());
+    }
+
+    @Test
+    void appliesTheDepthLimitToEachDocument() {
+        GuardedYaml yaml = create(new LoadLimits(0, 0, 2, 0, 0));
+        List<Object> documents = new ArrayList<>();
+        yaml.loadAll(new StringReader("a: {b: 1}\n---\nc: {d: 2}\n---\ne: {f: 3}\n")).forEach(documents::add);
+        assertEquals(3, documents.size());
+    }
+
+    @Test
+    void limitsTheSizeOfTheWholeStream() {
+        GuardedYaml yaml = create(new LoadLimits(20, 0, 0, 0, 0));
+        assertNotNull(yaml.load("a: 1\n"));
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> {
+            for (Object ignored : yaml.loadAll(new StringReader("a: 1234567890\n---\nb: 1234567890\n"))) {
+                assertNotNull(ignored);
+            }
+        });
+        assertTrue(ex.getMessage().endsWith("exceeds the limit of 20"), ex.getMessage());
+    }
+
+    @Test
+    void limitsTheLoadTime() throws InterruptedException {
+        LoadLimits limits = new LoadLimits(0, 0, 0, 0, 1);
+        long deadline = limits.getDeadline();
+        Thread.sleep(5);
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> limits.checkDeadline(deadline));
+        assertEquals(": loading exceeds the time limit of 1 ms", ex.getMessage());
+        // no deadline without time limit
+        assertEquals(0, LoadLimits.NONE.getDeadline());
+        LoadLimits.NONE.checkDeadline(0);
+    }
+
+    @Test
+    void limitsTheNumberOfOperations() {
+        Map<?, ?> specification = create(LoadLimits.NONE).load("paths:\n  /a:\n    get: {}\n    post: {}\n"
+                + "    parameters: []\n  /b:\n    get: {}\n");
+        new LoadLimits(0, 0, 0, 3, 0).checkOperations(specification);
+        O4A_Exception ex = assertThrows(O4A_Exception.class,
+                () -> new LoadLimits(0, 0, 0, 2, 0).checkOperations(specification));
+        assertEquals(": 3 operations exceed the limit of 2", ex.getMessage());
+    }
+
+    @Test
+    void keepsProcessingTheFilesAfterAViolation() throws IOException {
+        Path users = Fixtures.copy("users.yaml", folder);
+        Path input = Files.createDirectories(folder.resolve("input"));
+        Path deep = Files.write(input.resolve("deep.yaml"),
+                "openapi: 3.0.1\npaths: {/a: {get: {x: [[[[[[[[[[[[[[[[1]]]]]]]]]]]]]]]}}}\n".getBytes());
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setMaxDepth(16);
+        List<Path> paths = new ArrayList<>();
+        paths.add(deep);
+        paths.add(users);
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> engine.handle(paths, output));
+        assertTrue(ex.getMessage().contains("nesting depth exceeds the limit of 16"), ex.getMessage());
+        assertTrue(Files.exists(output.resolve("users.yaml")));
+        assertFalse(Files.exists(output.resolve("deep.yaml")));
+    }
+
+    private static GuardedYaml create(LoadLimits limits) {
+        return new GuardedYaml(limits, new LoaderOptions(), new DumperOptions());
+    }
+}
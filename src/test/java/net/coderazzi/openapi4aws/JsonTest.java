@@ -0,0 +1,85 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonTest {
+
+    private static final String CONTENT = "{\"openapi\": \"3.0.1\", \"paths\": {\"/users/{id}\": {\"get\": "
+            + "{\"tags\": [\"Users\", \"Admin\"], \"deprecated\": false, \"x-order\": -12, \"x-rate\": 1.5e3, "
+            + "\"x-big\": 12345678901, \"x-huge\": 123456789012345678901234567890, \"x-none\": null, "
+            + "\"summary\": \"quote \\\" backslash \\\\ tab \\t line \\n unicode \\u00e9\\u20ac\"}}}, "
+            + "\"servers\": [], \"components\": {}}";
+
+    @Test
+    void producesTheSameTreeAsSnakeYaml() {
+        assertEquals(new Yaml().load(CONTENT), JsonReader.parse(CONTENT));
+    }
+
+    @Test
+    void usesTheSmallestIntegerType() {
+        assertEquals(Arrays.asList(1, -2147483648, 2147483648L, new BigInteger("9223372036854775808"), 0.5),
+                JsonReader.parse("[1, -2147483648, 2147483648, 9223372036854775808, 0.5]"));
+    }
+
+    @Test
+    void acceptsEscapedSlashes() {
+        // valid in json, but not in yaml 1.1
+        assertEquals("a/b", JsonReader.parse("\"a\\/b\""));
+    }
+
+    @Test
+    void skipsTheByteOrderMark() {
+        assertEquals(Collections.singletonMap("a", 1), JsonReader.parse("\uFEFF {\"a\": 1}"));
+    }
+
+    @Test
+    void reportsInvalidContent() {
+        for (String content : new String[]{"", "{", "{\"a\" 1}", "{\"a\": 1,}", "[1 2]", "{a: 1}", "\"open",
+                "\"\\x\"", "\"\\u12\"", "tru", "01x", "{} {}", "\"a\tb\""}) {
+            O4A_Exception ex = assertThrows(O4A_Exception.class, () -> JsonReader.parse(content), content);
+            assertTrue(ex.getMessage().startsWith(": invalid json content: "), ex.getMessage());
+        }
+    }
+
+    @Test
+    void limitsTheNestingDepth() {
+        String content = "{\"a\": [{\"b\": [1]}]}";
+        assertNotNull(JsonReader.parse(content, 4));
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> JsonReader.parse(content, 3));
+        assertEquals(": nesting depth exceeds the limit of 3", ex.getMessage());
+    }
+
+    @Test
+    void writesContentReadBackUnchanged() throws IOException {
+        Object tree = JsonReader.parse(CONTENT);
+        // a small buffer forces several writes
+        for (int bufferSize : new int[]{1, 7, 16 * 1024}) {
+            StringWriter out = new StringWriter();
+            new JsonWriter(out, bufferSize).write(tree);
+            assertEquals(tree, JsonReader.parse(out.toString()), "buffer size " + bufferSize);
+        }
+    }
+
+    @Test
+    void writesCompactJson() throws IOException {
+        Map<String, Object> tree = new LinkedHashMap<>();
+        List<Object> list = Arrays.asList("a\u0001", null, true, 2, Double.NaN);
+        tree.put("list", list);
+        tree.put("empty", new LinkedHashMap<>());
+        StringWriter out = new StringWriter();
+        new JsonWriter(out).write(tree);
+        assertEquals("{\"list\":[\"a\\u0001\",null,true,2,\"NaN\"],\"empty\":{}}", out.toString());
+    }
+}
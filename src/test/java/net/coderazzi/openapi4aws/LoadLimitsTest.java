@@ -0,0 +1,54 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadLimitsTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void rejectsAliasBombsByDefault() throws IOException {
+        for (OutputFormat format : new OutputFormat[]{OutputFormat.YAML, OutputFormat.JSON}) {
+            Path input = Fixtures.copy("alias-bomb.yaml", folder);
+            Path output = Files.createTempDirectory(folder, "output");
+            Openapi4AWS engine = Fixtures.createEngine(folder);
+            engine.setOutputFormat(format);
+            O4A_Exception ex = assertThrows(O4A_Exception.class, () -> Fixtures.handle(engine, input, output));
+            assertTrue(ex.getMessage().contains("Number of aliases for non-scalar nodes exceeds the specified "
+                    + "max=50"), ex.getMessage());
+            try (Stream<Path> files = Files.list(output)) {
+                assertEquals(0, files.count(), format.toString());
+            }
+        }
+    }
+
+    @Test
+    void rejectsAliasBombsInGuardedMode() throws IOException {
+        Path input = Fixtures.copy("alias-bomb.yaml", folder);
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setMaxDepth(64);
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> Fixtures.handle(engine, input, output));
+        assertTrue(ex.getMessage().contains("max=50"), ex.getMessage());
+    }
+
+    @Test
+    void acceptsTheAliasesAllowedExplicitly() throws IOException {
+        Path input = Fixtures.copy("alias-bomb.yaml", folder);
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setMaxAliases(100);
+        Fixtures.handle(engine, input, output);
+        // the shared content is written again with aliases, not expanded
+        assertTrue(Files.size(output.resolve("alias-bomb.yaml")) < 2048);
+    }
+}
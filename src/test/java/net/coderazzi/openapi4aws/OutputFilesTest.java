@@ -0,0 +1,70 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputFilesTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void comparesFileContents() throws IOException {
+        // larger than the comparison chunks
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append(i).append('\n');
+        }
+        Path file = write("file.txt", content.toString());
+        assertTrue(OutputFiles.hasContent(file, buffer(content.toString())));
+        assertTrue(OutputFiles.hasContent(file, write("same.txt", content.toString())));
+        content.setCharAt(content.length() - 2, 'x');
+        assertFalse(OutputFiles.hasContent(file, buffer(content.toString())));
+        assertFalse(OutputFiles.hasContent(file, buffer(content.substring(1))));
+        assertFalse(OutputFiles.hasContent(folder.resolve("missing.txt"), buffer("")));
+    }
+
+    @Test
+    void keepsUnchangedOutputs() throws IOException {
+        for (boolean streaming : new boolean[]{false, true}) {
+            Path input = Fixtures.copy("users.yaml", folder);
+            Path output = Files.createTempDirectory(folder, "output");
+            Path result = output.resolve("users.yaml");
+            Openapi4AWS engine = Fixtures.createEngine(folder);
+            engine.setStreaming(streaming);
+            engine.setSkipUnchanged(true);
+            Fixtures.handle(engine, input, output);
+            FileTime old = FileTime.fromMillis(Files.getLastModifiedTime(result).toMillis() - 60000);
+            Files.setLastModifiedTime(result, old);
+            Fixtures.handle(engine, input, output);
+            assertEquals(old, Files.getLastModifiedTime(result), "streaming=" + streaming);
+            // changed outputs are replaced
+            Files.write(result, "changed".getBytes(StandardCharsets.UTF_8));
+            Fixtures.handle(engine, input, output);
+            assertNotEquals("changed", Fixtures.read(result));
+            // and no temporary files are left
+            try (Stream<Path> files = Files.list(output)) {
+                assertEquals(1, files.count());
+            }
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(folder.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static OutputFiles.Buffer buffer(String content) throws IOException {
+        OutputFiles.Buffer ret = new OutputFiles.Buffer();
+        ret.write(content.getBytes(StandardCharsets.UTF_8));
+        return ret;
+    }
+}
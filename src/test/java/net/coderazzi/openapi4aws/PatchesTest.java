@@ -0,0 +1,111 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatchesTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void createsJsonPatchesAddingOnlyTheAugmentedNodes() throws IOException {
+        Path input = Fixtures.copy("edge.yaml", folder);
+        Path patches = createPatches(input, OutputFormat.JSON_PATCH);
+        List<?> operations = (List<?>) Fixtures.load(patches.resolve("edge.patch.json"));
+        // null path items and operations are not modified
+        assertEquals(Arrays.asList("add /paths/~1user~1post/post/x-amazon-apigateway-integration",
+                "add /paths/~1user~1post/post/security",
+                "add /paths/~1users~1{id}/get/x-amazon-apigateway-integration",
+                "add /paths/~1users~1{id}/get/security",
+                "add /components/securitySchemes"), describe(operations));
+        assertEquals(Fixtures.read(input), Fixtures.read(folder.resolve("edge.yaml")), "input modified");
+    }
+
+    @Test
+    void createsJsonPatchesReplacingOutdatedNodes() throws IOException {
+        Path input = Fixtures.copy("outdated.yaml", folder);
+        Path patches = createPatches(input, OutputFormat.JSON_PATCH);
+        List<?> operations = (List<?>) Fixtures.load(patches.resolve("outdated.patch.json"));
+        // only the outdated values are replaced or removed
+        String integration = "/paths/~1user~1post/post/x-amazon-apigateway-integration/";
+        String scheme = "/components/securitySchemes/";
+        assertEquals(Arrays.asList("add " + integration + "payloadFormatVersion",
+                "add " + integration + "connectionType", "replace " + integration + "uri",
+                "remove " + integration + "timeoutInMillis",
+                "add /paths/~1user~1post/post/security", "replace " + scheme + "Other/type",
+                "add " + scheme + "Other/flows", "add " + scheme + "Other/x-amazon-apigateway-authorizer",
+                "remove " + scheme + "Other/in", "remove " + scheme + "Other/name", "add " + scheme + "Cognito"),
+                describe(operations));
+    }
+
+    @Test
+    void createsOverlaysGroupingTheUpdatesOfEachTarget() throws IOException {
+        Path input = Fixtures.copy("edge.yaml", folder);
+        Path patches = createPatches(input, OutputFormat.OVERLAY);
+        Map<?, ?> overlay = (Map<?, ?>) Fixtures.load(patches.resolve("edge.overlay.yaml"));
+        assertEquals("1.0.0", overlay.get("overlay"));
+        assertEquals("edge.yaml", overlay.get("extends"));
+        List<?> targets = ((List<?>) overlay.get("actions")).stream().map(x -> ((Map<?, ?>) x).get("target"))
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("$['paths']['/user/post']['post']", "$['paths']['/users/{id}']['get']",
+                "$['components']"), targets);
+    }
+
+    @Test
+    void appliesJsonPatchesAsTheAugmentedSpecification() throws IOException {
+        checkApplyMode(OutputFormat.JSON_PATCH);
+    }
+
+    @Test
+    void appliesOverlaysAsTheAugmentedSpecification() throws IOException {
+        checkApplyMode(OutputFormat.OVERLAY);
+    }
+
+    @Test
+    void failsToApplyMissingPatches() throws IOException {
+        Path input = Fixtures.copy("edge.yaml", folder);
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setPatches(Files.createDirectories(folder.resolve("patches")));
+        assertThrows(O4A_Exception.class, () -> Fixtures.handle(engine, input, output));
+        assertFalse(Files.exists(output.resolve("edge.yaml")));
+    }
+
+    private void checkApplyMode(OutputFormat format) throws IOException {
+        for (String name : new String[]{"edge.yaml", "outdated.yaml", "users.yaml"}) {
+            Path input = Fixtures.copy(name, folder);
+            Path patches = createPatches(input, format);
+            Path expected = Files.createDirectories(folder.resolve("expected"));
+            Path applied = Files.createDirectories(folder.resolve("applied"));
+            Fixtures.handle(Fixtures.createEngine(folder), input, expected);
+            Openapi4AWS engine = Fixtures.createEngine(folder);
+            engine.setPatches(patches);
+            Fixtures.handle(engine, input, applied);
+            assertEquals(Fixtures.load(expected.resolve(name)), Fixtures.load(applied.resolve(name)), name);
+        }
+    }
+
+    private Path createPatches(Path input, OutputFormat format) throws IOException {
+        Path ret = Files.createDirectories(folder.resolve("patches-" + format));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setOutputFormat(format);
+        Fixtures.handle(engine, input, ret);
+        return ret;
+    }
+
+    private static List<String> describe(List<?> operations) {
+        return operations.stream().map(x -> ((Map<?, ?>) x).get("op") + " " + ((Map<?, ?>) x).get("path"))
+                .collect(Collectors.toList());
+    }
+}
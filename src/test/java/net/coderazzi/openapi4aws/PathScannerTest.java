@@ -0,0 +1,91 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathScannerTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void findsTheBaseFolderOfGlobs() {
+        assertEquals(Paths.get("specs/api"), PathScanner.getBase("specs/api/*.yaml"));
+        assertEquals(Paths.get("specs"), PathScanner.getBase("specs/**/*.yaml"));
+        assertNull(PathScanner.getBase("**/*.yaml"));
+        assertNull(PathScanner.getBase("users.yaml"));
+        assertEquals(Paths.get("/abs/specs"), PathScanner.getBase("/abs/specs/*.yaml"));
+        assertTrue(PathScanner.getBase("/abs/specs/*.yaml").isAbsolute());
+        assertEquals(Paths.get("/"), PathScanner.getBase("/*.yaml"));
+    }
+
+    @Test
+    void findsTheMaximumDepthOfGlobs() {
+        assertEquals(0, PathScanner.getMaxDepth("specs/*.yaml"));
+        assertEquals(1, PathScanner.getMaxDepth("specs/*/*.yaml"));
+        assertEquals(0, PathScanner.getMaxDepth("/abs/specs/*.yaml"));
+        assertEquals(-1, PathScanner.getMaxDepth("specs/**/*.yaml"));
+        assertEquals(-1, PathScanner.getMaxDepth("specs/{a,b/c}/*.yaml"));
+    }
+
+    @Test
+    void findsFilesWithAbsoluteGlobs() throws IOException {
+        create("a.yaml", "b.json", "sub/c.yaml", "sub/deep/d.yaml", "other/e.yaml");
+        assertEquals(paths("a.yaml"), scan(Collections.singletonList(folder + "/*.yaml"), null));
+        assertEquals(paths("a.yaml", "sub/c.yaml", "sub/deep/d.yaml", "other/e.yaml"),
+                scan(Collections.singletonList(folder + "/**.yaml"), null));
+        assertEquals(paths("sub/c.yaml", "other/e.yaml"), scan(Collections.singletonList(folder + "/*/*.yaml"), null));
+        // overlapping globs find each file once; **/ matches at least one folder
+        assertEquals(paths("b.json", "sub/c.yaml", "sub/deep/d.yaml"),
+                scan(Arrays.asList(folder + "/**/*.yaml", folder + "/sub/**", folder + "/*.json"),
+                        Collections.singletonList(folder + "/other")));
+    }
+
+    @Test
+    void ignoresMissingBaseFolders() {
+        assertTrue(scan(Collections.singletonList(folder + "/missing/*.yaml"), null).isEmpty());
+    }
+
+    @Test
+    void findsFilesWithRelativeGlobs() {
+        // the tests run in the project folder
+        Set<Path> found = scan(Collections.singletonList("src/test/resources/**/users.yaml"), null);
+        assertEquals(Collections.singleton(Paths.get("src/test/resources/net/coderazzi/openapi4aws/users.yaml")),
+                found);
+        assertTrue(scan(Collections.singletonList("src/test/resources/*/users.yaml"), null).isEmpty());
+    }
+
+    private Set<Path> scan(Collection<String> globs, Collection<String> excludes) {
+        Set<Path> ret = new TreeSet<>();
+        new PathScanner(globs, excludes).scan(ret);
+        return ret;
+    }
+
+    private Set<Path> paths(String... names) {
+        Set<Path> ret = new TreeSet<>();
+        for (String name : names) {
+            ret.add(folder.resolve(name));
+        }
+        return ret;
+    }
+
+    private void create(String... names) throws IOException {
+        for (String name : names) {
+            Path path = folder.resolve(name);
+            Files.createDirectories(path.getParent());
+            Files.write(path, new byte[0]);
+        }
+    }
+}
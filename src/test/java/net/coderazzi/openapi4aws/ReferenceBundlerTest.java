@@ -0,0 +1,143 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceBundlerTest {
+
+    private static final String COMMON = "components:\n  schemas:\n"
+            + "    User:\n      type: object\n      properties:\n"
+            + "        friend: {$ref: '#/components/schemas/User'}\n"
+            + "        address: {$ref: '#/components/schemas/Address'}\n"
+            + "    Address: {type: string}\n"
+            + "Error:\n  type: object\n  properties:\n    code: {type: integer}\n"
+            + "Loop:\n  items: {$ref: '#/Loop'}\n";
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void hoistsReferencedComponents() throws IOException {
+        write("common.yaml", COMMON);
+        Map<String, Object> specification = bundle(new ReferenceBundler(createCache(8)),
+                "openapi: 3.0.1\npaths:\n  /users:\n    get:\n      responses:\n"
+                        + "        '200': {$ref: 'common.yaml#/components/schemas/User'}\n"
+                        + "components:\n  schemas:\n    User: {type: string}\n");
+        assertEquals(Collections.singletonMap("$ref", "#/components/schemas/User_2"),
+                get(specification, "paths", "/users", "get", "responses", "200"));
+        Map<String, Object> schemas = get(specification, "components", "schemas");
+        assertEquals(Collections.singletonMap("type", "string"), schemas.get("User"));
+        // recursive components point to the hoisted copy
+        assertEquals(Collections.singletonMap("$ref", "#/components/schemas/User_2"),
+                get(schemas, "User_2", "properties", "friend"));
+        assertEquals(Collections.singletonMap("$ref", "#/components/schemas/Address"),
+                get(schemas, "User_2", "properties", "address"));
+        assertEquals(Collections.singletonMap("type", "string"), schemas.get("Address"));
+    }
+
+    @Test
+    void inlinesOtherReferencesAndKeepsLocalAndRemoteOnes() throws IOException {
+        write("common.yaml", COMMON);
+        Map<String, Object> specification = bundle(new ReferenceBundler(createCache(8)),
+                "openapi: 3.0.1\npaths:\n  /users:\n    get:\n      responses:\n"
+                        + "        default: {$ref: 'common.yaml#/Error'}\n"
+                        + "        '404': {$ref: '#/components/responses/NotFound'}\n"
+                        + "        '500': {$ref: 'http://remote/common.yaml#/Error'}\n");
+        Map<String, Object> responses = get(specification, "paths", "/users", "get", "responses");
+        assertEquals(new Yaml().load("{type: object, properties: {code: {type: integer}}}"), responses.get("default"));
+        assertEquals(Collections.singletonMap("$ref", "#/components/responses/NotFound"), responses.get("404"));
+        assertEquals(Collections.singletonMap("$ref", "http://remote/common.yaml#/Error"), responses.get("500"));
+        assertNull(specification.get("components"));
+    }
+
+    @Test
+    void rejectsCircularInlinedReferences() throws IOException {
+        write("common.yaml", COMMON);
+        ReferenceBundler bundler = new ReferenceBundler(createCache(8));
+        O4A_Exception ex = assertThrows(O4A_Exception.class,
+                () -> bundle(bundler, "paths:\n  /loop: {$ref: 'common.yaml#/Loop'}\n"));
+        assertTrue(ex.getMessage().startsWith(": circular $ref '#/Loop' in "), ex.getMessage());
+        ex = assertThrows(O4A_Exception.class, () -> bundle(bundler, "paths:\n  /x: {$ref: 'common.yaml#/None'}\n"));
+        assertTrue(ex.getMessage().startsWith(": unresolved $ref 'common.yaml#/None' in "), ex.getMessage());
+    }
+
+    @Test
+    void loadsEachReferencedFileOnce() throws IOException {
+        Path common = write("common.yaml", COMMON);
+        ReferenceBundler bundler = new ReferenceBundler(createCache(8));
+        String content = "paths:\n  /users: {$ref: 'common.yaml#/Error'}\n  /other: {$ref: 'common.yaml#/Error'}\n";
+        bundle(bundler, content);
+        bundle(bundler, content);
+        assertEquals(1, bundler.getLoads());
+        // modified files are loaded again
+        Files.setLastModifiedTime(common, FileTime.fromMillis(Files.getLastModifiedTime(common).toMillis() + 5000));
+        bundle(bundler, content);
+        assertEquals(2, bundler.getLoads());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedDocuments() throws IOException {
+        Path a = write("a.yaml", "a: 1");
+        Path b = write("b.yaml", "b: 2");
+        Path c = write("c.yaml", "c: 3");
+        DocumentCache cache = createCache(2);
+        cache.get(a);
+        cache.get(b);
+        cache.get(a);
+        cache.get(c);
+        assertEquals(3, cache.getLoads());
+        cache.get(a);
+        assertEquals(3, cache.getLoads());
+        assertEquals(Collections.singletonMap("b", 2), cache.get(b));
+        assertEquals(4, cache.getLoads());
+    }
+
+    @Test
+    void reportsMissingFilesAndInvalidSizes() {
+        DocumentCache cache = createCache(1);
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> cache.get(folder.resolve("missing.yaml")));
+        assertTrue(ex.getMessage().startsWith(": cannot read referenced file "), ex.getMessage());
+        assertThrows(O4A_Exception.class, () -> createCache(0));
+    }
+
+    private Map<String, Object> bundle(ReferenceBundler bundler, String content) {
+        Map<String, Object> ret = new Yaml().load(content);
+        bundler.bundle(folder.resolve("spec.yaml"), ret);
+        return ret;
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(folder.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static DocumentCache createCache(int size) {
+        return new DocumentCache(size, path -> {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                return new Yaml().load(reader);
+            } catch (IOException ioex) {
+                throw new O4A_Exception(": " + ioex);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> get(Map<String, Object> map, String... keys) {
+        Map<String, Object> ret = map;
+        for (String key : keys) {
+            ret = (Map<String, Object>) ret.get(key);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,74 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteIndexTest {
+
+    @Test
+    void prefersLiteralsOverTemplatesOverWildcards() {
+        RouteIndex<String> index = new RouteIndex<>();
+        index.add("/users/**", "prefix");
+        index.add("/users/*", "wildcard");
+        index.add("/users/{id}", "template");
+        index.add("/users/me", "literal");
+        assertEquals("literal", index.find("/users/me"));
+        assertEquals("template", index.find("/users/{userId}"));
+        assertEquals("template", index.find("/users/12"));
+        assertEquals("prefix", index.find("/users/12/orders"));
+        assertEquals("prefix", index.find("/users"));
+        assertNull(index.find("/orders"));
+    }
+
+    @Test
+    void usesWildcardsWhenNoTemplateMatches() {
+        RouteIndex<String> index = new RouteIndex<>();
+        index.add("/users/*/orders", "wildcard");
+        index.add("/users/{id}/profile", "template");
+        index.add("/**", "prefix");
+        assertEquals("template", index.find("/users/12/profile"));
+        // the template branch fails deeper down, so the lookup backtracks to the wildcard
+        assertEquals("wildcard", index.find("/users/12/orders"));
+        assertEquals("prefix", index.find("/users/12/invoices"));
+    }
+
+    @Test
+    void comparesSegmentsFromLeftToRight() {
+        RouteIndex<String> index = new RouteIndex<>();
+        index.add("/api/{version}/users", "template first");
+        index.add("/api/*/users/{id}", "wildcard first");
+        index.add("/{api}/v1/**", "literal later");
+        assertEquals("template first", index.find("/api/v1/users"));
+        assertEquals("wildcard first", index.find("/api/v1/users/12"));
+        assertEquals("literal later", index.find("/other/v1/users"));
+    }
+
+    @Test
+    void returnsThePathMatchedByPrefixRoutes() {
+        RouteIndex<String> index = new RouteIndex<>();
+        index.add("/api/**", "prefix");
+        index.add("/api/users/{id}", "template");
+        assertNull(index.match("/api/users/{id}").getRemainder());
+        assertEquals("/users/{id}/orders", index.match("/api/users/{id}/orders").getRemainder());
+        assertEquals("/orders", index.match("/api/orders").getRemainder());
+        assertEquals("", index.match("/api").getRemainder());
+        assertEquals("prefix", index.match("/api").getValue());
+        assertNull(index.match("/other"));
+    }
+
+    @Test
+    void replacesRedefinedRoutes() {
+        RouteIndex<String> index = new RouteIndex<>();
+        index.add("/users/{id}", "first");
+        index.add("/users/{userId}", "second");
+        assertEquals("second", index.find("/users/12"));
+    }
+
+    @Test
+    void rejectsPrefixWildcardsBeforeTheLastSegment() {
+        RouteIndex<String> index = new RouteIndex<>();
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> index.add("/api/**/users", "invalid"));
+        assertTrue(ex.getMessage().contains("can only be the last segment"), ex.getMessage());
+    }
+}
@@ -0,0 +1,70 @@
+package net.coderazzi.openapi4aws;
+
+import net.coderazzi.openapi4aws.cli.CliParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpecificationAugmenterTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void augmentsTheOperationsAndTheSecuritySchemes() throws IOException {
+        Map<String, Object> specification = load("users.yaml");
+        SpecificationAugmenter.augment(specification, createSnapshot(), null);
+        Map<?, ?> post = get(specification, Openapi4AWS.PATHS, "/user/post", "post");
+        assertEquals("http://OTHER:12122/path", get(post, Openapi4AWS.INTEGRATION).get("uri"));
+        assertTrue(post.containsKey(Openapi4AWS.SECURITY));
+        assertEquals(2, get(specification, Openapi4AWS.COMPONENTS, Openapi4AWS.SECURITY_SCHEMES).size());
+        // the operations without integration keep their extensions
+        assertEquals("old", get(specification, Openapi4AWS.PATHS, "/users/{id}", "delete",
+                Openapi4AWS.INTEGRATION).get("uri"));
+    }
+
+    @Test
+    void augmentsOverlaysWithoutModifyingTheSource() throws IOException {
+        Map<String, Object> specification = load("users.yaml");
+        Map<String, Object> original = load("users.yaml");
+        Map<String, Object> overlay = SpecificationAugmenter.overlay(specification);
+        SpecificationAugmenter.augment(overlay, createSnapshot(), null);
+        assertEquals(original, specification);
+        assertNotEquals(original, overlay);
+        // the content not modified by augment is shared
+        assertSame(specification.get("info"), overlay.get("info"));
+        assertSame(get(specification, Openapi4AWS.COMPONENTS).get("schemas"),
+                get(overlay, Openapi4AWS.COMPONENTS).get("schemas"));
+    }
+
+    @Test
+    void rejectsUnexpectedContent() throws IOException {
+        Map<String, Object> specification = new Yaml().load("paths:\n  /users:\n    get:\n      tags: Users\n");
+        O4A_Exception ex = assertThrows(O4A_Exception.class,
+                () -> SpecificationAugmenter.augment(specification, createSnapshot(), null));
+        assertTrue(ex.getMessage().contains("paths:/users:get"), ex.getMessage());
+    }
+
+    private ConfigurationSnapshot createSnapshot() throws IOException {
+        return new ConfigurationSnapshot(new CliParser(Fixtures.copy(Fixtures.CONFIGURATION, folder).toString()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> load(String name) throws IOException {
+        return (Map<String, Object>) Fixtures.load(Fixtures.copy(name, folder));
+    }
+
+    private static Map<?, ?> get(Map<?, ?> map, String... keys) {
+        Map<?, ?> ret = map;
+        for (String key : keys) {
+            ret = (Map<?, ?>) ret.get(key);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,126 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpecificationSharderTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void shardsByTagWithTheReachableComponents() throws IOException {
+        Map<String, Map<?, ?>> shards = shard(ShardStrategy.TAG, 0, 0);
+        assertEquals(Arrays.asList("catalog-Frontend.yaml", "catalog-Orders.yaml", "catalog-default.yaml"),
+                new ArrayList<>(shards.keySet()));
+        Map<?, ?> frontend = shards.get("catalog-Frontend.yaml");
+        assertEquals(Arrays.asList("/users", "/users/{id}"), keys(frontend, "paths"));
+        assertEquals(Arrays.asList("User", "UserList"), keys(frontend, "components", "schemas"));
+        assertEquals(Collections.singletonList("Id"), keys(frontend, "components", "parameters"));
+        assertEquals(Collections.singletonList("NotFound"), keys(frontend, "components", "responses"));
+        assertEquals(Collections.singletonList("Cognito"), keys(frontend, "components", "securitySchemes"));
+        assertEquals(Collections.singletonList(Collections.singletonMap("name", "Frontend")), frontend.get("tags"));
+        Map<?, ?> orders = shards.get("catalog-Orders.yaml");
+        // the first tag decides the shard, but all the tags in the operation are kept
+        assertEquals(Collections.singletonList("/orders"), keys(orders, "paths"));
+        assertEquals(Arrays.asList("Order", "Line"), keys(orders, "components", "schemas"));
+        assertEquals(2, ((List<?>) orders.get("tags")).size());
+        Map<?, ?> untagged = shards.get("catalog-default.yaml");
+        // null path items are kept, without components
+        assertEquals(Arrays.asList("/orders/{id}", "/health"), keys(untagged, "paths"));
+        assertNull(untagged.get("components"));
+        assertEquals(Collections.emptyList(), untagged.get("tags"));
+    }
+
+    @Test
+    void shardsByPathPrefix() throws IOException {
+        Map<String, Map<?, ?>> shards = shard(ShardStrategy.PATH, 0, 0);
+        assertEquals(Arrays.asList("catalog-users.yaml", "catalog-orders.yaml", "catalog-health.yaml"),
+                new ArrayList<>(shards.keySet()));
+        assertEquals(Arrays.asList("/orders", "/orders/{id}"), keys(shards.get("catalog-orders.yaml"), "paths"));
+    }
+
+    @Test
+    void keepsEveryAugmentedPathOnExactlyOneShard() throws IOException {
+        Path input = Fixtures.copy("catalog.yaml", folder);
+        Path output = Files.createDirectories(folder.resolve("full"));
+        Fixtures.handle(Fixtures.createEngine(folder), input, output);
+        Map<?, ?> full = (Map<?, ?>) Fixtures.load(output.resolve("catalog.yaml"));
+        for (ShardStrategy strategy : ShardStrategy.values()) {
+            Map<Object, Object> paths = new LinkedHashMap<>();
+            for (Map<?, ?> shard : shard(strategy, 1, 0).values()) {
+                ((Map<?, ?>) shard.get("paths")).forEach((path, item) -> assertNull(paths.put(path, item)));
+                assertEquals(full.get("info"), shard.get("info"));
+            }
+            assertEquals(full.get("paths"), paths, strategy.toString());
+        }
+    }
+
+    @Test
+    void splitsShardsExceedingTheMaximumOperations() throws IOException {
+        Map<String, Map<?, ?>> shards = shard(ShardStrategy.TAG, 2, 0);
+        // path items are never split, even if they exceed the limit
+        assertEquals(Arrays.asList("catalog-Frontend-1.yaml", "catalog-Frontend-2.yaml", "catalog-Orders.yaml",
+                "catalog-default.yaml"), new ArrayList<>(shards.keySet()));
+        assertEquals(Arrays.asList("User", "UserList"), keys(shards.get("catalog-Frontend-1.yaml"),
+                "components", "schemas"));
+        assertEquals(Collections.singletonList("/users/{id}"), keys(shards.get("catalog-Frontend-2.yaml"), "paths"));
+        assertEquals(Collections.singletonList("User"), keys(shards.get("catalog-Frontend-2.yaml"),
+                "components", "schemas"));
+    }
+
+    @Test
+    void splitsShardsExceedingTheMaximumSize() throws IOException {
+        assertEquals(shard(ShardStrategy.TAG, 0, 0), shard(ShardStrategy.TAG, 0, 3_000_000_000L));
+        Map<String, Map<?, ?>> shards = shard(ShardStrategy.TAG, 0, 1);
+        assertEquals(Arrays.asList("catalog-Frontend-1.yaml", "catalog-Frontend-2.yaml", "catalog-Orders.yaml",
+                "catalog-default-1.yaml", "catalog-default-2.yaml"), new ArrayList<>(shards.keySet()));
+    }
+
+    /**
+     * @return the content of each shard, by file name
+     */
+    private Map<String, Map<?, ?>> shard(ShardStrategy strategy, int maxOperations, long maxBytes)
+            throws IOException {
+        Path input = Fixtures.copy("catalog.yaml", folder);
+        Path output = Files.createTempDirectory(folder, "shards");
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setShardBy(strategy);
+        engine.setShardMaxOperations(maxOperations);
+        engine.setShardMaxBytes(maxBytes);
+        Fixtures.handle(engine, input, output);
+        Map<String, Map<?, ?>> ret = new HashMap<>();
+        try (Stream<Path> files = Files.list(output)) {
+            for (Path each : files.collect(Collectors.toList())) {
+                ret.put(each.getFileName().toString(), (Map<?, ?>) Fixtures.load(each));
+            }
+        }
+        // sorted as the shards appear in the specification
+        Map<String, Map<?, ?>> sorted = new LinkedHashMap<>();
+        ret.entrySet().stream().sorted(Comparator.comparing(x -> firstPathIndex(x.getValue())))
+                .forEach(x -> sorted.put(x.getKey(), x.getValue()));
+        return sorted;
+    }
+
+    private static int firstPathIndex(Map<?, ?> shard) {
+        List<String> order = Arrays.asList("/users", "/users/{id}", "/orders", "/orders/{id}", "/health");
+        return order.indexOf(keys(shard, "paths").get(0));
+    }
+
+    private static List<Object> keys(Map<?, ?> document, String... location) {
+        Object ret = document;
+        for (String each : location) {
+            ret = ((Map<?, ?>) ret).get(each);
+        }
+        return new ArrayList<>(((Map<?, ?>) ret).keySet());
+    }
+}
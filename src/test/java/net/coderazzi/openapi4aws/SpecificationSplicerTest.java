@@ -0,0 +1,86 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpecificationSplicerTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void producesTheSameSpecificationAsTheTreeMode() throws IOException {
+        for (String name : new String[]{"splice-commented.yaml", "splice-crlf.yaml", "splice-null-components.yaml",
+                "edge.yaml", "users.yaml"}) {
+            Path input = Fixtures.copy(name, folder);
+            Path tree = Files.createDirectories(folder.resolve("tree"));
+            Fixtures.handle(Fixtures.createEngine(folder), input, tree);
+            assertEquals(Fixtures.load(tree.resolve(name)), Fixtures.load(splice(input)), name);
+        }
+    }
+
+    @Test
+    void keepsCommentsAndFormatting() throws IOException {
+        Path input = Fixtures.copy("splice-commented.yaml", folder);
+        String original = Fixtures.read(input);
+        String output = Fixtures.read(splice(input));
+        // the content before the first modified operation is unchanged
+        String head = original.substring(0, original.indexOf("            security:"));
+        assertTrue(output.startsWith(head));
+        assertTrue(output.contains("            tags: [Frontend]   # flow tags\n"));
+        assertTrue(output.contains("              uri: http://OTHER:12122/path    # replaced\n"));
+        assertTrue(output.contains("            summary: create\n"));
+        assertTrue(output.contains("                    description: >\n                        folded\n"));
+        assertTrue(output.contains("            responses: {}  # trailing comment\n"));
+        assertTrue(output.contains("components:   # components\n"));
+        assertTrue(output.contains("        Mine:\n            type: apiKey\n"));
+        assertFalse(output.contains(": old") || output.contains("- old:"), "outdated entries kept");
+    }
+
+    @Test
+    void keepsTheLineBreaks() throws IOException {
+        String output = Fixtures.read(splice(Fixtures.copy("splice-crlf.yaml", folder)));
+        assertTrue(output.contains("x-amazon-apigateway-integration:\r\n"));
+        assertEquals(output.split("\n").length, output.split("\r\n").length);
+    }
+
+    @Test
+    void addsTheSecuritySchemesToNullComponents() throws IOException {
+        String output = Fixtures.read(splice(Fixtures.copy("splice-null-components.yaml", folder)));
+        assertTrue(output.startsWith("openapi: 3.0.1\ncomponents:\n  securitySchemes:\n    Cognito:\n"));
+        // null operations are not modified
+        assertTrue(output.endsWith("\n    put:\n"));
+    }
+
+    @Test
+    void rejectsFlowMappingsAndAliases() throws IOException {
+        checkRejected("splice-flow.yaml", "does not support flow mappings on paths:/x:get");
+        checkRejected("splice-alias.yaml", "does not support aliases on paths:/x:put");
+        checkRejected("splice-anchor.yaml",
+                "does not support anchors or aliases on paths:/x:get:x-amazon-apigateway-integration");
+    }
+
+    private void checkRejected(String name, String message) throws IOException {
+        Path input = Fixtures.copy(name, folder);
+        String original = Fixtures.read(input);
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setSplice(true);
+        O4A_Exception ex = assertThrows(O4A_Exception.class, () -> Fixtures.handle(engine, input, null));
+        assertTrue(ex.getMessage().endsWith(message), ex.getMessage());
+        assertEquals(original, Fixtures.read(input), "input modified");
+    }
+
+    private Path splice(Path input) throws IOException {
+        Path ret = Files.createDirectories(folder.resolve("splice"));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setSplice(true);
+        Fixtures.handle(engine, input, ret);
+        return ret.resolve(input.getFileName());
+    }
+}
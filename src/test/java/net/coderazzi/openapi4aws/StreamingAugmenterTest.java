@@ -0,0 +1,122 @@
+package net.coderazzi.openapi4aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class StreamingAugmenterTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void producesTheSameSpecificationAsTheTreeMode() throws IOException {
+        for (String name : new String[]{"users.yaml", "edge.yaml"}) {
+            Path input = Fixtures.copy(name, folder);
+            Path tree = Files.createDirectories(folder.resolve("tree"));
+            Path streaming = Files.createDirectories(folder.resolve("streaming"));
+            Fixtures.handle(Fixtures.createEngine(folder), input, tree);
+            Openapi4AWS engine = Fixtures.createEngine(folder);
+            engine.setStreaming(true);
+            Fixtures.handle(engine, input, streaming);
+            assertEquals(Fixtures.load(tree.resolve(name)), Fixtures.load(streaming.resolve(name)), name);
+        }
+    }
+
+    @Test
+    void rejectsAliasesInPlaceOfOperationsOrTags() throws IOException {
+        String operation = "openapi: 3.0.1\npaths:\n  /users:\n    get: &op\n      tags: [Users]\n"
+                + "  /users/me:\n    get: *op\n";
+        String tags = "openapi: 3.0.1\npaths:\n  /users:\n    get:\n      tags: &tags [Users]\n"
+                + "  /users/me:\n    get:\n      tags: *tags\n";
+        String tag = "openapi: 3.0.1\npaths:\n  /users:\n    get:\n      tags: [&tag Users]\n"
+                + "  /users/me:\n    get:\n      tags: [*tag]\n";
+        for (String content : new String[]{operation, tags, tag}) {
+            Path input = Files.write(folder.resolve("aliases.yaml"), content.getBytes(StandardCharsets.UTF_8));
+            Path output = Files.createDirectories(folder.resolve("output"));
+            Openapi4AWS engine = Fixtures.createEngine(folder);
+            engine.setStreaming(true);
+            O4A_Exception ex = assertThrows(O4A_Exception.class, () -> Fixtures.handle(engine, input, output));
+            assertTrue(ex.getMessage().contains("aliases are not supported in streaming mode, found on "
+                    + "paths:/users/me:get"), ex.getMessage());
+            // the tree mode resolves them
+            Fixtures.handle(Fixtures.createEngine(folder), input, output);
+        }
+    }
+
+    @Test
+    void keepsOtherAliases() throws IOException {
+        String content = "openapi: 3.0.1\npaths:\n  /users:\n    get:\n      tags: [Frontend]\n"
+                + "      responses: &responses\n        '200':\n          description: ok\n"
+                + "  /users/me:\n    get:\n      tags: [Frontend]\n      responses: *responses\n";
+        Path input = Files.write(folder.resolve("aliases.yaml"), content.getBytes(StandardCharsets.UTF_8));
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setStreaming(true);
+        Fixtures.handle(engine, input, output);
+        String result = Fixtures.read(output.resolve("aliases.yaml"));
+        assertTrue(result.contains("responses: *responses"), result);
+        assertTrue(result.contains("uri: http://1.2.3.4:12121/tmp/users/me"), result);
+    }
+
+    @Test
+    void keepsTheOriginalFormatting() throws IOException {
+        Path input = Fixtures.copy("edge.yaml", folder);
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setStreaming(true);
+        Fixtures.handle(engine, input, null);
+        String output = Fixtures.read(input);
+        // quoting, flow collections, null entries and anchors are written as found
+        assertTrue(output.startsWith("openapi: \"3.0.1\"\n"));
+        assertTrue(output.contains("\n  /empty:\n  /user/post:\n"));
+        assertTrue(output.contains("      tags: [Frontend]\n      summary: \"quoted: value\"\n"));
+        assertTrue(output.contains("        '200': &ok\n"));
+        assertTrue(output.contains("        '200': *ok\n"));
+        assertTrue(output.contains("    put:\n  /users/{id}:\n"));
+        assertTrue(output.contains("    Name: {type: string}\n"));
+        assertTrue(output.contains("uri: http://OTHER:12122/path\n"));
+    }
+
+    @Test
+    void writesRelativePathsInPlaceKeepingTheirPermissions() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path input = Fixtures.copy("users.yaml", folder);
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(input, permissions);
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setStreaming(true);
+        // no parent folder: the temporary file must be created next to the file, not in the system folder
+        Path relative = Paths.get("").toAbsolutePath().relativize(input);
+        Fixtures.handle(engine, relative, null);
+        assertTrue(Fixtures.read(input).contains("x-amazon-apigateway-integration"));
+        assertEquals(permissions, Fixtures.getPermissions(input));
+        try (Stream<Path> files = Files.list(folder)) {
+            assertEquals(2, files.count(), "temporary files left");
+        }
+    }
+
+    @Test
+    void createsOutputsWithTheDefaultPermissions() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path input = Fixtures.copy("users.yaml", folder);
+        Path output = Files.createDirectories(folder.resolve("out"));
+        Openapi4AWS engine = Fixtures.createEngine(folder);
+        engine.setStreaming(true);
+        Fixtures.handle(engine, input, output);
+        Path reference = Files.createFile(folder.resolve("reference"));
+        assertEquals(Fixtures.getPermissions(reference), Fixtures.getPermissions(output.resolve("users.yaml")));
+    }
+}
@@ -0,0 +1,140 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.Openapi4AWS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class AugmentServerTest {
+
+    @TempDir
+    Path folder;
+
+    private AugmentServer server;
+    private int port;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void augmentsTheRequestBody() throws IOException {
+        start();
+        Response response = post("?name=users.yaml", Files.readAllBytes(copy("users.yaml")));
+        assertEquals(200, response.status);
+        assertTrue(response.content.contains("uri: http://OTHER:12122/path"), response.content);
+    }
+
+    @Test
+    void rejectsPathsWithoutServerRoots() throws IOException {
+        start();
+        Response response = post("?path=" + URLEncoder.encode(copy("users.yaml").toString(), "UTF-8"), null);
+        assertEquals(AugmentServer.FORBIDDEN, response.status);
+    }
+
+    @Test
+    void onlyReadsPathsUnderTheServerRoots() throws IOException {
+        Path root = Files.createDirectories(folder.resolve("root"));
+        Path inside = Files.copy(copy("users.yaml"), root.resolve("users.yaml"));
+        start("server-roots=" + root);
+        assertEquals(200, post("?path=" + URLEncoder.encode(inside.toString(), "UTF-8"), null).status);
+        Path outside = folder.resolve("users.yaml");
+        assertEquals(AugmentServer.FORBIDDEN, post("?path=" + URLEncoder.encode(outside.toString(), "UTF-8"),
+                null).status);
+        String escaping = root.resolve("..").resolve("users.yaml").toString();
+        assertEquals(AugmentServer.FORBIDDEN, post("?path=" + URLEncoder.encode(escaping, "UTF-8"), null).status);
+    }
+
+    @Test
+    void doesNotFollowLinksOutsideTheServerRoots() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path root = Files.createDirectories(folder.resolve("root"));
+        Path link = Files.createSymbolicLink(root.resolve("link.yaml"), copy("users.yaml"));
+        start("server-roots=" + root);
+        assertEquals(AugmentServer.FORBIDDEN, post("?path=" + URLEncoder.encode(link.toString(), "UTF-8"),
+                null).status);
+    }
+
+    @Test
+    void forwardsTheClientFiles() throws IOException {
+        start();
+        Path input = copy("users.yaml");
+        Path local = Files.createDirectories(folder.resolve("local"));
+        Path remote = Files.createDirectories(folder.resolve("remote"));
+        Openapi4AWS engine = parse("output-folder=" + local).createEngine();
+        engine.handle(Collections.singletonList(input), local);
+        CliParser client = parse("filename=" + input, "output-folder=" + remote);
+        assertTrue(new AugmentClient(client, port).forward());
+        assertArrayEquals(Files.readAllBytes(local.resolve("users.yaml")),
+                Files.readAllBytes(remote.resolve("users.yaml")));
+    }
+
+    private void start(String... args) throws IOException {
+        server = new AugmentServer(parse(args), 0);
+        port = server.start();
+    }
+
+    private CliParser parse(String... args) throws IOException {
+        String[] all = new String[args.length + 1];
+        all[0] = "configuration=" + copy("configuration.properties");
+        System.arraycopy(args, 0, all, 1, args.length);
+        return new CliParser(all);
+    }
+
+    private Response post(String query, byte[] body) throws IOException {
+        URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port,
+                AugmentServer.AUGMENT + query);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream os = connection.getOutputStream()) {
+                if (body != null) {
+                    os.write(body);
+                }
+            }
+            Response ret = new Response();
+            ret.status = connection.getResponseCode();
+            try (InputStream is = ret.status == 200 ? connection.getInputStream() : connection.getErrorStream()) {
+                ret.content = new String(AugmentServer.readAll(is), StandardCharsets.UTF_8);
+            }
+            return ret;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private Path copy(String fixture) throws IOException {
+        Path ret = folder.resolve(fixture);
+        if (!Files.exists(ret)) {
+            try (InputStream is = Openapi4AWS.class.getResourceAsStream(fixture)) {
+                Files.copy(is, ret);
+            }
+        }
+        return ret;
+    }
+
+    private static final class Response {
+        int status;
+        String content;
+    }
+}
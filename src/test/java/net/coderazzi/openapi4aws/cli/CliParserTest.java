@@ -0,0 +1,90 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.Openapi4AWS;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CliParserTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void acceptsShardSizesAboveTwoGigabytes() throws IOException {
+        Path input = copy("catalog.yaml");
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Openapi4AWS engine = new CliParser(new String[]{"configuration=" + copy("configuration.properties"),
+                "shard-by=tag", "shard-max-bytes=3000000000"}).createEngine();
+        engine.handle(Collections.singletonList(input), output);
+        try (Stream<Path> files = Files.list(output)) {
+            assertEquals(3, files.count());
+        }
+    }
+
+    @Test
+    void rejectsInvalidShardSizes() {
+        for (String size : new String[]{"0", "-1", "1e9", "99999999999999999999"}) {
+            assertThrows(CliException.class, () -> new CliParser(new String[]{"shard-max-bytes=" + size}), size);
+        }
+    }
+
+    @Test
+    void appliesTheEnvironmentAfterCommandLineParameters() throws IOException {
+        Path dev = write("dev.prop", "path.users=http://dev/users");
+        CliParser parser = new CliParser(new String[]{"path.users=http://common/users", "configuration.dev=" + dev},
+                "dev");
+        assertEquals("http://dev/users", parser.getIntegration("/users", Collections.emptyList()).getUri("/users"));
+        // the environment overrides the common value, whatever the order of the parameters
+        parser = new CliParser(new String[]{"configuration.dev=" + dev, "path.users=http://common/users"}, "dev");
+        assertEquals("http://dev/users", parser.getIntegration("/users", Collections.emptyList()).getUri("/users"));
+    }
+
+    @Test
+    void appliesTheEnvironmentAfterConfigurationFiles() throws IOException {
+        Path common = write("common.prop", "path.users=http://common/users\ntag.Users=http://common");
+        Path dev = write("dev.prop", "path.users=http://dev/users");
+        CliParser parser = new CliParser(new String[]{"configuration=" + common, "configuration.dev=" + dev}, "dev");
+        assertEquals("http://dev/users", parser.getIntegration("/users", Collections.emptyList()).getUri("/users"));
+        // common values not redefined by the environment are kept
+        assertEquals("http://common/other", parser.getIntegration("/other",
+                Collections.singletonList("Users")).getUri("/other"));
+        parser = new CliParser(new String[]{"configuration=" + common, "configuration.dev=" + dev});
+        assertEquals("http://common/users", parser.getIntegration("/users", Collections.emptyList()).getUri("/users"));
+    }
+
+    @Test
+    void appendsThePathMatchedByPrefixRoutes() {
+        CliParser parser = new CliParser(new String[]{"path.api.**=http://backend/", "path.api.users.{id}=http://users",
+                "path.api.*.orders=http://orders/all"});
+        assertEquals("http://backend/items/{id}", parser.getIntegration("/api/items/{id}",
+                Collections.emptyList()).getUri("/api/items/{id}"));
+        assertEquals("http://backend/", parser.getIntegration("/api", Collections.emptyList()).getUri("/api"));
+        // template and wildcard routes use the URI as defined
+        assertEquals("http://users", parser.getIntegration("/api/users/{userId}",
+                Collections.emptyList()).getUri("/api/users/{userId}"));
+        assertEquals("http://orders/all", parser.getIntegration("/api/12/orders",
+                Collections.emptyList()).getUri("/api/12/orders"));
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(folder.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path copy(String fixture) throws IOException {
+        Path ret = folder.resolve(fixture);
+        try (InputStream is = Openapi4AWS.class.getResourceAsStream(fixture)) {
+            Files.copy(is, ret);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,82 @@
+package net.coderazzi.openapi4aws.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteTableTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void readsCsvAndTsvLines() throws IOException {
+        Map<String, IntegrationParameter> routes = load("# route table\n\n"
+                + "/user/post, http://backend/user/post ,auth,user.email, user.id\n"
+                + "users.{id}\thttp://backend/users\n"
+                + "   # indented comment\n"
+                + "/orders,http://backend/orders,auth\n");
+        assertEquals(Arrays.asList("/user/post", "/users/{id}", "/orders"), new ArrayList<>(routes.keySet()));
+        IntegrationParameter post = routes.get("/user/post");
+        assertEquals("http://backend/user/post", post.getUri("/user/post"));
+        assertEquals("auth", post.getAuthorizer());
+        assertEquals(Arrays.asList("user.email", "user.id"), post.getScopes());
+        assertNull(routes.get("/users/{id}").getAuthorizer());
+        assertEquals(Collections.emptyList(), routes.get("/orders").getScopes());
+    }
+
+    @Test
+    void sharesEquivalentIntegrations() throws IOException {
+        Map<String, IntegrationParameter> routes = load("/a,http://backend,auth,read\n/b,http://backend,auth,read\n"
+                + "/c,http://backend,auth,write\n/d,http://backend,auth,read\n");
+        assertSame(routes.get("/a"), routes.get("/b"));
+        assertSame(routes.get("/a"), routes.get("/d"));
+        assertNotSame(routes.get("/a"), routes.get("/c"));
+    }
+
+    @Test
+    void reportsTheLineOfInvalidRoutes() throws IOException {
+        String[][] cases = {
+                {"/a,http://backend\n,http://backend\n", "line 2 : missing route"},
+                {"/a\n", "line 1 : missing uri"},
+                {"/a,http://backend,,read\n", "line 1 : scopes defined without authorizer"},
+                {"# comment\n/a,http://backend,other\n", "line 2 : other is not a provided authorizer name"},
+        };
+        for (String[] each : cases) {
+            CliException ex = assertThrows(CliException.class, () -> load(each[0]), each[0]);
+            assertEquals(each[1], ex.getMessage());
+        }
+    }
+
+    @Test
+    void definesTheRoutesOfTheParser() throws IOException {
+        Path table = write("/users/{id},http://backend/users\n/**,http://backend/\n");
+        CliParser parser = new CliParser(new String[]{"routes=" + table, "path.users.me=http://me"});
+        assertEquals("http://backend/users", parser.getIntegration("/users/12", Collections.emptyList())
+                .getUri("/users/12"));
+        assertEquals("http://me", parser.getIntegration("/users/me", Collections.emptyList()).getUri("/users/me"));
+        assertEquals("http://backend/orders", parser.getIntegration("/orders", Collections.emptyList())
+                .getUri("/orders"));
+    }
+
+    private Map<String, IntegrationParameter> load(String content) throws IOException {
+        Map<String, IntegrationParameter> ret = new LinkedHashMap<>();
+        new RouteTable("auth"::equals).load(write(content), ret::put);
+        return ret;
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.write(folder.resolve("routes.csv"), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
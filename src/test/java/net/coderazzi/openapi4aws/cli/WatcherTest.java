@@ -0,0 +1,107 @@
+package net.coderazzi.openapi4aws.cli;
+
+import net.coderazzi.openapi4aws.Openapi4AWS;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatcherTest {
+
+    private static final long TIMEOUT_MILLIS = 20000;
+
+    // globs are relative to the current folder
+    private Path folder;
+    private Thread thread;
+
+    @BeforeEach
+    void createFolder() throws IOException {
+        folder = Files.createTempDirectory(Files.createDirectories(Paths.get("target")), "watch");
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(TIMEOUT_MILLIS);
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path each : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(each);
+            }
+        }
+    }
+
+    @Test
+    void watchesTheSubfoldersOfRecursiveGlobs() throws Exception {
+        Path specs = Files.createDirectories(folder.resolve("specs/nested/deep"));
+        Path output = Files.createDirectories(folder.resolve("output"));
+        Path existing = copy("users.yaml", specs.resolve("users.yaml"));
+        start("glob=" + folder + "/specs/**/*.yaml", "output-folder=" + output);
+        Path users = output.resolve("users.yaml");
+        await(() -> Files.exists(users));
+
+        // edit of an existing file in a subfolder
+        String content = read(existing).replace("title: Users", "title: Edited");
+        Files.write(existing, content.getBytes(StandardCharsets.UTF_8));
+        await(() -> read(users).contains("title: Edited"));
+
+        // new file in an existing subfolder
+        copy("edge.yaml", specs.getParent().resolve("edge.yaml"));
+        await(() -> Files.exists(output.resolve("edge.yaml")));
+
+        // new file in a new subfolder, created with its content
+        Path created = Files.createDirectories(folder.resolve("specs/new/sub"));
+        copy("catalog.yaml", created.resolve("catalog.yaml"));
+        await(() -> Files.exists(output.resolve("catalog.yaml")));
+
+        // and later edits of files in the new subfolder
+        Files.write(created.resolve("catalog.yaml"), read(created.resolve("catalog.yaml"))
+                .replace("title: Catalog", "title: Edited").getBytes(StandardCharsets.UTF_8));
+        await(() -> read(output.resolve("catalog.yaml")).contains("title: Edited"));
+    }
+
+    private void start(String... args) throws IOException {
+        String[] all = new String[args.length + 1];
+        all[0] = "configuration=" + copy("configuration.properties", folder.resolve("configuration.properties"));
+        System.arraycopy(args, 0, all, 1, args.length);
+        Watcher watcher = new Watcher(all, new CliParser(all));
+        thread = new Thread(watcher::run);
+        thread.start();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < end, "timeout waiting for the watcher");
+            Thread.sleep(20);
+        }
+    }
+
+    private static String read(Path path) {
+        try {
+            return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        } catch (IOException ioex) {
+            return "";
+        }
+    }
+
+    private static Path copy(String fixture, Path target) throws IOException {
+        try (InputStream is = Openapi4AWS.class.getResourceAsStream(fixture)) {
+            Files.copy(is, target);
+        }
+        return target;
+    }
+}